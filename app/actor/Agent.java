@@ -3,6 +3,9 @@ package actor;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.event.EventStream;
+import akka.stream.QueueOfferResult;
+import akka.stream.javadsl.SourceQueueWithComplete;
 import akka.util.ByteString;
 import algorithms.*;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -19,6 +22,17 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
 
 import static util.Constants.DOUBLE_BYTES;
 import static util.Constants.INT_BYTES;
@@ -29,11 +43,61 @@ public class Agent extends AbstractActor {
         return Props.create(Agent.class, out, config);
     }
 
+    public static Props props(SourceQueueWithComplete<Object> outQueue, Config config) {
+        return Props.create(Agent.class, outQueue, config);
+    }
+
     // states of this agent
     private ActorRef out;
+    /**
+     * queue of the outbound WebSocket stream, null if responding to the out actor,
+     * frames are offered to it one at a time from outbox, so a slow client backpressures this agent
+     *  - a frame with a conflate key (intermediate progressive result) replaces the frame of the same key
+     *    still waiting in outbox and goes to its tail, a client falling behind gets the latest progress
+     *    instead of every step, never ahead of the frames sent before it
+     *  - coarser results of an anytime query still waiting are dropped once a result of the key is sent
+     *  - other frames are all delivered in order,
+     *    progress-transfer only fetches next slice once its last frame was taken by the stream
+     */
+    private SourceQueueWithComplete<Object> outQueue;
+    private Deque<Outbound> outbox;
+    private boolean offering = false;
+    private boolean outClosed = false;
+    private int transferChunkSize;
     private Config config;
-    private PostgreSQL postgreSQL;
-    private List<Point> batch;
+    /**
+     * point source of this agent, shared by the fetches of all its keys running at the same time on the blocking pool,
+     * so every IPointSource is safe for concurrent fetches
+     */
+    private IPointSource pointSource;
+    /**
+     * pools the work of this agent runs on, this agent only handles messages,
+     * results of the work come back to it as WorkDone messages
+     *  - blocking - point source fetches, reading and writing .raqt and delta log files,
+     *              one virtual thread per task if agent.blocking.mode is "virtual"
+     *  - build - loading batches into algorithms and finishing loads
+     *  - query - answering queries
+     */
+    private Executor blockingExecutor;
+    private Executor buildExecutor;
+    private Executor queryExecutor;
+    /**
+     * keys of algorithms with work in flight,
+     * query and ingest requests of a busy key wait in pendingRequests until its work is done
+     */
+    private Set<String> busyKeys;
+    private Map<String, Deque<Request>> pendingRequests;
+    // request holding each busy key, a busy key held by no request (e.g. a scheduled flush) has none
+    private Map<String, Request> activeRequests;
+    /**
+     * shared by all agents
+     *  - virtualThreadExecutor - null if not in "virtual" mode or the JVM has no virtual threads
+     *  - fetchExecutor - runs point source fetches on the blocking pool, at most agent.db.connections at the same time,
+     *                   fetches beyond wait in its queue without holding a thread
+     */
+    private static Executor virtualThreadExecutor;
+    private static BoundedExecutor fetchExecutor;
+    private static Config initializedConfig; // config Constants were initialized from
 
     /**
      * map of Algorithm instances
@@ -47,6 +111,32 @@ public class Agent extends AbstractActor {
      * value - counter, number of visiting times of the algorithm
      */
     private Map<String, Integer> algorithmsHits;
+    /**
+     * map of samples shipped to the client for delta queries
+     * key - key
+     * value - samples of the last result of the algorithm the client holds
+     */
+    private Map<String, ShippedSamples> shippedSamples;
+    /**
+     * map of answers prefetched for the viewports the client is likely to ask next
+     * key - key
+     * value - predicted viewports after the last query and the answers computed so far
+     *  - after each answered query, up to agent.prefetch.viewports predicted viewports are answered one by one
+     *    on the query pool, stopping as soon as a request of the key is waiting
+     */
+    private Map<String, Prefetcher> prefetchers;
+    private int prefetchViewports;
+    private int prefetchTolerance;
+    /**
+     * tile pyramid export, see handleTiles()
+     * key - key
+     * value - export of the key in progress
+     */
+    private Map<String, TilesExport> tilesExports;
+    private int tilesMaxZoom;
+    private int tilesSampleSize;
+    private int tilesBudget;
+    private int tilesStep;
     /**
      * Maximum number of Algorithm instances being kept in memory
      */
@@ -55,7 +145,30 @@ public class Agent extends AbstractActor {
     private Date start;
     private Date end;
     private int intervalDays;
-
+    /**
+     * map of points buffered by ingest requests but not inserted yet
+     * key - key
+     * value - buffered points in [lng, lat]
+     */
+    private Map<String, List<Point>> ingestBuffers;
+    /**
+     * map of time the oldest buffered point of each key arrived (ms)
+     */
+    private Map<String, Long> ingestBufferStarts;
+    private int ingestBatchSize;
+    private long ingestBatchInterval;
+    /**
+     * map of sequences of the shared delta log each algorithm has applied up to, see DeltaLog
+     * key - key
+     * value - sequence after the last logged point in the algorithm
+     */
+    private Map<String, Long> ingestedSeqs;
+    /**
+     * map of points other agents ingested into a key of this agent, loaded once the key is free
+     * key - key
+     * value - batches in the order they were logged
+     */
+    private Map<String, List<DeltaLog.Batch>> ingestedBatches;
 
     @Inject
     public Agent(ActorRef out, Config config) {
@@ -63,6 +176,9 @@ public class Agent extends AbstractActor {
         this.config = config;
         this.algorithms = new HashMap<>();
         this.algorithmsHits = new HashMap<>();
+        this.shippedSamples = new HashMap<>();
+        this.prefetchers = new HashMap<>();
+        this.tilesExports = new HashMap<>();
 
         try {
             this.start = sdf.parse(this.config.getString("progressive.start"));
@@ -71,48 +187,106 @@ public class Agent extends AbstractActor {
             e.printStackTrace();
         }
         this.intervalDays = this.config.getInt("progressive.interval");
-
+        this.ingestBuffers = new HashMap<>();
+        this.ingestBufferStarts = new HashMap<>();
+        this.ingestBatchSize = this.config.getInt("ingest.batch.size");
+        this.ingestBatchInterval = this.config.getLong("ingest.batch.interval");
+        this.ingestedSeqs = new HashMap<>();
+        this.ingestedBatches = new HashMap<>();
+        this.busyKeys = new HashSet<>();
+        this.pendingRequests = new HashMap<>();
+        this.activeRequests = new HashMap<>();
+        this.outbox = new ArrayDeque<>();
+        this.transferChunkSize = this.config.getInt("agent.outbound.chunk");
+        this.prefetchViewports = this.config.getInt("agent.prefetch.viewports");
+        this.prefetchTolerance = this.config.getInt("agent.prefetch.tolerance");
+        this.tilesMaxZoom = this.config.getInt("tiles.max_zoom");
+        this.tilesSampleSize = this.config.getInt("tiles.sample.size");
+        this.tilesBudget = this.config.getInt("tiles.budget");
+        this.tilesStep = this.config.getInt("tiles.step");
 
         // initialize constants
-        Constants.MIN_ZOOM = this.config.getInt("map.min_zoom");
-        Constants.MAX_ZOOM = this.config.getInt("map.max_zoom");
-        Constants.MIN_LONGITUDE = this.config.getDouble("data.minLng");
-        Constants.MIN_LATITUDE = this.config.getDouble("data.minLat");
-        Constants.MAX_LONGITUDE = this.config.getDouble("data.maxLng");
-        Constants.MAX_LATITUDE = this.config.getDouble("data.maxLat");
-
-        /**
-         * Note: Mercator project a globe coordinate [lng, lat] onto a [0 ~ 1] coordinate on a continuous plane
-         *              ^ 90                   0 ----------------> 1
-         *              |                      |
-         *              |                      |
-         * -180 --------+--------> 180  ==>    |
-         *              |                      |
-         *              |                      |
-         *              |-90                   V 1
-         */
-        Constants.MIN_X = Mercator.lngX(Constants.MIN_LONGITUDE);
-        Constants.MIN_Y = Mercator.latY(Constants.MAX_LATITUDE); // latitude -> y is reversed than geo coordinates
-        Constants.MAX_X = Mercator.lngX(Constants.MAX_LONGITUDE);
-        Constants.MAX_Y = Mercator.latY(Constants.MIN_LATITUDE); // latitude -> y is reversed than geo coordinates
-
-        Constants.DB_URL = this.config.getString("db.url");
-        Constants.DB_USERNAME = this.config.getString("db.username");
-        Constants.DB_PASSWORD = this.config.getString("db.password");
-        Constants.DB_TABLENAME = this.config.getString("db.tablename");
-
-        Constants.DATASET_NAME = this.config.getString("dataset.name");
+        initConstants(this.config);
+    }
 
-        Constants.MSG_TYPE = this.config.getInt("message.type");
+    public Agent(SourceQueueWithComplete<Object> outQueue, Config config) {
+        this((ActorRef) null, config);
+        this.outQueue = outQueue;
+    }
 
-        Constants.TILE_RESOLUTION = this.config.getInt("tile.resolution");
+    @Override
+    public void preStart() {
+        initBlockingWork(this.config, getContext().getSystem().dispatchers().lookup("agent.blocking-dispatcher"));
+        this.blockingExecutor = virtualThreadExecutor != null? virtualThreadExecutor:
+                getContext().getSystem().dispatchers().lookup("agent.blocking-dispatcher");
+        this.buildExecutor = getContext().getSystem().dispatchers().lookup("agent.build-dispatcher");
+        this.queryExecutor = getContext().getSystem().dispatchers().lookup("agent.query-dispatcher");
+        // points ingested through other connections
+        getContext().getSystem().eventStream().subscribe(self(), Ingested.class);
+    }
 
-        Constants.SAMPLING_METHOD = this.config.getString("sampling.method");
+    @Override
+    public void postStop() {
+        getContext().getSystem().eventStream().unsubscribe(self());
+        // points still buffered outlive this connection in the delta log, other agents holding their key load them
+        EventStream eventStream = getContext().getSystem().eventStream();
+        for (Map.Entry<String, List<Point>> buffer: ingestBuffers.entrySet()) {
+            String key = buffer.getKey();
+            List<Point> points = buffer.getValue();
+            // the algorithm of this agent is gone, nothing logged by others has to come back
+            this.blockingExecutor.execute(() -> DeltaLog.of(snapshotFileName(key)).append(points, Long.MAX_VALUE,
+                    batch -> eventStream.publish(new Ingested(key, batch))));
+        }
+        ingestBuffers.clear();
+        // exports not finished leave their archives as they were, without temp files
+        for (TilesExport export: tilesExports.values()) {
+            export.writer.abort();
+        }
+        tilesExports.clear();
+        if (this.outQueue != null) {
+            this.outQueue.complete();
+        }
+    }
 
-        Constants.STOP_CRITERIA = this.config.getDouble("stop.criteria");
+    /**
+     * blocking work runs by "agent.blocking.mode" in application.conf
+     *  - dispatcher - on agent.blocking-dispatcher
+     *  - virtual - one virtual thread per task, so the number of blocking stages in flight is not bounded
+     *              by a pool, falls back to dispatcher if the JVM running it has no virtual threads (before Java 21)
+     *
+     * @param config
+     * @param blockingDispatcher
+     */
+    private static synchronized void initBlockingWork(Config config, Executor blockingDispatcher) {
+        if (fetchExecutor != null) {
+            return;
+        }
+        if (config.getString("agent.blocking.mode").equalsIgnoreCase("virtual")) {
+            try {
+                // looked up by reflection, the code itself is built for Java 8
+                Method newExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                virtualThreadExecutor = (Executor) newExecutor.invoke(null);
+                MyLogger.info(Agent.class, "blocking work runs on virtual threads.");
+            } catch (ReflectiveOperationException e) {
+                MyLogger.error(Agent.class, "virtual threads are not available, blocking work runs on agent.blocking-dispatcher.");
+            }
+        }
+        fetchExecutor = new BoundedExecutor(virtualThreadExecutor != null? virtualThreadExecutor: blockingDispatcher,
+                config.getInt("agent.db.connections"));
+    }
 
-        Constants.RENDERING_FUNCTION = this.config.getString("rendering.function");
-        Constants.ERROR_FUNCTION = this.config.getString("error.function");
+    /**
+     * initialize constants once per config, not again by every agent of a new connection,
+     * trees built already keep the settings they were built with anyway (e.g. RAQuadTree.Settings)
+     *
+     * @param config
+     */
+    private static synchronized void initConstants(Config config) {
+        if (config == initializedConfig) {
+            return;
+        }
+        Constants.init(config);
+        initializedConfig = config;
     }
 
     public static Props getProps() {
@@ -123,13 +297,69 @@ public class Agent extends AbstractActor {
     public Receive createReceive() {
         return receiveBuilder()
                 .match(JsonNode.class, request -> {
-                    MyLogger.info(this.getClass(), "received request: " + request);
-                    if (this.out == null) {
+                    MyLogger.debug(this.getClass(), "received request: {}", request);
+                    if (this.out == null && this.outQueue == null) {
                         this.out = sender();
                     }
                     handleRequest(request);
                 })
-                .matchAny(object -> MyLogger.error(this.getClass(), "Received unknown message: " + object.getClass()))
+                .match(WorkDone.class, done -> {
+                    if (done.error != null) {
+                        MyLogger.error(this.getClass(), "work of key " + done.key + " failed!", done.error);
+                        if (!abortTilesExport(done.key, done.error) && done.request != null) {
+                            respondError(done.request, done.error);
+                        }
+                        release(done.key);
+                        return;
+                    }
+                    done.then.accept(done.result);
+                })
+                .match(KeyReleased.class, released -> {
+                    busyKeys.remove(released.key);
+                    activeRequests.remove(released.key);
+                    // buffered points due and points ingested through other agents go in before the next request of the key
+                    if (ingestDue(released.key)) {
+                        busyKeys.add(released.key);
+                        flushIngested(released.key, loaded -> release(released.key));
+                        return;
+                    }
+                    Deque<Request> pending = pendingRequests.get(released.key);
+                    if (pending == null) {
+                        // a tiles export goes on once no request of the key is waiting
+                        resumeTilesExport(released.key);
+                        return;
+                    }
+                    Request next = pending.poll();
+                    if (pending.isEmpty()) {
+                        pendingRequests.remove(released.key);
+                    }
+                    handleKeyedRequest(next);
+                })
+                .match(Ingested.class, this::receiveIngested)
+                .match(IngestDue.class, due -> {
+                    // a key with work in flight flushes once it is released
+                    if (!busyKeys.contains(due.key) && ingestDue(due.key)) {
+                        busyKeys.add(due.key);
+                        flushIngested(due.key, loaded -> release(due.key));
+                    }
+                })
+                .match(Refined.class, refined -> send(ByteString.fromArray(refined.binaryData), "refined:" + refined.key, null))
+                .match(Prefetch.class, this::prefetchNext)
+                .match(Offered.class, offered -> {
+                    this.offering = false;
+                    if (offered.error != null || !QueueOfferResult.enqueued().equals(offered.result)) {
+                        // the WebSocket is gone, nothing can be sent any more
+                        MyLogger.info(this.getClass(), "outbound stream is closed, dropping {} frames.", this.outbox.size());
+                        this.outClosed = true;
+                        this.outbox.clear();
+                        return;
+                    }
+                    if (offered.frame.onSent != null) {
+                        offered.frame.onSent.run();
+                    }
+                    offerNext();
+                })
+                .matchAny(object -> MyLogger.error(this.getClass(), "Received unknown message: {}", object.getClass()))
                 .build();
     }
 
@@ -166,6 +396,7 @@ public class Agent extends AbstractActor {
      *  - if given cluster key does NOT exists,
      *      do the loadData and clusterData first,
      *  - query the cluster
+     *  - the key is held until the query is answered
      *
      * @param _request
      */
@@ -184,54 +415,186 @@ public class Agent extends AbstractActor {
         // if given cluster key does NOT exists, do the loadData and clusterData first,
         if (!algorithms.containsKey(clusterKey)) {
             // first check if we can load file to algorithm
-            boolean success = loadFileToAlgorithm(query);
-            if (success) {
-                answerQuery(query, 100);
-            }
-            // otherwise, we can only do progressive data loading from DB
-            else {
-                handleQueryProgressively(_request);
-            }
+            loadFileToAlgorithm(query, success -> {
+                if (success) {
+                    answerQuery(query, 100, () -> release(clusterKey));
+                }
+                // otherwise, we can only do progressive data loading from DB
+                else {
+                    handleQueryProgressively(_request);
+                }
+            });
         }
-        // otherwise, answer the query directly
-        else {
-            answerQuery(query, 100);
+        // otherwise, answer the query by a prefetched answer or directly
+        else if (!answerByPrefetched(query)) {
+            answerQuery(query, 100, () -> release(clusterKey));
         }
     }
 
-    private void answerQuery(Query query, int progress) {
-        MyTimer.temporaryTimer.clear();
-        MyTimer.temporaryTimer.put("treeTIme", 0.0);
-        MyTimer.temporaryTimer.put("aggregateTime", 0.0);
-        MyTimer.startTimer();
+    /**
+     * respond the answer prefetched for a viewport matching the query, if any
+     *
+     * @param query
+     * @return - false if no answer of a matching viewport was prefetched
+     */
+    private boolean answerByPrefetched(Query query) {
+        Prefetcher prefetcher = prefetchers.get(query.key);
+        if (prefetcher == null || query.trace) {
+            return false;
+        }
+        long startTime = System.nanoTime();
+        Prefetcher.Prefetched answer = prefetcher.take(query);
+        if (answer == null) {
+            return false;
+        }
+        algorithmsHits.put(query.key, algorithmsHits.get(query.key) + 1);
+
+        // an answer of a viewport only within tolerance of the query's bbox does not tell the error of this bbox
+        double estimatedError = Prefetcher.sameViewport(answer.query, query)? answer.estimatedError: -1.0;
+
+        double totalTime = (double) (System.nanoTime() - startTime) / 1000000000.0;
+        TimingContext timings = new TimingContext();
+        timings.payloadBytes = answer.binaryData.length;
+        timings.sampleSize = answer.sampleSize;
+        timings.estimatedError = estimatedError;
+        buildBinaryHeader(answer.binaryData, 100, totalTime, 0.0, 0.0, answer.sampleSize, estimatedError);
+        Metrics.recordQuery(query.algorithm.toLowerCase(), totalTime, timings);
+        MyLogger.debug(this.getClass(), "answered query of {} by a prefetched viewport.", query.key);
+
+        // a prefetched answer is always full
+        ShippedSamples shipped = shippedSamples.get(query.key);
+        if (shipped != null) {
+            shipped.reset();
+        }
+        send(ByteString.fromArray(answer.binaryData), null, null);
+        release(query.key);
+        prefetch(query);
+        return true;
+    }
+
+    /**
+     * predict the viewports likely asked after given answered query and start prefetching their answers,
+     * as a message so that it starts after the key is released and its waiting requests are handled
+     *
+     * @param query
+     */
+    private void prefetch(Query query) {
+        if (this.prefetchViewports <= 0 || query.bbox == null) {
+            return;
+        }
+        Prefetcher prefetcher = prefetchers.computeIfAbsent(query.key,
+                k -> new Prefetcher(this.prefetchViewports, this.prefetchTolerance));
+        List<Query> viewports = prefetcher.predict(query);
+        if (!viewports.isEmpty()) {
+            self().tell(new Prefetch(query.key, prefetcher.generation(), new ArrayDeque<>(viewports)), ActorRef.noSender());
+        }
+    }
 
+    /**
+     * answer the next predicted viewport on the query pool, then continue with the rest,
+     * given up if the prediction is outdated or a request of the key is waiting or in flight
+     *
+     * @param _prefetch
+     */
+    private void prefetchNext(Prefetch _prefetch) {
+        String key = _prefetch.key;
+        Prefetcher prefetcher = prefetchers.get(key);
+        IAlgorithm algorithm = algorithms.get(key);
+        if (prefetcher == null || algorithm == null || prefetcher.generation() != _prefetch.generation
+                || busyKeys.contains(key) || _prefetch.viewports.isEmpty()) {
+            return;
+        }
+        Query viewport = _prefetch.viewports.poll();
+        busyKeys.add(key);
+        runAsync(key, this.queryExecutor, () -> {
+            TimingContext timings = TimingContext.begin();
+            byte[] binaryData = algorithm.answerQuery(viewport);
+            return new Prefetcher.Prefetched(viewport, binaryData, timings.sampleSize, timings.estimatedError);
+        }, answer -> {
+            prefetcher.put(_prefetch.generation, answer);
+            release(key);
+            self().tell(_prefetch, ActorRef.noSender());
+        });
+    }
+
+    /**
+     * answer the query on the query pool, respond with the result and continue with _then on this agent
+     */
+    private void answerQuery(Query query, int progress, Runnable _then) {
         // Add hit to querying super cluster
         algorithmsHits.put(query.key, algorithmsHits.get(query.key) + 1);
 
-        // query the algorithm
         IAlgorithm algorithm = algorithms.get(query.key);
-        byte[] binaryData = algorithm.answerQuery(query);
 
-        MyTimer.stopTimer();
-        double totalTime = MyTimer.durationSeconds();
-        double treeTime = MyTimer.temporaryTimer.get("treeTime");
-        double aggregateTime = MyTimer.temporaryTimer.get("aggregateTime");
+        // the final result of a delta query is responded against the samples the client holds,
+        // any other result replaces them with a full one
+        boolean delta = query.delta && !query.anytime && progress == 100;
+        ShippedSamples shipped = query.delta? shippedSamples.computeIfAbsent(query.key, ShippedSamples::new):
+                shippedSamples.get(query.key);
 
-        buildBinaryHeader(binaryData, progress, totalTime, treeTime, aggregateTime);
+        ActorRef self = self();
+        runAsync(query.key, this.queryExecutor, () -> {
+            TimingContext timings = TimingContext.begin();
+            MyTimer.startTimer();
 
-        respond(binaryData);
-    }
+            // coarser results of an anytime query go to the client before the final one,
+            // with progress scaled by their share of the target sample size
+            long startTime = System.nanoTime();
+            ObjDoubleConsumer<byte[]> refinements = !query.anytime? null: (refinedData, fraction) -> {
+                double elapsedTime = (double) (System.nanoTime() - startTime) / 1000000000.0;
+                int refinedSize = (refinedData.length - Constants.HEADER_SIZE) / (DOUBLE_BYTES + DOUBLE_BYTES);
+                buildBinaryHeader(refinedData, (int) (progress * fraction), elapsedTime, elapsedTime, 0.0, refinedSize, -1.0);
+                self.tell(new Refined(query.key, refinedData), ActorRef.noSender());
+            };
+
+            // query the algorithm
+            long shipments = shipped == null? 0: shipped.shipments();
+            byte[] binaryData = algorithm.answerQuery(query, refinements, delta? shipped: null);
+            if (shipped != null && (!delta || shipped.shipments() == shipments)) {
+                shipped.reset();
+            }
 
-    private void finishLoad(Query query) {
-        // query the algorithm
-        IAlgorithm algorithm = algorithms.get(query.key);
-        algorithm.finishLoad();
+            MyTimer.stopTimer();
+            double totalTime = MyTimer.durationSeconds();
+            timings.payloadBytes = binaryData.length;
+
+            buildBinaryHeader(binaryData, progress, totalTime, timings.treeTime, timings.aggregateTime,
+                    timings.sampleSize, timings.estimatedError);
+            Metrics.recordQuery(query.algorithm.toLowerCase(), totalTime, timings);
+            return new Answer(binaryData, timings.trace);
+        }, answer -> {
+            // intermediate results of a progressive load can be conflated, the final one is always delivered
+            boolean intermediate = progress < 100;
+            discard("refined:" + query.key);
+            send(ByteString.fromArray(answer.binaryData), intermediate? query.key: null, null);
+
+            // diagnostics requested by the query go alongside the result as a separate JSON message
+            if (query.trace && answer.trace != null) {
+                ObjectNode response = JsonNodeFactory.instance.objectNode();
+                response.put("type", "trace");
+                response.put("key", query.key);
+                response.put("progress", progress);
+                response.set("trace", Json.toJson(answer.trace));
+                send(response, intermediate? "trace:" + query.key: null, null);
+            }
+            _then.run();
+
+            // the viewports likely asked next are prefetched once the final result is out
+            if (!intermediate) {
+                prefetch(query);
+            }
+        });
     }
 
-    private void buildBinaryHeader(byte[] binaryData, int progress, double totalTime, double treeTime, double aggregateTime) {
+    /**
+     * @param sampleSize - samples in the result, -1 if not reported by the algorithm
+     * @param estimatedError - estimated error of the result, -1 if not reported by the algorithm
+     */
+    private void buildBinaryHeader(byte[] binaryData, int progress, double totalTime, double treeTime, double aggregateTime,
+                                   int sampleSize, double estimatedError) {
         // construct final response
-        //  progress  totalTime  treeTime   aggTime  msgType   binary data payload
-        // | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | ...
+        //  progress  totalTime  treeTime   aggTime  msgType  sampleSize  error     binary data payload
+        // | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | 4 BYTES | 8 BYTES | ...
         // header 1: progress
         int j = 0;
         binaryData[j+0] = (byte)((progress >> 24) & 0xff);
@@ -269,91 +632,148 @@ public class Agent extends AbstractActor {
         binaryData[j+5] = (byte) ((aggregateTimeL >> 16) & 0xff);
         binaryData[j+6] = (byte) ((aggregateTimeL >>  8) & 0xff);
         binaryData[j+7] = (byte) ((aggregateTimeL >>  0) & 0xff);
+        // header 5: sampleSize, after msgType tagged by the message builder
+        j = j + DOUBLE_BYTES + INT_BYTES;
+        binaryData[j+0] = (byte)((sampleSize >> 24) & 0xff);
+        binaryData[j+1] = (byte)((sampleSize >> 16) & 0xff);
+        binaryData[j+2] = (byte)((sampleSize >>  8) & 0xff);
+        binaryData[j+3] = (byte)((sampleSize >>  0) & 0xff);
+        // header 6: estimatedError
+        j = j + INT_BYTES;
+        long estimatedErrorL = Double.doubleToRawLongBits(estimatedError);
+        binaryData[j+0] = (byte) ((estimatedErrorL >> 56) & 0xff);
+        binaryData[j+1] = (byte) ((estimatedErrorL >> 48) & 0xff);
+        binaryData[j+2] = (byte) ((estimatedErrorL >> 40) & 0xff);
+        binaryData[j+3] = (byte) ((estimatedErrorL >> 32) & 0xff);
+        binaryData[j+4] = (byte) ((estimatedErrorL >> 24) & 0xff);
+        binaryData[j+5] = (byte) ((estimatedErrorL >> 16) & 0xff);
+        binaryData[j+6] = (byte) ((estimatedErrorL >>  8) & 0xff);
+        binaryData[j+7] = (byte) ((estimatedErrorL >>  0) & 0xff);
     }
 
     private void handleQueryProgressively(Request _request) {
-
-        // for experiments analysis
-        MyTimer.progressTimer.clear();
-        MyTimer.progressTimer.put("clusterTime",  new ArrayList<>());
-        MyTimer.progressTimer.put("treeTime", new ArrayList<>());
-        MyMemory.progressUsedMemory.clear();
-        MyMemory.porgressTotalMemory.clear();
-
-        Query query = _request.query;
         if (_request.keyword == null) {
             // TODO - exception
         }
-        this.batch = null;
 
-        // initialize query slicing parameters
-        Date currentStart = new Date(this.start.getTime());
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(currentStart);
-        calendar.add(Calendar.DATE, this.intervalDays);
-        Date currentEnd = calendar.getTime();
-        long totalDays = (this.end.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
+        // points logged for the key are not in the database, they are loaded once the load is done
+        String key = _request.query.key;
+        runAsync(key, this.blockingExecutor, () -> DeltaLog.of(snapshotFileName(key)).first(), first -> {
+            ingestedSeqs.put(key, first);
+            // initialize query slicing parameters
+            Date currentStart = new Date(this.start.getTime());
+            loadNextSlice(new ProgressiveLoad(_request, currentStart, sliceEnd(currentStart)));
+        });
+    }
 
-        // start query slicing cycles
-        while (currentStart.before(this.end)) {
-            long progress = (currentEnd.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
-            progress = 100 * progress / totalDays;
+    /**
+     * one query slicing cycle of a progressive load, continued by the next cycle once current one is answered
+     *
+     * @param _load
+     */
+    private void loadNextSlice(ProgressiveLoad _load) {
+        if (!_load.currentStart.before(this.end)) {
+            finishProgressiveLoad(_load);
+            return;
+        }
 
-            // (1) fetch a batch of data from database
-            boolean success = fetchBatchFromDB(_request.keyword, currentStart, currentEnd);
-            if (!success) {
-                // TODO - exception
-            }
+        Query query = _load.request.query;
+        Date currentStart = _load.currentStart;
+        Date currentEnd = _load.currentEnd;
+        long totalDays = (this.end.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
+        long progress = (currentEnd.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
+        progress = 100 * progress / totalDays;
+        int currentProgress = (int) progress;
 
-            // (2) load the batch into algorithm
-            MyTimer.startTimer();
-            success = loadBatchToAlgorithm(query);
-            MyTimer.stopTimer();
-            MyTimer.progressTimer.get("clusterTime").add(MyTimer.durationSeconds());
-            MyMemory.progressUsedMemory.add(MyMemory.getUsedMemory());
-            MyMemory.porgressTotalMemory.add(MyMemory.getTotalMemory());
-            if (!success) {
+        // (1) fetch a batch of data from database,
+        //     keyword-indexed algorithm takes all records with their keywords
+        IAlgorithm algorithm = getAlgorithm(query);
+        IPointSource source = getPointSource();
+        boolean tagged = algorithm instanceof KeywordRAQuadTree;
+        runAsync(query.key, fetchExecutor, () -> tagged?
+                fetchTaggedBatchFromDB(source, currentStart, currentEnd):
+                fetchBatchFromDB(source, _load.request.keyword, currentStart, currentEnd), batch -> {
+            if (batch == null) {
                 // TODO - exception
             }
 
-            // (3) answer current query with partial data loaded
-            MyTimer.startTimer();
-            answerQuery(query, (int) progress);
-            MyTimer.stopTimer();
-            MyTimer.progressTimer.get("treeTime").add(MyTimer.durationSeconds());
+            // (2) load the batch into algorithm,
+            //     time-windowed algorithm advances to the latest point of the batch, each point goes to the bucket of its time
+            runAsync(query.key, this.buildExecutor, () -> {
+                if (algorithm instanceof WindowedRAQuadTree && batch != null) {
+                    ((WindowedRAQuadTree) algorithm).advanceTo(WindowedRAQuadTree.latestTime(batch));
+                }
+                MyTimer.startTimer();
+                boolean success = loadBatchToAlgorithm(algorithm, batch, query);
+                MyTimer.stopTimer();
+                _load.clusterTimes.add(MyTimer.durationSeconds());
+                _load.usedMemory.add(MyMemory.getUsedMemory());
+                _load.totalMemory.add(MyMemory.getTotalMemory());
+                return success;
+            }, success -> {
+                if (!success) {
+                    // TODO - exception
+                }
 
-            // prepare query slicing parameters for next cycle
-            currentStart = currentEnd;
-            calendar = Calendar.getInstance();
-            calendar.setTime(currentStart);
-            calendar.add(Calendar.DATE, this.intervalDays);
-            currentEnd = calendar.getTime();
-        }
+                // (3) answer current query with partial data loaded
+                long answerStart = System.nanoTime();
+                answerQuery(query, currentProgress, () -> {
+                    _load.treeTimes.add((double) (System.nanoTime() - answerStart) / 1000000000.0);
+
+                    // prepare query slicing parameters for next cycle
+                    _load.currentStart = currentEnd;
+                    _load.currentEnd = sliceEnd(currentEnd);
+                    loadNextSlice(_load);
+                });
+            });
+        });
+    }
+
+    private void finishProgressiveLoad(ProgressiveLoad _load) {
+        Query query = _load.request.query;
+        IAlgorithm algorithm = getAlgorithm(query);
 
         // notify algorithm that data loading is done.
-        finishLoad(query);
+        runAsync(query.key, this.buildExecutor, () -> {
+            algorithm.finishLoad();
+            return true;
+        }, finished -> loadLogged(query.key, loaded -> {
+            // save algorithm to file.
+            long applied = ingestedSeqs.get(query.key);
+            runAsync(query.key, this.blockingExecutor, () -> saveAlgorithmToFile(algorithm, query.key, applied), saved -> {
+                // for experiments analysis
+                System.out.println("========== Experiment Analysis ==========");
+                System.out.println("Progressive Query: ");
+                System.out.println("keyword: " + _load.request.keyword);
+                System.out.println("algorithm: " + query.algorithm);
+                System.out.println("clustering time for each batch: ");
+                for (double time: _load.clusterTimes) {
+                    System.out.println(time);
+                }
+                System.out.println("Tree-cut time for each batch: ");
+                for (double time: _load.treeTimes) {
+                    System.out.println(time);
+                }
+                System.out.println("memory usage until each batch (MB): ");
+                for (int i = 0; i < _load.usedMemory.size(); i ++) {
+                    System.out.println(_load.usedMemory.get(i) + ",  " + _load.totalMemory.get(i));
+                }
+                System.out.println("========== =================== ==========");
 
-        // save algorithm to file.
-        saveAlgorithmToFile(query);
+                release(query.key);
+            });
+        }));
+    }
 
-        // for experiments analysis
-        System.out.println("========== Experiment Analysis ==========");
-        System.out.println("Progressive Query: ");
-        System.out.println("keyword: " + _request.keyword);
-        System.out.println("algorithm: " + _request.query.algorithm);
-        System.out.println("clustering time for each batch: ");
-        for (double time: MyTimer.progressTimer.get("clusterTime")) {
-            System.out.println(time);
-        }
-        System.out.println("Tree-cut time for each batch: ");
-        for (double time: MyTimer.progressTimer.get("treeTime")) {
-            System.out.println(time);
-        }
-        System.out.println("memory usage until each batch (MB): ");
-        for (int i = 0; i < MyMemory.progressUsedMemory.size(); i ++) {
-            System.out.println(MyMemory.progressUsedMemory.get(i) + ",  " + MyMemory.porgressTotalMemory.get(i));
-        }
-        System.out.println("========== =================== ==========");
+    /**
+     * @param sliceStart
+     * @return end of the query slice starting at sliceStart, progressive.interval days later
+     */
+    private Date sliceEnd(Date sliceStart) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(sliceStart);
+        calendar.add(Calendar.DATE, this.intervalDays);
+        return calendar.getTime();
     }
 
     private void handleCmds(Request _request) {
@@ -375,62 +795,603 @@ public class Agent extends AbstractActor {
     }
 
     /**
-     * fetch batch for given keyword and time range from database
+     * fetch batch for given keyword and time range from the point source, runs on fetchExecutor
      *
+     * @param source
      * @param keyword
      * @param start
      * @param end
-     * @return
+     * @return points of the batch, null if the fetch failed
      */
-    private boolean fetchBatchFromDB(String keyword, Date start, Date end) {
-        if (postgreSQL == null) {
-            postgreSQL = new PostgreSQL();
-        }
+    private List<Point> fetchBatchFromDB(IPointSource source, String keyword, Date start, Date end) {
+        MyTimer.startTimer();
         List<Point> batchPoints;
         if (keyword.equals("%")) {
-            batchPoints = postgreSQL.queryPointsForTime(start, end);
+            batchPoints = source.queryPointsForTime(start, end);
         }
         else {
-            batchPoints = postgreSQL.queryPointsForKeywordAndTime(keyword, start, end);
-        }
-        if (batchPoints == null) {
-            return false;
+            batchPoints = source.queryPointsForKeywordAndTime(keyword, start, end);
         }
+        MyTimer.stopTimer();
+        Metrics.recordSeconds(Metrics.DB_TIME, this.config.getString("source.type").toLowerCase(), MyTimer.durationSeconds());
+        return batchPoints;
+    }
 
-        batch = batchPoints;
+    /**
+     * fetch batch of all records with their keywords for given time range from the point source, runs on fetchExecutor
+     *
+     * @param source
+     * @param start
+     * @param end
+     * @return points of the batch, null if the fetch failed
+     */
+    private List<Point> fetchTaggedBatchFromDB(IPointSource source, Date start, Date end) {
+        MyTimer.startTimer();
+        List<Point> batchPoints = source.queryTaggedPointsForTime(start, end);
+        MyTimer.stopTimer();
+        Metrics.recordSeconds(Metrics.DB_TIME, this.config.getString("source.type").toLowerCase(), MyTimer.durationSeconds());
+        return batchPoints;
+    }
 
-        return true;
+    /**
+     * point source selected by "source.type" in application.conf
+     *  - postgresql - tweets table in PostgreSQL
+     *  - synthetic - seeded generator, source.synthetic.size points over [progressive.start, progressive.end]
+     *  - file - memory-mapped points files in source.file.directory
+     *  - index - inverted keyword index and points file in source.file.directory
+     *
+     * @return
+     */
+    private IPointSource getPointSource() {
+        if (pointSource == null) {
+            switch (this.config.getString("source.type").toLowerCase()) {
+                case "synthetic":
+                    pointSource = new SyntheticPointSource(
+                            this.config.getLong("source.synthetic.size"),
+                            this.config.getLong("source.synthetic.seed"),
+                            this.start, this.end);
+                    break;
+                case "file":
+                    pointSource = new BinaryFilePointSource(this.config.getString("source.file.directory"));
+                    break;
+                case "index":
+                    pointSource = new InvertedIndexPointSource(this.config.getString("source.file.directory"));
+                    break;
+                case "postgresql":
+                default:
+                    pointSource = new PostgreSQL();
+            }
+        }
+        return pointSource;
     }
 
     /**
-     * load current batch into the algorithm
+     * load given batch into the algorithm, runs on the build pool
      *
+     * @param algorithm
+     * @param batch
      * @param query - Query
      * @return
      */
-    private boolean loadBatchToAlgorithm(Query query) {
+    private boolean loadBatchToAlgorithm(IAlgorithm algorithm, List<Point> batch, Query query) {
 
-        if (this.batch == null || this.batch.isEmpty()) {
+        if (batch == null || batch.isEmpty()) {
             return false;
         }
         else {
-            IAlgorithm algorithm = getAlgorithm(query);
-            algorithm.load(this.batch);
+            MyTimer.startTimer();
+            algorithm.load(batch);
+            MyTimer.stopTimer();
+            Metrics.recordSeconds(Metrics.LOAD_TIME, query.algorithm.toLowerCase(), MyTimer.durationSeconds());
         }
 
         return true;
     }
 
-    private boolean loadFileToAlgorithm(Query query) {
-        String fileName = Constants.DATASET_NAME + "-" + query.key + ".raqt";
+    /**
+     * read the algorithm of given query from its snapshot file on the blocking pool,
+     * replay its delta log on the build pool, and continue with _then on this agent
+     *
+     * @param query
+     * @param _then - accepts if the algorithm was read from file
+     */
+    private void loadFileToAlgorithm(Query query, Consumer<Boolean> _then) {
+        String fileName = snapshotFileName(query.key);
         IAlgorithm algorithm = getAlgorithm(query);
-        return algorithm.readFromFile(fileName);
+        runAsync(query.key, this.blockingExecutor,
+                () -> DeltaLog.of(fileName).open(() -> algorithm.readFromFile(fileName)), delta -> {
+            if (delta == null) {
+                _then.accept(false);
+                return;
+            }
+            // replay points ingested after the snapshot was written
+            ingestedSeqs.put(query.key, delta.from);
+            if (delta.end() > delta.from) {
+                MyLogger.info(this.getClass(), "replaying {} points from delta log.", delta.end() - delta.from);
+            }
+            loadDelta(query.key, delta, loaded -> _then.accept(true));
+        });
     }
 
-    private boolean saveAlgorithmToFile(Query query) {
-        String fileName = Constants.DATASET_NAME + "-" + query.key + ".raqt";
-        IAlgorithm algorithm = getAlgorithm(query);
-        return algorithm.writeToFile(fileName);
+    /**
+     * runs on the blocking pool
+     *  - only the points logged up to applied are discarded from the delta log,
+     *    points other agents logged meanwhile are not in this algorithm
+     */
+    private boolean saveAlgorithmToFile(IAlgorithm algorithm, String key, long applied) {
+        String fileName = snapshotFileName(key);
+        return DeltaLog.of(fileName).commit(applied, () -> algorithm.writeToFile(fileName));
+    }
+
+    private String snapshotFileName(String key) {
+        return Constants.DATASET_NAME + "-" + key + ".raqt";
+    }
+
+    /**
+     * handle tiles request
+     *  - export the tile pyramid of the algorithm of given query.key into its tile archive,
+     *    tiles of levels [0, tiles.max_zoom], each answered like a query of its bbox,
+     *    with query.keyword / tStart / tEnd, tiles.sample.size samples and a latency budget of tiles.budget ms
+     *  - tiles are answered tiles.step at a time on the build pool and appended on the blocking pool,
+     *    level by level, children of a tile without points are skipped
+     *  - the key is held by each step only, requests of the key waiting are handled between two steps,
+     *    so tiles of later steps also have the points ingested meanwhile
+     *  - the archive is served by GET /tiles/:key/:z/:x/:y once finished
+     *
+     * @param _request
+     */
+    private void handleTiles(Request _request) {
+        Query query = _request.query;
+        if (query == null || query.key == null) {
+            respond(buildTilesResponse(_request, 0, 0, "query.key is required", "error"));
+            if (query != null) {
+                release(query.key);
+            }
+            return;
+        }
+        if (tilesExports.containsKey(query.key)) {
+            respond(buildTilesResponse(_request, 0, 0, "tiles of key " + query.key + " are being exported", "error"));
+            release(query.key);
+            return;
+        }
+
+        // only export an existing algorithm, live in memory or saved to file
+        if (!algorithms.containsKey(query.key)) {
+            if (query.algorithm == null) {
+                respond(buildTilesResponse(_request, 0, 0, "no algorithm exists for key " + query.key, "error"));
+                release(query.key);
+                return;
+            }
+            loadFileToAlgorithm(query, success -> {
+                if (!success) {
+                    algorithms.remove(query.key);
+                    algorithmsHits.remove(query.key);
+                    respond(buildTilesResponse(_request, 0, 0, "no algorithm exists for key " + query.key, "error"));
+                    release(query.key);
+                    return;
+                }
+                startTilesExport(_request);
+            });
+            return;
+        }
+        // buffered ingest points belong to the tiles too
+        flushIngestBuffer(query.key, ingested -> startTilesExport(_request));
+    }
+
+    private void startTilesExport(Request _request) {
+        String key = _request.query.key;
+        String fileName = TileArchive.fileName(Constants.DATASET_NAME, key);
+        int maxZoom = this.tilesMaxZoom;
+        runAsync(key, this.blockingExecutor, () -> {
+            try {
+                return TileArchive.create(fileName, maxZoom);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, writer -> {
+            MyLogger.info(this.getClass(), "exporting tiles of " + key + " up to zoom " + maxZoom + " into " + fileName + ".");
+            TilesExport export = new TilesExport(_request, algorithms.get(key), writer);
+            tilesExports.put(key, export);
+            exportTiles(export);
+        });
+    }
+
+    /**
+     * go on with the tiles export of given key, if any, when the key is released and no request of it is waiting
+     *
+     * @param key
+     */
+    private void resumeTilesExport(String key) {
+        TilesExport export = tilesExports.get(key);
+        if (export == null || export.running || busyKeys.contains(key)) {
+            return;
+        }
+        busyKeys.add(key);
+        exportTiles(export);
+    }
+
+    /**
+     * give up the tiles export of given key if its step failed, the archive file is left as it was
+     *
+     * @param key
+     * @param error
+     * @return if an export was aborted, its request got the error
+     */
+    private boolean abortTilesExport(String key, Throwable error) {
+        TilesExport export = key == null? null: tilesExports.get(key);
+        if (export == null || !export.running) {
+            return false;
+        }
+        tilesExports.remove(key);
+        export.writer.abort();
+        respond(buildTilesResponse(export.request, export.writer.getTiles(), export.writer.getBytes(),
+                String.valueOf(error.getMessage()), "error"));
+        return true;
+    }
+
+    /**
+     * export the next tiles.step tiles of the queue holding the key, then release it until the next step
+     *
+     * @param export
+     */
+    private void exportTiles(TilesExport export) {
+        Request _request = export.request;
+        IAlgorithm algorithm = export.algorithm;
+        TileArchive.Writer writer = export.writer;
+        Deque<int[]> tiles = export.tiles;
+        String key = _request.query.key;
+        export.running = true;
+        if (tiles.isEmpty()) {
+            runAsync(key, this.blockingExecutor, () -> {
+                try {
+                    writer.finish();
+                    return writer.getTiles();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, exported -> {
+                tilesExports.remove(key);
+                double exportTime = (double) (System.nanoTime() - export.startTime) / 1000000000.0;
+                MyLogger.info(this.getClass(), "exported " + exported + " tiles (" + writer.getBytes() + " bytes) of " + key + " in " + exportTime + " seconds.");
+                respond(buildTilesResponse(_request, exported, writer.getBytes(), "ok", "done"));
+                release(key);
+            });
+            return;
+        }
+
+        List<int[]> step = new ArrayList<>();
+        while (!tiles.isEmpty() && step.size() < this.tilesStep) {
+            step.add(tiles.poll());
+        }
+        runAsync(key, this.buildExecutor, () -> {
+            List<byte[]> payloads = new ArrayList<>(step.size());
+            for (int[] tile: step) {
+                payloads.add(answerTile(algorithm, _request.query, tile[0], tile[1], tile[2]));
+            }
+            return payloads;
+        }, payloads -> runAsync(key, this.blockingExecutor, () -> {
+            List<int[]> children = new ArrayList<>();
+            try {
+                for (int i = 0; i < step.size(); i ++) {
+                    int[] tile = step.get(i);
+                    byte[] payload = payloads.get(i);
+                    writer.put(tile[0], tile[1], tile[2], payload);
+                    if (payload.length > 0 && tile[0] < writer.getMaxZoom()) {
+                        for (int dx = 0; dx < 2; dx ++) {
+                            for (int dy = 0; dy < 2; dy ++) {
+                                children.add(new int[]{tile[0] + 1, 2 * tile[1] + dx, 2 * tile[2] + dy});
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            return children;
+        }, children -> {
+            tiles.addAll(children);
+            export.running = false;
+            release(key);
+        }));
+    }
+
+    /**
+     * answer one tile like a query of its bbox
+     *
+     * @param algorithm
+     * @param _query - query of the tiles request, for its algorithm, keyword and time range
+     * @return - result message of the tile, empty if the tile has no points
+     */
+    private byte[] answerTile(IAlgorithm algorithm, Query _query, int z, int x, int y) {
+        Query tileQuery = new Query();
+        tileQuery.key = _query.key;
+        tileQuery.algorithm = _query.algorithm;
+        tileQuery.keyword = _query.keyword;
+        tileQuery.tStart = _query.tStart;
+        tileQuery.tEnd = _query.tEnd;
+        tileQuery.zoom = z;
+        tileQuery.bbox = TileArchive.bbox(z, x, y);
+        tileQuery.resX = 256;
+        tileQuery.resY = 256;
+        tileQuery.aggregator = _query.aggregator;
+        tileQuery.sampleSize = this.tilesSampleSize;
+        tileQuery.latencyBudget = this.tilesBudget;
+
+        TimingContext timings = TimingContext.begin();
+        MyTimer.startTimer();
+        byte[] binaryData = algorithm.answerQuery(tileQuery);
+        MyTimer.stopTimer();
+        double totalTime = MyTimer.durationSeconds();
+
+        // binary message without records
+        int msgType = ByteBuffer.wrap(binaryData).getInt(INT_BYTES + 3 * DOUBLE_BYTES);
+        if (msgType == 0 && binaryData.length <= Constants.HEADER_SIZE) {
+            return new byte[0];
+        }
+        buildBinaryHeader(binaryData, 100, totalTime, timings.treeTime, timings.aggregateTime,
+                timings.sampleSize, timings.estimatedError);
+        return binaryData;
+    }
+
+    private JsonNode buildTilesResponse(Request _request, int _tiles, long _bytes, String _msg, String _status) {
+        ObjectNode response = JsonNodeFactory.instance.objectNode();
+        response.put("type", _request.type);
+        if (_request.query != null) {
+            response.put("key", _request.query.key);
+        }
+        response.put("status", _status);
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        result.put("tiles", _tiles);
+        result.put("bytes", _bytes);
+        result.put("message", _msg);
+        response.set("result", result);
+        return response;
+    }
+
+    /**
+     * handle ingest request
+     *  - buffer the points for the algorithm of given query.key,
+     *  - once the buffer reaches ingest.batch.size points, or its oldest point has waited ingest.batch.interval ms,
+     *    or the request asks to flush, insert the buffered points as one micro-batch
+     *  - the key is held until the request is responded
+     *
+     * @param _request
+     */
+    private void handleIngest(Request _request) {
+        Query query = _request.query;
+        if (query == null || query.key == null || _request.points == null) {
+            respond(buildIngestResponse(_request, 0, 0, "query.key and points are required", "error"));
+            if (query != null) {
+                release(query.key);
+            }
+            return;
+        }
+
+        // only ingest into an existing algorithm, live in memory or saved to file
+        if (!algorithms.containsKey(query.key)) {
+            if (query.algorithm == null) {
+                respond(buildIngestResponse(_request, 0, 0, "no algorithm exists for key " + query.key, "error"));
+                release(query.key);
+                return;
+            }
+            loadFileToAlgorithm(query, success -> {
+                if (!success) {
+                    algorithms.remove(query.key);
+                    algorithmsHits.remove(query.key);
+                    shippedSamples.remove(query.key);
+                    prefetchers.remove(query.key);
+                    respond(buildIngestResponse(_request, 0, 0, "no algorithm exists for key " + query.key, "error"));
+                    release(query.key);
+                    return;
+                }
+                bufferIngest(_request);
+            });
+            return;
+        }
+        bufferIngest(_request);
+    }
+
+    private void bufferIngest(Request _request) {
+        Query query = _request.query;
+        List<Point> buffer = ingestBuffers.computeIfAbsent(query.key, k -> new ArrayList<>());
+        if (buffer.isEmpty()) {
+            ingestBufferStarts.put(query.key, System.currentTimeMillis());
+            // the last points are flushed even if no ingest request follows them
+            getContext().getSystem().scheduler().scheduleOnce(Duration.ofMillis(this.ingestBatchInterval), self(),
+                    new IngestDue(query.key), getContext().getDispatcher(), ActorRef.noSender());
+        }
+        long now = System.currentTimeMillis();
+        for (double[] point: _request.points) {
+            buffer.add(new TimedPoint(point[0], point[1], point.length > 2? (long) point[2]: now));
+        }
+
+        if (_request.flush
+                || buffer.size() >= this.ingestBatchSize
+                || System.currentTimeMillis() - ingestBufferStarts.get(query.key) >= this.ingestBatchInterval) {
+            flushIngestBuffer(query.key, ingested -> {
+                respond(buildIngestResponse(_request, ingested, bufferedSize(query.key), "ok", "done"));
+                release(query.key);
+            });
+        }
+        else {
+            respond(buildIngestResponse(_request, 0, bufferedSize(query.key), "ok", "done"));
+            release(query.key);
+        }
+    }
+
+    /**
+     * if the buffer of given key waited ingest.batch.interval ms or other agents ingested points into the key
+     */
+    private boolean ingestDue(String key) {
+        Long bufferStart = ingestBufferStarts.get(key);
+        return ingestedBatches.containsKey(key)
+                || (bufferStart != null && System.currentTimeMillis() - bufferStart >= this.ingestBatchInterval);
+    }
+
+    /**
+     * flush the buffer of given key, then load the points other agents ingested into it
+     *
+     * @param key
+     * @param _then - accepts the number of points inserted
+     */
+    private void flushIngested(String key, Consumer<Integer> _then) {
+        flushIngestBuffer(key, ingested -> loadIngested(key, loaded -> _then.accept(ingested + loaded)));
+    }
+
+    private int bufferedSize(String key) {
+        return ingestBuffers.containsKey(key)? ingestBuffers.get(key).size(): 0;
+    }
+
+    /**
+     * insert the buffered points of given key into its algorithm
+     *  - the micro-batch is appended to the delta log first on the blocking pool,
+     *    so a restart replays it on top of the .raqt snapshot
+     *  - then loaded on the build pool
+     *
+     * @param key
+     * @param _then - accepts the number of points inserted
+     */
+    private void flushIngestBuffer(String key, Consumer<Integer> _then) {
+        List<Point> buffer = ingestBuffers.remove(key);
+        ingestBufferStarts.remove(key);
+        if (buffer == null || buffer.isEmpty()) {
+            _then.accept(0);
+            return;
+        }
+
+        String fileName = snapshotFileName(key);
+        long applied = ingestedSeqs.get(key);
+        EventStream eventStream = getContext().getSystem().eventStream();
+        // log before loading, algorithms may project the points in place,
+        // the points other agents logged since applied come along
+        runAsync(key, this.blockingExecutor, () -> DeltaLog.of(fileName).append(buffer, applied,
+                batch -> eventStream.publish(new Ingested(key, batch))), delta -> {
+            if (delta == null) {
+                // not logged, only this algorithm gets the points
+                loadPoints(key, buffer, applied, _then);
+                return;
+            }
+            loadDelta(key, delta, _then);
+        });
+    }
+
+    /**
+     * keep given points published by another agent if its algorithm of the key does not have them yet,
+     * and load them once the key is free
+     *
+     * @param _ingested
+     */
+    private void receiveIngested(Ingested _ingested) {
+        String key = _ingested.key;
+        Long applied = ingestedSeqs.get(key);
+        if (applied == null || _ingested.batch.end() <= applied) {
+            return;
+        }
+        ingestedBatches.computeIfAbsent(key, k -> new ArrayList<>()).add(_ingested.batch);
+        if (!busyKeys.contains(key)) {
+            busyKeys.add(key);
+            loadIngested(key, loaded -> release(key));
+        }
+    }
+
+    /**
+     * load the points other agents ingested into given key,
+     * read back from the delta log if one of their batches was missed
+     *
+     * @param key
+     * @param _then - accepts the number of points inserted
+     */
+    private void loadIngested(String key, Consumer<Integer> _then) {
+        List<DeltaLog.Batch> batches = ingestedBatches.remove(key);
+        Long applied = ingestedSeqs.get(key);
+        if (batches == null || applied == null || !algorithms.containsKey(key)) {
+            _then.accept(0);
+            return;
+        }
+        DeltaLog.Batch delta = DeltaLog.merge(batches, applied);
+        if (delta != null) {
+            loadDelta(key, delta, _then);
+            return;
+        }
+        loadLogged(key, _then);
+    }
+
+    /**
+     * load the points of the delta log given key has not applied yet
+     *
+     * @param key
+     * @param _then - accepts the number of points inserted
+     */
+    private void loadLogged(String key, Consumer<Integer> _then) {
+        long applied = ingestedSeqs.get(key);
+        String fileName = snapshotFileName(key);
+        runAsync(key, this.blockingExecutor, () -> DeltaLog.of(fileName).since(applied), delta -> loadDelta(key, delta, _then));
+    }
+
+    /**
+     * load the points of given batch the algorithm of given key has not applied yet
+     *
+     * @param key
+     * @param delta
+     * @param _then - accepts the number of points inserted
+     */
+    private void loadDelta(String key, DeltaLog.Batch delta, Consumer<Integer> _then) {
+        long applied = ingestedSeqs.get(key);
+        loadPoints(key, delta.points(applied), Math.max(applied, delta.end()), _then);
+    }
+
+    /**
+     * insert points into the algorithm of given key on the build pool
+     *
+     * @param key
+     * @param points - in [lng, lat]
+     * @param applied - sequence of the delta log the algorithm has applied up to with the points
+     * @param _then - accepts the number of points inserted
+     */
+    private void loadPoints(String key, List<Point> points, long applied, Consumer<Integer> _then) {
+        IAlgorithm algorithm = algorithms.get(key);
+        if (points.isEmpty()) {
+            ingestedSeqs.put(key, applied);
+            _then.accept(0);
+            return;
+        }
+        // prefetched answers do not have the ingested points
+        Prefetcher prefetcher = prefetchers.get(key);
+        if (prefetcher != null) {
+            prefetcher.clear();
+        }
+        runAsync(key, this.buildExecutor, () -> {
+            // the window follows the point times, not the wall clock, a historically built window keeps its buckets
+            if (algorithm instanceof WindowedRAQuadTree) {
+                ((WindowedRAQuadTree) algorithm).advanceTo(WindowedRAQuadTree.latestTime(points));
+            }
+            MyTimer.startTimer();
+            algorithm.load(points);
+            // refresh samples of the nodes touched by this micro-batch
+            algorithm.finishLoad();
+            MyTimer.stopTimer();
+            Metrics.recordSeconds(Metrics.LOAD_TIME, "ingest", MyTimer.durationSeconds());
+            MyLogger.debug(this.getClass(), "ingested {} points.", points.size());
+            return points.size();
+        }, loaded -> {
+            ingestedSeqs.put(key, applied);
+            _then.accept(loaded);
+        });
+    }
+
+    private JsonNode buildIngestResponse(Request _request, int _ingested, int _buffered, String _msg, String _status) {
+        ObjectNode response = JsonNodeFactory.instance.objectNode();
+        response.put("type", _request.type);
+        if (_request.query != null) {
+            response.put("key", _request.query.key);
+        }
+        response.put("status", _status);
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        result.put("ingested", _ingested);
+        result.put("buffered", _buffered);
+        result.put("message", _msg);
+        response.set("result", result);
+        return response;
     }
 
     private IAlgorithm getAlgorithm(Query query) {
@@ -439,11 +1400,12 @@ public class Agent extends AbstractActor {
             algorithm = algorithms.get(query.key);
         }
         else {
-            // if too many cached clusters, replace the least used one
+            // if too many cached clusters, replace the least used one without work in flight
             if (algorithms.size() > MAX_ALGORITHMS) {
                 String leastUsedAlgorithmKey = null;
                 int leastHit = Integer.MAX_VALUE;
                 for (Map.Entry<String, Integer> map: this.algorithmsHits.entrySet()) {
+                    if (busyKeys.contains(map.getKey()) || tilesExports.containsKey(map.getKey())) continue;
                     if (map.getValue() < leastHit) {
                         leastHit = map.getValue();
                         leastUsedAlgorithmKey = map.getKey();
@@ -451,6 +1413,10 @@ public class Agent extends AbstractActor {
                 }
                 if (leastUsedAlgorithmKey != null) {
                     algorithms.remove(leastUsedAlgorithmKey);
+                    ingestedSeqs.remove(leastUsedAlgorithmKey);
+                    ingestedBatches.remove(leastUsedAlgorithmKey);
+                    shippedSamples.remove(leastUsedAlgorithmKey);
+                    prefetchers.remove(leastUsedAlgorithmKey);
                 }
             }
 
@@ -487,6 +1453,14 @@ public class Agent extends AbstractActor {
                 case "raqtdv2":
                     algorithm = new RAQuadTreeDistanceV2();
                     break;
+                case "keywordraquadtree":
+                case "kraqt":
+                    algorithm = new KeywordRAQuadTree();
+                    break;
+                case "windowedraquadtree":
+                case "wraqt":
+                    algorithm = new WindowedRAQuadTree();
+                    break;
                 default:
                     return null;
             }
@@ -510,6 +1484,29 @@ public class Agent extends AbstractActor {
         }
     }
 
+    /**
+     * tell the client the work of given request failed, in the response format of its type
+     *
+     * @param _request
+     * @param _error
+     */
+    private void respondError(Request _request, Throwable _error) {
+        String msg = String.valueOf(_error.getMessage());
+        switch (_request.type) {
+            case "ingest":
+                respond(buildIngestResponse(_request, 0, bufferedSize(_request.query.key), msg, "error"));
+                break;
+            case "tiles":
+                respond(buildTilesResponse(_request, 0, 0, msg, "error"));
+                break;
+            default:
+                JsonNode response = Json.toJson(_request);
+                ((ObjectNode) response).put("status", "error");
+                ((ObjectNode) response).put("message", msg);
+                respond(response);
+        }
+    }
+
     private JsonNode buildCmdResponse(Request _request, String _cursor, String _msg, String _status) {
         JsonNode response = Json.toJson(_request);
         ObjectNode result = JsonNodeFactory.instance.objectNode();
@@ -524,63 +1521,69 @@ public class Agent extends AbstractActor {
         if (_request.keyword == null) {
             // TODO - exception
         }
-        if (postgreSQL == null) {
-            postgreSQL = new PostgreSQL();
-        }
-        batch = postgreSQL.queryPointsForKeyword(_request.keyword);
-        if (batch == null) {
-            // TODO - exception
-        }
+        IPointSource source = getPointSource();
+        runAsync(null, fetchExecutor, () -> source.queryPointsForKeyword(_request.keyword), batch -> {
+            if (batch == null) {
+                // TODO - exception
+            }
 
-        ObjectNode result = JsonNodeFactory.instance.objectNode();
-        result.put("type", "FeatureCollection");
-        ArrayNode features = result.putArray("features");
-        buildGeoJsonArrayOfPoint(batch, features);
-        respond(result);
+            ObjectNode result = JsonNodeFactory.instance.objectNode();
+            result.put("type", "FeatureCollection");
+            ArrayNode features = result.putArray("features");
+            buildGeoJsonArrayOfPoint(batch, features);
+            respond(result);
+        });
     }
 
     private void handleProgressTransfer(Request _request) {
         if (_request.keyword == null) {
             // TODO - exception
         }
-        this.batch = null;
 
         // initialize query slicing parameters
         Date currentStart = new Date(this.start.getTime());
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(currentStart);
-        calendar.add(Calendar.DATE, this.intervalDays);
-        Date currentEnd = calendar.getTime();
-        long totalDays = (this.end.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
-
-        // start query slicing cycles
-        while (currentStart.before(this.end)) {
+        transferNextSlice(_request, currentStart, sliceEnd(currentStart));
+    }
 
-            long progress = (currentEnd.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
-            progress = 100 * progress / totalDays;
+    private void transferNextSlice(Request _request, Date currentStart, Date currentEnd) {
+        if (!currentStart.before(this.end)) {
+            return;
+        }
 
-            // query delta data, pointTuples only keep delta data
-            boolean success = fetchBatchFromDB(_request.keyword, currentStart, currentEnd);
-            if (!success) {
+        long totalDays = (this.end.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
+        long progress = (currentEnd.getTime() - this.start.getTime()) / (24 * 3600 * 1000);
+        progress = 100 * progress / totalDays;
+        long currentProgress = progress;
+
+        // query delta data, pointTuples only keep delta data
+        IPointSource source = getPointSource();
+        runAsync(null, fetchExecutor, () -> fetchBatchFromDB(source, _request.keyword, currentStart, currentEnd), batch -> {
+            if (batch == null) {
                 // TODO - exception
             }
 
-            // construct the response Json and return
-            JsonNode response = Json.toJson(_request);
-            ObjectNode result = JsonNodeFactory.instance.objectNode();
-            ArrayNode data = result.putArray("data");
-            buildDataArrayOfPoint(batch, data);
-            ((ObjectNode) response).put("progress", progress);
-            ((ObjectNode) response).set("result", result);
-            respond(response);
+            // respond the slice in chunks, next cycle starts once the last chunk was taken
+            transferChunk(_request, batch, 0, currentProgress,
+                    () -> transferNextSlice(_request, currentEnd, sliceEnd(currentEnd)));
+        });
+    }
 
-            // prepare query slicing parameters for next cycle
-            currentStart = currentEnd;
-            calendar = Calendar.getInstance();
-            calendar.setTime(currentStart);
-            calendar.add(Calendar.DATE, this.intervalDays);
-            currentEnd = calendar.getTime();
-        }
+    /**
+     * respond points [_from, _from + agent.outbound.chunk) of a slice,
+     * the JSON of next chunk is only built once this one was taken by the stream
+     */
+    private void transferChunk(Request _request, List<Point> _batch, int _from, long _progress, Runnable _then) {
+        int to = Math.min(_from + this.transferChunkSize, _batch.size());
+
+        // construct the response Json and return
+        JsonNode response = Json.toJson(_request);
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        ArrayNode data = result.putArray("data");
+        buildDataArrayOfPoint(_batch.subList(_from, to), data);
+        ((ObjectNode) response).put("progress", _progress);
+        ((ObjectNode) response).set("result", result);
+        send(response, null, to < _batch.size()?
+                () -> transferChunk(_request, _batch, to, _progress, _then): _then);
     }
 
     private void handleAnalysis(Request _request) {
@@ -614,7 +1617,7 @@ public class Agent extends AbstractActor {
         switch (request.type) {
             case "query":
                 MyLogger.info(this.getClass(), "request is a Query");
-                handleQuery(request);
+                handleKeyedRequest(request);
                 break;
             case "cmd":
                 MyLogger.info(this.getClass(), "request is a Command");
@@ -632,6 +1635,14 @@ public class Agent extends AbstractActor {
                 MyLogger.info(this.getClass(), "request is a Analysis");
                 handleAnalysis(request);
                 break;
+            case "ingest":
+                MyLogger.debug(this.getClass(), "request is an Ingest");
+                handleKeyedRequest(request);
+                break;
+            case "tiles":
+                MyLogger.info(this.getClass(), "request is a Tiles export");
+                handleKeyedRequest(request);
+                break;
             default:
                 MyLogger.info(this.getClass(), "request type is unknown");
                 JsonNode response = Json.toJson(_request);
@@ -641,14 +1652,289 @@ public class Agent extends AbstractActor {
         }
     }
 
+    /**
+     * query, ingest and tiles requests of one key are handled one at a time,
+     * a request of a key with work in flight waits until the key is released
+     *
+     * @param _request
+     */
+    private void handleKeyedRequest(Request _request) {
+        String key = _request.query == null? null: _request.query.key;
+        if (key != null) {
+            if (busyKeys.contains(key)) {
+                pendingRequests.computeIfAbsent(key, k -> new ArrayDeque<>()).add(_request);
+                return;
+            }
+            busyKeys.add(key);
+            activeRequests.put(key, _request);
+        }
+        if (_request.type.equals("ingest")) {
+            handleIngest(_request);
+        }
+        else if (_request.type.equals("tiles")) {
+            handleTiles(_request);
+        }
+        else {
+            handleQuery(_request);
+        }
+    }
+
+    /**
+     * release given key once the work of its request is done,
+     * as a message so that the next waiting request is handled after the current message
+     *
+     * @param key - null if the request does not hold a key
+     */
+    private void release(String key) {
+        if (key == null) {
+            return;
+        }
+        self().tell(new KeyReleased(key), ActorRef.noSender());
+    }
+
+    /**
+     * run work on given pool and continue with its result on this agent,
+     * continuations run as WorkDone messages so they can use the states of this agent
+     *  - if the work fails, the error is logged, the request holding the key gets an error response
+     *    and the key is released
+     *
+     * @param key - key of the request the work belongs to, null if the request does not hold a key
+     * @param executor
+     * @param work
+     * @param _then
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void runAsync(String key, Executor executor, Supplier<T> work, Consumer<T> _then) {
+        ActorRef self = self();
+        Consumer<Object> then = (Consumer<Object>) _then;
+        Request request = key == null? null: activeRequests.get(key);
+        CompletableFuture.supplyAsync(work, executor).whenComplete((result, error) ->
+                self.tell(new WorkDone(key, request, result, error, then), ActorRef.noSender()));
+    }
+
     private void respond(JsonNode _response) {
-        MyLogger.info(this.getClass(), "responding in JSON format.");
-        out.tell(_response, self());
+        MyLogger.debug(this.getClass(), "responding in JSON format.");
+        send(_response, null, null);
     }
 
     private void respond(byte[] _response) {
         ByteString response = ByteString.fromArray(_response);
-        MyLogger.info(this.getClass(), "responding in Binary format.");
-        out.tell(response, self());
+        MyLogger.debug(this.getClass(), "responding in Binary format.");
+        send(response, null, null);
+    }
+
+    /**
+     * send a frame to the client
+     *
+     * @param _message - JsonNode or ByteString
+     * @param _conflateKey - frames of the same key replace each other while waiting in outbox, null if never,
+     *                      a frame of it must not need _onSent, the one it replaces is dropped
+     * @param _onSent - run on this agent once the frame was taken by the stream, null if nothing
+     */
+    private void send(Object _message, String _conflateKey, Runnable _onSent) {
+        if (this.outQueue == null) {
+            out.tell(_message, self());
+            if (_onSent != null) {
+                _onSent.run();
+            }
+            return;
+        }
+        if (this.outClosed) {
+            return;
+        }
+        if (_conflateKey != null && discard(_conflateKey)) {
+            MyLogger.debug(this.getClass(), "client is behind, conflated frame of {}.", _conflateKey);
+        }
+        this.outbox.add(new Outbound(_message, _conflateKey, _onSent));
+        offerNext();
+    }
+
+    /**
+     * drop the frames of given conflate key still waiting in outbox
+     *
+     * @param _conflateKey
+     * @return if any frame was dropped
+     */
+    private boolean discard(String _conflateKey) {
+        if (this.outbox == null) {
+            return false;
+        }
+        return this.outbox.removeIf(frame -> _conflateKey.equals(frame.conflateKey));
+    }
+
+    private void offerNext() {
+        if (this.offering || this.outbox.isEmpty()) {
+            return;
+        }
+        this.offering = true;
+        Outbound frame = this.outbox.poll();
+        ActorRef self = self();
+        this.outQueue.offer(frame.message).whenComplete((result, error) ->
+                self.tell(new Offered(frame, result, error), ActorRef.noSender()));
+    }
+
+    /**
+     * result of work run on one of the pools, handled back on the agent
+     */
+    private static class WorkDone {
+        final String key;
+        final Request request; // request holding the key when the work started, null if none
+        final Object result;
+        final Throwable error;
+        final Consumer<Object> then;
+
+        WorkDone(String key, Request request, Object result, Throwable error, Consumer<Object> then) {
+            this.key = key;
+            this.request = request;
+            this.result = result;
+            this.error = error;
+            this.then = then;
+        }
+    }
+
+    /**
+     * points logged by an agent, published to all agents
+     */
+    private static class Ingested {
+        final String key;
+        final DeltaLog.Batch batch;
+
+        Ingested(String key, DeltaLog.Batch batch) {
+            this.key = key;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * ingest.batch.interval passed since a buffer of the key started
+     */
+    private static class IngestDue {
+        final String key;
+
+        IngestDue(String key) {
+            this.key = key;
+        }
+    }
+
+    private static class KeyReleased {
+        final String key;
+
+        KeyReleased(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * binary result of a query, with its trace if the algorithm traced it
+     */
+    private static class Answer {
+        final byte[] binaryData;
+        final QueryTrace trace;
+
+        Answer(byte[] binaryData, QueryTrace trace) {
+            this.binaryData = binaryData;
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * coarser result of an anytime query, superseded by later results of the same key if the client is behind
+     */
+    private static class Refined {
+        final String key;
+        final byte[] binaryData;
+
+        Refined(String key, byte[] binaryData) {
+            this.key = key;
+            this.binaryData = binaryData;
+        }
+    }
+
+    /**
+     * predicted viewports of a key still to be prefetched
+     */
+    private static class Prefetch {
+        final String key;
+        final long generation;
+        final Deque<Query> viewports;
+
+        Prefetch(String key, long generation, Deque<Query> viewports) {
+            this.key = key;
+            this.generation = generation;
+            this.viewports = viewports;
+        }
+    }
+
+    /**
+     * states of a tiles export carried across its steps
+     */
+    private static class TilesExport {
+        final Request request;
+        final IAlgorithm algorithm;
+        final TileArchive.Writer writer;
+        final Deque<int[]> tiles; // [z, x, y] of tiles to export, in level order
+        final long startTime; // nanoseconds the export started
+        boolean running; // a step holds the key
+
+        TilesExport(Request request, IAlgorithm algorithm, TileArchive.Writer writer) {
+            this.request = request;
+            this.algorithm = algorithm;
+            this.writer = writer;
+            this.tiles = new ArrayDeque<>();
+            this.tiles.add(new int[]{0, 0, 0});
+            this.startTime = System.nanoTime();
+            this.running = false;
+        }
+    }
+
+    /**
+     * states of a progressive load carried across its query slicing cycles
+     */
+    private static class ProgressiveLoad {
+        final Request request;
+        Date currentStart;
+        Date currentEnd;
+
+        // for experiments analysis
+        final List<Double> clusterTimes = new ArrayList<>();
+        final List<Double> treeTimes = new ArrayList<>();
+        final List<Integer> usedMemory = new ArrayList<>();
+        final List<Integer> totalMemory = new ArrayList<>();
+
+        ProgressiveLoad(Request request, Date currentStart, Date currentEnd) {
+            this.request = request;
+            this.currentStart = currentStart;
+            this.currentEnd = currentEnd;
+        }
+    }
+
+    /**
+     * frame waiting in outbox
+     */
+    private static class Outbound {
+        final Object message;
+        final String conflateKey;
+        final Runnable onSent;
+
+        Outbound(Object message, String conflateKey, Runnable onSent) {
+            this.message = message;
+            this.conflateKey = conflateKey;
+            this.onSent = onSent;
+        }
+    }
+
+    /**
+     * result of offering a frame to the outbound stream
+     */
+    private static class Offered {
+        final Outbound frame;
+        final QueueOfferResult result;
+        final Throwable error;
+
+        Offered(Outbound frame, QueueOfferResult result, Throwable error) {
+            this.frame = frame;
+            this.result = result;
+            this.error = error;
+        }
     }
 }
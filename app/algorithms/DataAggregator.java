@@ -43,8 +43,9 @@ public class DataAggregator implements IAlgorithm {
         System.out.println("[Data Aggregator] loading " + points.size() + " points ... ...");
 
         MyTimer.startTimer();
+        lngLatToXY(points);
         for (Point point: points) {
-            this.index.insert(lngLatToXY(point));
+            this.index.insert(point);
         }
         MyTimer.stopTimer();
         double loadTime = MyTimer.durationSeconds();
@@ -148,7 +149,7 @@ public class DataAggregator implements IAlgorithm {
             List<Point> allPoints = getPoints(lng0, lat0, lng1, lat1);
             MyTimer.stopTimer();
             double treeTime = MyTimer.durationSeconds();
-            MyTimer.temporaryTimer.put("treeTime", treeTime);
+            TimingContext.current().treeTime = treeTime;
             System.out.println("[Data Aggregator] tree search got " + allPoints.size() + " raw data points.");
             System.out.println("[Data Aggregator] tree search time: " + treeTime + " seconds.");
 
@@ -190,16 +191,14 @@ public class DataAggregator implements IAlgorithm {
                     // only add it into result when <i, j> is not in set
                     if (!bitmap[i][j]) {
                         bitmap[i][j] = true;
-                        lng = xLng(point.getX());
-                        lat = yLat(point.getY());
-                        messageBuilder.add(lng, lat);
+                        messageBuilder.add(point);
                         resultSize++;
                     }
                 }
             }
             MyTimer.stopTimer();
             double aggregateTime = MyTimer.durationSeconds();
-            MyTimer.temporaryTimer.put("aggregateTime", aggregateTime);
+            TimingContext.current().aggregateTime = aggregateTime;
             System.out.println("[Data Aggregator] after aggregation, reduced to " + resultSize + " points.");
             System.out.println("[Data Aggregator] aggregation time: " + aggregateTime + " seconds.");
 
@@ -221,7 +220,7 @@ public class DataAggregator implements IAlgorithm {
 
             MyTimer.stopTimer();
             double treeTime = MyTimer.durationSeconds();
-            MyTimer.temporaryTimer.put("treeTime", treeTime);
+            TimingContext.current().treeTime = treeTime;
             System.out.println("[Data Aggregator] tree search got " + resultSize + " raw data points, and directly aggregates into a bitmap");
             System.out.println("[Data Aggregator] tree search time: " + treeTime + " seconds.");
 
@@ -36,8 +36,9 @@ public class DataExplorer implements IAlgorithm {
         this.totalNumberOfPoints += points.size();
 
         MyTimer.startTimer();
+        lngLatToXY(points);
         for (Point point: points) {
-            this.index.insert(lngLatToXY(point));
+            this.index.insert(point);
         }
         MyTimer.stopTimer();
         double loadTime = MyTimer.durationSeconds();
@@ -108,24 +109,21 @@ public class DataExplorer implements IAlgorithm {
         List<Point> allPoints = getPoints(lng0, lat0, lng1, lat1);
         MyTimer.stopTimer();
         double treeTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("treeTime", treeTime);
+        TimingContext.current().treeTime = treeTime;
         System.out.println("[Data Explorer] tree search got " + allPoints.size() + " data points.");
         System.out.println("[Data Explorer] tree search time: " + treeTime + " seconds.");
 
         // build binary result message
         MyTimer.startTimer();
         BinaryMessageBuilder messageBuilder = new BinaryMessageBuilder();
-        double lng, lat;
         int resultSize = 0;
         for (Point point : allPoints) {
-            lng = xLng(point.getX());
-            lat = yLat(point.getY());
-            messageBuilder.add(lng, lat);
+            messageBuilder.add(point);
             resultSize ++;
         }
         MyTimer.stopTimer();
         double buildBinaryTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
+        TimingContext.current().aggregateTime = buildBinaryTime;
         System.out.println("[Data Explorer] build binary result with " + resultSize + " points.");
         System.out.println("[Data Explorer] build binary result time: " + buildBinaryTime + " seconds.");
 
@@ -6,6 +6,8 @@ import model.Query;
 import util.BinaryMessageBuilder;
 import util.Constants;
 import util.MyTimer;
+import util.TimingContext;
+import util.render.CoverageRenderer;
 import util.render.DeckGLRenderer;
 import util.render.IRenderer;
 import util.MyMemory;
@@ -16,16 +18,27 @@ import static util.Mercator.*;
 
 public class GQuadTree implements IAlgorithm {
 
-    public static double highestLevelNodeDimension;
+    // configuration of this tree, fixed once constructed
+    final double highestLevelNodeDimension;
     // resolution of each node (similar to a tile in map systems), e.g. 512
-    public static int oneNodeResolution;
-
-    public static IRenderer renderer;
+    final int oneNodeResolution;
+
+    final IRenderer renderer;
+
+    /**
+     * levels and pixel scales the range search of one query stopped at
+     */
+    static class RangeStats {
+        int lowestLevelForQuery = Integer.MAX_VALUE; // the lowest level of range searching for a query
+        double lowestPixelScale = Double.MAX_VALUE; // the lowest pixel scale of range searching for a query
+        int highestLevelForQuery = 0; // the highest level of range searching for a query
+        double highestPixelScale = 0.0; // the highest pixel scale of range searching for a query
+    }
 
     public class QuadTree {
         // Store count of the sub-tree
         public int count;
-        public byte[] rendering;
+        public byte[] rendering; // only needed while loading, released by finishLoad()
         public List<Point> samples;
 
         // children
@@ -108,6 +121,11 @@ public class GQuadTree implements IAlgorithm {
                 this.insertSouthEast(cX, cY, halfDimension, this.samples.get(0), aggregator, level + 1);
             }
 
+            // rendering was released by finishLoad(), start a new one for points appended afterwards
+            if (this.rendering == null) {
+                this.rendering = aggregator.createRendering(oneNodeResolution);
+            }
+
             // update the rendering of this node
             boolean isDifferent = aggregator.render(this.rendering, cX, cY, halfDimension, oneNodeResolution, point);
             // if new rendering is different, store this point within samples
@@ -159,9 +177,26 @@ public class GQuadTree implements IAlgorithm {
             nodesCount += 4;
         }
 
+        /**
+         * Pre-order traverse the quadtree,
+         * drop the renderings (only used by insert) and trim the samples lists
+         */
+        public void releaseRenderings() {
+            this.rendering = null;
+            if (this.samples instanceof ArrayList) {
+                ((ArrayList<Point>) this.samples).trimToSize();
+            }
+            if (this.northWest != null) {
+                this.northWest.releaseRenderings();
+                this.northEast.releaseRenderings();
+                this.southWest.releaseRenderings();
+                this.southEast.releaseRenderings();
+            }
+        }
+
         public List<Point> range(double ncX, double ncY, double nhalfDimension,
                                  double rcX, double rcY, double rhalfWidth, double rhalfHeight,
-                                 double rPixelScale, int level) {
+                                 double rPixelScale, int level, RangeStats stats) {
             List<Point> pointsInRange = new ArrayList<>();
 
             // Automatically abort if the range does not intersect this quad
@@ -170,8 +205,8 @@ public class GQuadTree implements IAlgorithm {
 
             // Terminate here, if there are no children
             if (this.northWest == null) {
-                highestLevelForQuery = Math.max(highestLevelForQuery, level);
-                highestPixelScale = Math.max(highestPixelScale, (nhalfDimension * 2 / oneNodeResolution));
+                stats.highestLevelForQuery = Math.max(stats.highestLevelForQuery, level);
+                stats.highestPixelScale = Math.max(stats.highestPixelScale, (nhalfDimension * 2 / oneNodeResolution));
                 if (this.samples != null) {
                     pointsInRange.addAll(this.samples);
                 }
@@ -180,8 +215,8 @@ public class GQuadTree implements IAlgorithm {
 
             // Terminate here, if this node's pixel scale is already smaller than the range query's pixel scale
             if ((nhalfDimension * 2 / oneNodeResolution) <= rPixelScale) {
-                lowestLevelForQuery = Math.min(lowestLevelForQuery, level);
-                lowestPixelScale = Math.min(lowestPixelScale, (nhalfDimension * 2 / oneNodeResolution));
+                stats.lowestLevelForQuery = Math.min(stats.lowestLevelForQuery, level);
+                stats.lowestPixelScale = Math.min(stats.lowestPixelScale, (nhalfDimension * 2 / oneNodeResolution));
                 // add this node's samples
                 pointsInRange.addAll(this.samples);
                 return pointsInRange;
@@ -195,25 +230,25 @@ public class GQuadTree implements IAlgorithm {
             cX = ncX - halfDimension;
             cY = ncY - halfDimension;
             pointsInRange.addAll(this.northWest.range(cX, cY, halfDimension,
-                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1));
+                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1, stats));
 
             // northeast
             cX = ncX + halfDimension;
             cY = ncY - halfDimension;
             pointsInRange.addAll(this.northEast.range(cX, cY, halfDimension,
-                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1));
+                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1, stats));
 
             // southwest
             cX = ncX - halfDimension;
             cY = ncY + halfDimension;
             pointsInRange.addAll(this.southWest.range(cX, cY, halfDimension,
-                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1));
+                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1, stats));
 
             // southeast
             cX = ncX + halfDimension;
             cY = ncY + halfDimension;
             pointsInRange.addAll(this.southEast.range(cX, cY, halfDimension,
-                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1));
+                    rcX, rcY, rhalfWidth, rhalfHeight, rPixelScale, level + 1, stats));
 
             return pointsInRange;
         }
@@ -377,11 +412,7 @@ public class GQuadTree implements IAlgorithm {
     QuadTree quadTree;
     int totalNumberOfPoints = 0;
     int totalStoredNumberOfPoints = 0;
-    static long nodesCount = 0; // count quad-tree nodes
-    static int lowestLevelForQuery = Integer.MAX_VALUE; // the lowest level of range searching for a query
-    static double lowestPixelScale = Double.MAX_VALUE; // the lowest pixel scale of range searching for a query
-    static int highestLevelForQuery = 0; // the highest level of range searching for a query
-    static double highestPixelScale = 0.0; // the highest pixel scale of range searching for a query
+    long nodesCount = 0; // count quad-tree nodes
 
     //-Timing-//
     static final boolean keepTiming = true;
@@ -396,7 +427,16 @@ public class GQuadTree implements IAlgorithm {
         // zoom level 0 is fixed with dimension 1.0
         highestLevelNodeDimension = 1.0 / Math.pow(2, Constants.MAX_ZOOM);
 
-        renderer = new DeckGLRenderer(Constants.RADIUS_IN_PIXELS);
+        switch (Constants.GQT_RENDERING.toLowerCase()) {
+            case "deckgl":
+                System.out.println("[General QuadTree Aggregator] node rendering = Deck.GL");
+                renderer = new DeckGLRenderer(Constants.RADIUS_IN_PIXELS);
+                break;
+            case "coverage":
+            default:
+                System.out.println("[General QuadTree Aggregator] node rendering = Coverage");
+                renderer = new CoverageRenderer(Constants.RADIUS_IN_PIXELS);
+        }
 
         // initialize the timing map
         if (keepTiming) {
@@ -414,8 +454,9 @@ public class GQuadTree implements IAlgorithm {
         this.totalNumberOfPoints += points.size();
         int count = 0;
         int skip = 0;
+        lngLatToXY(points);
         for (Point point: points) {
-            if (this.quadTree.insert(0.5, 0.5, 0.5, lngLatToXY(point), renderer, 0))
+            if (this.quadTree.insert(0.5, 0.5, 0.5, point, renderer, 0))
                 count ++;
             else
                 skip ++;
@@ -445,7 +486,14 @@ public class GQuadTree implements IAlgorithm {
 
     @Override
     public void finishLoad() {
-
+        // renderings are only used to decide which points to keep while inserting
+        MyTimer.startTimer();
+        this.quadTree.releaseRenderings();
+        MyTimer.stopTimer();
+        double releaseTime = MyTimer.durationSeconds();
+        System.out.println("==== Data loading finished ====");
+        System.out.println("[General QuadTree Aggregator] release node renderings time: " + releaseTime + " seconds.");
+        MyMemory.printMemory();
     }
 
     public byte[] answerQuery(Query query) {
@@ -475,18 +523,15 @@ public class GQuadTree implements IAlgorithm {
                 "range = [(" + rcX + ", " + rcY + "), " + rhalfWidth + ", " + rhalfHeight + "] ; \n" +
                 "pixelScale = " + pixelScale + ";");
 
-        lowestLevelForQuery = Integer.MAX_VALUE;
-        lowestPixelScale = Double.MAX_VALUE;
-        highestLevelForQuery = 0;
-        highestPixelScale = 0.0;
+        RangeStats stats = new RangeStats();
 
         MyTimer.startTimer();
         List<Point> points = this.quadTree.range(0.5, 0.5, 0.5,
-                rcX, rcY, rhalfWidth, rhalfHeight, pixelScale, 0);
+                rcX, rcY, rhalfWidth, rhalfHeight, pixelScale, 0, stats);
         MyTimer.stopTimer();
         double treeTime = MyTimer.durationSeconds();
 
-        MyTimer.temporaryTimer.put("treeTime", treeTime);
+        TimingContext.current().treeTime = treeTime;
         System.out.println("[General QuadTree Aggregator] tree search got " + points.size() + " data points.");
         System.out.println("[General QuadTree Aggregator] tree search time: " + treeTime + " seconds.");
 
@@ -503,17 +548,17 @@ public class GQuadTree implements IAlgorithm {
         }
         MyTimer.stopTimer();
         double buildBinaryTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
+        TimingContext.current().aggregateTime = buildBinaryTime;
 
         System.out.println("[General QuadTree Aggregator] build binary result with  " + resultSize + " points.");
         System.out.println("[General QuadTree Aggregator] build binary result time: " + buildBinaryTime + " seconds.");
 
         MyTimer.stopTimer();
         System.out.println("[General QuadTree Aggregator] answer query total time: " + MyTimer.durationSeconds() + " seconds.");
-        System.out.println("[General QuadTree Aggregator] lowest level for this query: " + lowestLevelForQuery);
-        System.out.println("[General QuadTree Aggregator] highest level for this query: " + highestLevelForQuery);
-        System.out.println("[General QuadTree Aggregator] lowest pixelScale for this query: " + lowestPixelScale);
-        System.out.println("[General QuadTree Aggregator] highest pixelScale for this query: " + highestPixelScale);
+        System.out.println("[General QuadTree Aggregator] lowest level for this query: " + stats.lowestLevelForQuery);
+        System.out.println("[General QuadTree Aggregator] highest level for this query: " + stats.highestLevelForQuery);
+        System.out.println("[General QuadTree Aggregator] lowest pixelScale for this query: " + stats.lowestPixelScale);
+        System.out.println("[General QuadTree Aggregator] highest pixelScale for this query: " + stats.highestPixelScale);
         return messageBuilder.getBuffer();
     }
 
@@ -2,8 +2,10 @@ package algorithms;
 
 import model.Point;
 import model.Query;
+import util.ShippedSamples;
 
 import java.util.List;
+import java.util.function.ObjDoubleConsumer;
 
 public interface IAlgorithm {
 
@@ -24,6 +26,21 @@ public interface IAlgorithm {
      */
     byte[] answerQuery(Query query);
 
+    /**
+     * answer a query anytime, coarser results found while answering are given to _refinements first,
+     * and the final result may be a delta against the samples the client already holds
+     *  - by default an algorithm has no coarser results and always responds a full result
+     *
+     * @param - Query query
+     * @param _refinements - accepts each coarser result message (including preserved HEADER_SIZE header)
+     *                       and its size as a fraction of the target sample size
+     * @param _shipped - samples the client holds, null if the result must be full
+     * @return - byte[] binary format final result message (including preserved HEADER_SIZE header)
+     */
+    default byte[] answerQuery(Query query, ObjDoubleConsumer<byte[]> _refinements, ShippedSamples _shipped) {
+        return answerQuery(query);
+    }
+
     boolean readFromFile(String fileName);
 
     boolean writeToFile(String fileName);
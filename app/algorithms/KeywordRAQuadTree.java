@@ -0,0 +1,237 @@
+package algorithms;
+
+import model.Point;
+import model.Query;
+import model.TaggedPoint;
+import model.TimedPoint;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.Constants;
+import util.KeywordDictionary;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One RA-QuadTree over all records serving any keyword
+ *
+ *  - loaded with TaggedPoints, each node keeps a Roaring bitmap of ids of keywords in its subtree, see KeywordNode
+ *  - only keywords of the dictionary's vocabulary are kept, other terms of a point are dropped at load
+ *  - a query with Query.keyword only traverses nodes whose bitmap has the keyword,
+ *    and only returns samples having the keyword
+ *  - a query without keyword is answered as RAQuadTree does
+ *  - keyword bitmaps and the dictionary are saved next to the .raqt file in [fileName].keywords
+ */
+public class KeywordRAQuadTree extends RAQuadTree {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeywordRAQuadTree.class);
+
+    /**
+     * node of a KeywordRAQuadTree, RAQuadTree nodes of other trees do not carry the bitmap
+     */
+    public class KeywordNode extends QuadTree {
+        public RoaringBitmap keywords; // ids of keywords of tagged points in subtree, null if no tagged points
+
+        /**
+         * also add the keyword ids of a point inserted into this subtree to the keyword bitmap
+         *
+         * @param point
+         */
+        @Override
+        void summarize(Point point) {
+            super.summarize(point);
+            if (!(point instanceof TaggedPoint) || ((TaggedPoint) point).getKeywordIds() == null) return;
+            if (this.keywords == null) {
+                this.keywords = new RoaringBitmap();
+            }
+            for (int keywordId: ((TaggedPoint) point).getKeywordIds()) {
+                this.keywords.add(keywordId);
+            }
+        }
+
+        @Override
+        void splitSummaries(QuadTree child) {
+            super.splitSummaries(child);
+            ((KeywordNode) child).keywords = this.keywords;
+            this.keywords = this.keywords == null? null: this.keywords.clone();
+        }
+
+        @Override
+        boolean hasKeyword(int keywordId) {
+            return this.keywords != null && this.keywords.contains(keywordId);
+        }
+    }
+
+    KeywordDictionary dictionary;
+
+    public KeywordRAQuadTree() {
+        super();
+        this.dictionary = new KeywordDictionary();
+    }
+
+    @Override
+    QuadTree newNode() {
+        return new KeywordNode();
+    }
+
+    @Override
+    public void load(List<Point> points) {
+        // the vocabulary not configured is the most frequent keywords of the first batch
+        if (!this.dictionary.isFixed()) {
+            List<String[]> tokens = new ArrayList<>();
+            for (Point point: points) {
+                if (point instanceof TaggedPoint && ((TaggedPoint) point).getKeywords() != null) {
+                    tokens.add(((TaggedPoint) point).getKeywords());
+                }
+            }
+            this.dictionary.fix(tokens, Constants.KEYWORD_TOP);
+        }
+        // replace keywords by ids of the vocabulary before points are inserted
+        for (Point point: points) {
+            if (!(point instanceof TaggedPoint)) continue;
+            TaggedPoint taggedPoint = (TaggedPoint) point;
+            String[] keywords = taggedPoint.getKeywords();
+            if (keywords == null) continue;
+            int[] keywordIds = new int[keywords.length];
+            int size = 0;
+            for (String keyword: keywords) {
+                int keywordId = this.dictionary.idOf(keyword);
+                if (keywordId >= 0) {
+                    keywordIds[size ++] = keywordId;
+                }
+            }
+            taggedPoint.setKeywordIds(size == 0? null: size == keywordIds.length? keywordIds: Arrays.copyOf(keywordIds, size));
+            taggedPoint.setKeywords(null);
+        }
+        super.load(points);
+        logger.debug("[Keyword-RA-QuadTree] dictionary has {} keywords.", this.dictionary.size());
+    }
+
+    @Override
+    int keywordIdOf(Query query) {
+        if (query.keyword == null || query.keyword.isEmpty() || query.keyword.equals("%")) {
+            return NO_KEYWORD;
+        }
+        int keywordId = this.dictionary.lookup(query.keyword);
+        // a keyword never loaded gets an id no node has, so the result is empty
+        return keywordId < 0? this.dictionary.size(): keywordId;
+    }
+
+    @Override
+    public boolean readFromFile(String fileName) {
+        if (!super.readFromFile(fileName)) {
+            return false;
+        }
+        String keywordsFileName = fileName + ".keywords";
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(keywordsFileName)))) {
+            int size = in.readInt();
+            // ids as they were written, not the configured vocabulary
+            this.dictionary = new KeywordDictionary(null);
+            for (int i = 0; i < size; i ++) {
+                this.dictionary.idOf(in.readUTF());
+            }
+            this.dictionary.fix();
+            readKeywords(in, (KeywordNode) this.quadTree);
+            logger.info("[Keyword-RA-QuadTree] read {} keywords from file {}.", size, keywordsFileName);
+            return true;
+        } catch (IOException e) {
+            logger.error("[Keyword-RA-QuadTree] read from file {} failed!", keywordsFileName, e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean writeToFile(String fileName) {
+        if (!super.writeToFile(fileName)) {
+            return false;
+        }
+        String keywordsFileName = fileName + ".keywords";
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keywordsFileName)))) {
+            out.writeInt(this.dictionary.size());
+            for (int i = 0; i < this.dictionary.size(); i ++) {
+                out.writeUTF(this.dictionary.keywordOf(i));
+            }
+            writeKeywords(out, (KeywordNode) this.quadTree);
+            logger.info("[Keyword-RA-QuadTree] write {} keywords to file {}.", this.dictionary.size(), keywordsFileName);
+            return true;
+        } catch (IOException e) {
+            logger.error("[Keyword-RA-QuadTree] write to file {} failed!", keywordsFileName, e);
+        }
+        return false;
+    }
+
+    /**
+     * Pre-order traverse the quadtree, same order as the .raqt file, and write each node's
+     *   keyword bitmap (boolean present, bitmap), sample's keyword ids (int length, -1 if none, ids)
+     *   and keyword ids of each point on leaf bucket (same as sample's)
+     */
+    private static void writeKeywords(DataOutputStream out, KeywordNode node) throws IOException {
+        out.writeBoolean(node.keywords != null);
+        if (node.keywords != null) {
+            node.keywords.runOptimize();
+            node.keywords.serialize(out);
+        }
+        writeKeywordIds(out, node.sample);
+        if (node.bucket != null) {
+            for (Point point: node.bucket) {
+                writeKeywordIds(out, point);
+            }
+        }
+        if (node.northWest != null) {
+            writeKeywords(out, (KeywordNode) node.northWest);
+            writeKeywords(out, (KeywordNode) node.northEast);
+            writeKeywords(out, (KeywordNode) node.southWest);
+            writeKeywords(out, (KeywordNode) node.southEast);
+        }
+    }
+
+    private static void readKeywords(DataInputStream in, KeywordNode node) throws IOException {
+        if (in.readBoolean()) {
+            node.keywords = new RoaringBitmap();
+            node.keywords.deserialize(in);
+        }
+        node.sample = readKeywordIds(in, node.sample);
+        if (node.bucket != null) {
+            for (int i = 0; i < node.bucket.length; i ++) {
+                node.bucket[i] = readKeywordIds(in, node.bucket[i]);
+            }
+        }
+        if (node.northWest != null) {
+            readKeywords(in, (KeywordNode) node.northWest);
+            readKeywords(in, (KeywordNode) node.northEast);
+            readKeywords(in, (KeywordNode) node.southWest);
+            readKeywords(in, (KeywordNode) node.southEast);
+        }
+    }
+
+    private static void writeKeywordIds(DataOutputStream out, Point point) throws IOException {
+        int[] keywordIds = point instanceof TaggedPoint? ((TaggedPoint) point).getKeywordIds(): null;
+        out.writeInt(keywordIds == null? -1: keywordIds.length);
+        if (keywordIds != null) {
+            for (int keywordId: keywordIds) {
+                out.writeInt(keywordId);
+            }
+        }
+    }
+
+    /**
+     * @return given point tagged with the keyword ids read, or given point itself if it has none
+     */
+    private static Point readKeywordIds(DataInputStream in, Point point) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return point;
+        }
+        int[] keywordIds = new int[length];
+        for (int i = 0; i < length; i ++) {
+            keywordIds[i] = in.readInt();
+        }
+        long time = point instanceof TimedPoint? ((TimedPoint) point).getTime(): 0L;
+        TaggedPoint taggedPoint = new TaggedPoint(point.getX(), point.getY(), time, null);
+        taggedPoint.setKeywordIds(keywordIds);
+        return taggedPoint;
+    }
+}
@@ -10,7 +10,8 @@ import static util.Mercator.*;
 
 public class QuadTreeAggregator implements IAlgorithm {
 
-    public static double highestResScale;
+    // configuration of this tree, fixed once constructed
+    final double highestResScale;
 
     public class QuadTree {
         // Store count of the sub-tree
@@ -264,7 +265,7 @@ public class QuadTreeAggregator implements IAlgorithm {
     double quadTreeHalfHeight;
     int totalNumberOfPoints = 0;
     int totalStoredNumberOfPoints = 0;
-    static long nodesCount = 0; // count quad-tree nodes
+    long nodesCount = 0; // count quad-tree nodes
 
     //-Timing-//
     static final boolean keepTiming = true;
@@ -298,8 +299,9 @@ public class QuadTreeAggregator implements IAlgorithm {
         int count = 0;
         int skip = 0;
         this.totalNumberOfPoints += points.size();
+        lngLatToXY(points);
         for (Point point: points) {
-            if (this.quadTree.insert(this.quadTreeCX, this.quadTreeCY, this.quadTreeHalfWidth, this.quadTreeHalfHeight, lngLatToXY(point)))
+            if (this.quadTree.insert(this.quadTreeCX, this.quadTreeCY, this.quadTreeHalfWidth, this.quadTreeHalfHeight, point))
                 count ++;
             else
                 skip ++;
@@ -365,7 +367,7 @@ public class QuadTreeAggregator implements IAlgorithm {
             MyTimer.stopTimer();
             double treeTime = MyTimer.durationSeconds();
 
-            MyTimer.temporaryTimer.put("treeTime", treeTime);
+            TimingContext.current().treeTime = treeTime;
             System.out.println("[QuadTree Aggregator] tree search got " + points.size() + " data points.");
             System.out.println("[QuadTree Aggregator] tree search time: " + treeTime + " seconds.");
 
@@ -382,7 +384,7 @@ public class QuadTreeAggregator implements IAlgorithm {
             }
             MyTimer.stopTimer();
             double buildBinaryTime = MyTimer.durationSeconds();
-            MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
+            TimingContext.current().aggregateTime = buildBinaryTime;
             System.out.println("[QuadTree Aggregator] build binary result with  " + resultSize + " points.");
             System.out.println("[QuadTree Aggregator] build binary result time: " + buildBinaryTime + " seconds.");
 
@@ -420,7 +422,7 @@ public class QuadTreeAggregator implements IAlgorithm {
             MyTimer.stopTimer();
             double treeTime = MyTimer.durationSeconds();
 
-            MyTimer.temporaryTimer.put("treeTime", treeTime);
+            TimingContext.current().treeTime = treeTime;
             System.out.println("[QuadTree Aggregator] tree search got " + resultSize + " data points, and directly aggregates into a bitmap.");
             System.out.println("[QuadTree Aggregator] tree search time: " + treeTime + " seconds.");
 
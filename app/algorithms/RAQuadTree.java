@@ -2,25 +2,45 @@ package algorithms;
 
 import model.Point;
 import model.Query;
+import model.TaggedPoint;
+import model.TimedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import util.*;
 import util.render.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
 
 import static util.Mercator.*;
 
 public class RAQuadTree implements IAlgorithm {
 
+    private static final Logger logger = LoggerFactory.getLogger(RAQuadTree.class);
+
     public class QuadTree {
         public Point sample;
+        // output [lng, lat] of the sample, cached once the sample is selected to skip the inverse projection in responses,
+        // NaN until then
+        public float sampleLng = Float.NaN;
+        public float sampleLat = Float.NaN;
         public int count; // count of subtree
-        public double[] errors; // errors between this sample and four children's samples for all zoom levels
+        public double[] errors; // errors between this sample and four children's samples for all zoom levels, null if not expandable
+        public boolean dirty; // points were inserted into this subtree since its sample was last selected
+        public TimeSummary times; // temporal summary of timed points in subtree, null if settings.timeBuckets is 0 or no timed points
+        public Point[] bucket; // all points stored on a leaf holding more than one, see Settings.leafBucketSize
+        // compressed path from this node's cell down to the cell its four children split, 0 if not compressed
+        //   skip (levels, highest 6 bits) | quadrant of each skipped level (2 bits each, top level first)
+        public long path;
 
         public QuadTree() {
             this.sample = null;
             this.count = 0;
-            this.errors = new double[Constants.MAX_ZOOM + 1];
         }
 
         // children
@@ -35,6 +55,9 @@ public class RAQuadTree implements IAlgorithm {
          * each node format:
          *   level (int), cx (double), cy (double), halfDimension (double), count (int),
          *   sample.x (double), sample.y (double), errors[0] (double), errors[1] (double), ...
+         *   [, "p" path (long)] - only for compressed path
+         *   [, "b" x (double) " " y (double) [" " time (long)], ...] - one for each point on leaf bucket
+         *   [, sample.time (long), minTime (long), maxTime (long), timeHistogram[0] (int), ...] - only for timed points
          *
          * @param bufferedWriter
          * @param _cX
@@ -54,9 +77,39 @@ public class RAQuadTree implements IAlgorithm {
             else {
                 bufferedWriter.write(",");
             }
-            for (int zoom = 0; zoom <= Constants.MAX_ZOOM; zoom ++) {
+            for (int zoom = 0; zoom <= settings.maxZoom; zoom ++) {
                 bufferedWriter.write(",");
-                bufferedWriter.write(String.valueOf(this.errors[zoom]));
+                bufferedWriter.write(String.valueOf(this.errors == null? 0.0: this.errors[zoom]));
+            }
+            if (this.path != 0L) {
+                bufferedWriter.write(",p");
+                bufferedWriter.write(String.valueOf(this.path));
+            }
+            if (this.bucket != null) {
+                for (Point point: this.bucket) {
+                    bufferedWriter.write(",b");
+                    bufferedWriter.write(String.valueOf(point.getX()));
+                    bufferedWriter.write(" ");
+                    bufferedWriter.write(String.valueOf(point.getY()));
+                    if (point instanceof TimedPoint) {
+                        bufferedWriter.write(" ");
+                        bufferedWriter.write(String.valueOf(((TimedPoint) point).getTime()));
+                    }
+                }
+            }
+            if (this.times != null) {
+                bufferedWriter.write(",");
+                if (this.sample instanceof TimedPoint) {
+                    bufferedWriter.write(String.valueOf(((TimedPoint) this.sample).getTime()));
+                }
+                bufferedWriter.write(",");
+                bufferedWriter.write(String.valueOf(this.times.minTime));
+                bufferedWriter.write(",");
+                bufferedWriter.write(String.valueOf(this.times.maxTime));
+                for (int bucket = 0; bucket < this.times.histogram.length; bucket ++) {
+                    bufferedWriter.write(",");
+                    bufferedWriter.write(String.valueOf(this.times.histogram[bucket]));
+                }
             }
             bufferedWriter.newLine();
 
@@ -77,6 +130,14 @@ public class RAQuadTree implements IAlgorithm {
                 return;
             }
             else {
+                // children split the cell at the end of the compressed path
+                if (this.path != 0L) {
+                    double[] cell = this.skipPath(_cX, _cY, _halfDimension);
+                    _cX = cell[0];
+                    _cY = cell[1];
+                    _halfDimension = cell[2];
+                    _level += this.skip();
+                }
                 // recursively write the children
                 double halfDimension = _halfDimension / 2;
                 this.northWest.writeToFile(bufferedWriter, _cX - halfDimension, _cY - halfDimension, halfDimension, _level + 1);
@@ -92,6 +153,9 @@ public class RAQuadTree implements IAlgorithm {
          * each node format:
          *   level (int), cx (double), cy (double), halfDimension (double), count (int),
          *   sample.x (double), sample.y (double), errors[0] (double), errors[1] (double), ...
+         *   [, "p" path (long)] - only for compressed path
+         *   [, "b" x (double) " " y (double) [" " time (long)], ...] - one for each point on leaf bucket
+         *   [, sample.time (long), minTime (long), maxTime (long), timeHistogram[0] (int), ...] - only for timed points
          *
          * @param bufferedReader
          * @param _cX
@@ -112,7 +176,7 @@ public class RAQuadTree implements IAlgorithm {
 
             try {
                 // read current node
-                QuadTree node = new QuadTree();
+                QuadTree node = newNode();
                 String[] attributes = line.split(",");
                 int i = 0;
                 node.count = Integer.valueOf(attributes[i++]);
@@ -124,23 +188,72 @@ public class RAQuadTree implements IAlgorithm {
                     double x = Double.valueOf(attributes[i++]);
                     double y = Double.valueOf(attributes[i++]);
                     node.sample = new Point(x, y);
+                    node.cacheSampleLngLat();
                 }
 
-                for (int zoom = 0; zoom <= Constants.MAX_ZOOM; zoom++) {
+                node.errors = new double[settings.maxZoom + 1];
+                for (int zoom = 0; zoom <= settings.maxZoom; zoom++) {
                     node.errors[zoom] = Double.valueOf(attributes[i++]);
                 }
 
+                // compressed path
+                if (i < attributes.length && attributes[i].startsWith("p")) {
+                    node.path = Long.valueOf(attributes[i++].substring(1));
+                }
+
+                // leaf bucket
+                List<Point> bucketPoints = new ArrayList<>();
+                while (i < attributes.length && attributes[i].startsWith("b")) {
+                    String[] coordinates = attributes[i++].substring(1).split(" ");
+                    double x = Double.valueOf(coordinates[0]);
+                    double y = Double.valueOf(coordinates[1]);
+                    if (coordinates.length > 2) {
+                        bucketPoints.add(new TimedPoint(x, y, Long.valueOf(coordinates[2])));
+                    }
+                    else {
+                        bucketPoints.add(new Point(x, y));
+                    }
+                }
+                if (!bucketPoints.isEmpty()) {
+                    node.bucket = bucketPoints.toArray(new Point[bucketPoints.size()]);
+                }
+
+                // temporal summary
+                if (i < attributes.length) {
+                    String sampleTime = attributes[i++];
+                    if (!sampleTime.isEmpty() && node.sample != null) {
+                        node.sample = new TimedPoint(node.sample.getX(), node.sample.getY(), Long.valueOf(sampleTime));
+                    }
+                    node.times = new TimeSummary(attributes.length - i - 2);
+                    node.times.minTime = Long.valueOf(attributes[i++]);
+                    node.times.maxTime = Long.valueOf(attributes[i++]);
+                    for (int bucket = 0; bucket < node.times.histogram.length; bucket ++) {
+                        node.times.histogram[bucket] = Integer.valueOf(attributes[i++]);
+                    }
+                }
+
+                // children split the cell at the end of the compressed path
+                if (node.path != 0L) {
+                    double[] cell = node.skipPath(_cX, _cY, _halfDimension);
+                    _cX = cell[0];
+                    _cY = cell[1];
+                    _halfDimension = cell[2];
+                    _level += node.skip();
+                }
                 // recursively read the children
                 double halfDimension = _halfDimension / 2;
                 node.northWest = this.readFromFile(bufferedReader, _cX - halfDimension, _cY - halfDimension, halfDimension, _level + 1);
                 node.northEast = this.readFromFile(bufferedReader, _cX + halfDimension, _cY - halfDimension, halfDimension, _level + 1);
                 node.southWest = this.readFromFile(bufferedReader, _cX - halfDimension, _cY + halfDimension, halfDimension, _level + 1);
                 node.southEast = this.readFromFile(bufferedReader, _cX + halfDimension, _cY + halfDimension, halfDimension, _level + 1);
+                // a leaf without bucket can not be expanded, it keeps no errors
+                if (node.northWest == null && node.bucket == null) {
+                    node.errors = null;
+                }
                 return node;
             }
             catch (Exception e) {
-                e.printStackTrace();
-                System.out.println(line);
+                logger.error("[RA-QuadTree] can not parse node line: {}", line, e);
             }
             return null;
         }
@@ -182,231 +295,288 @@ public class RAQuadTree implements IAlgorithm {
             return true;
         }
 
-        public boolean insert(double cX, double cY, double halfDimension, Point point, int level) {
-            // Ignore objects that do not belong in this quad tree
-            if (!containsPoint(cX, cY, halfDimension, point)) {
-                return false;
+        /**
+         * Insert a point into this subtree, descending by the quadrants in the Morton code of the point
+         *
+         * @param point - in [0 ~ 1) spherical mercator
+         * @param code - Morton code of the point
+         * @param level - level of this node
+         * @return false if the point is only counted but not stored, in a leaf node below the highest level
+         */
+        public boolean insert(Point point, long code, int level) {
+            // If the compressed path of this node leads away from this point, split it where they diverge
+            if (this.path != 0L) {
+                if (Morton.quadrants(code, level, this.skip()) != this.pathQuadrants()) {
+                    this.splitPath(code, level);
+                }
+                level += this.skip();
             }
+            // Mark the path from root to this point dirty, its samples and errors need to be re-selected
+            this.dirty = true;
+            this.summarize(point);
             // If this node is leaf and empty, put this point on this node
             if (this.sample == null && this.northWest == null) {
                 this.sample = point;
+                this.sampleLng = Float.NaN;
+                this.sampleLat = Float.NaN;
                 this.count = 1;
                 return true;
             }
             // Else, add count into this node
             this.count ++;
 
-            // if boundary is smaller than highestLevelNodeDimension,
+            // If this node is leaf and its bucket is not full, put this point into the bucket
+            if (this.northWest == null) {
+                int stored = this.bucket == null? 1: this.bucket.length;
+                if (stored < settings.leafBucketSize) {
+                    if (this.bucket == null) {
+                        this.bucket = new Point[]{this.sample, point};
+                    }
+                    else {
+                        this.bucket = Arrays.copyOf(this.bucket, stored + 1);
+                        this.bucket[stored] = point;
+                    }
+                    return true;
+                }
+            }
+
+            // if this node is below the highest level (its boundary is smaller than highestLevelNodeDimension),
             // stop splitting, and make current node a leaf node.
-            if (halfDimension * 2 < highestLevelNodeDimension) {
+            if (level > highestLevel) {
                 // at this moment, this node must already have a sample
                 return false; // skip this point
             }
 
             // Otherwise, subdivide
             if (this.northWest == null) {
+                Point[] points = this.bucket == null? new Point[]{this.sample}: this.bucket;
+                // skip the levels where all points still fall into one quadrant
+                if (settings.pathCompression) {
+                    this.compressPath(points, code, level);
+                    level += this.skip();
+                }
                 this.subdivide();
-                // descend current node's point into corresponding quadrant
-                this.insertNorthWest(cX, cY, halfDimension, this.sample, level + 1);
-                this.insertNorthEast(cX, cY, halfDimension, this.sample, level + 1);
-                this.insertSouthWest(cX, cY, halfDimension, this.sample, level + 1);
-                this.insertSouthEast(cX, cY, halfDimension, this.sample, level + 1);
+                // descend current node's points into corresponding quadrant
+                for (Point stored: points) {
+                    long storedCode = Morton.encode(stored.getX(), stored.getY());
+                    this.child(Morton.quadrant(storedCode, level + 1)).insert(stored, storedCode, level + 1);
+                }
                 this.sample = null;
+                this.bucket = null;
             }
 
             // insert new point into corresponding quadrant
-            if (insertNorthWest(cX, cY, halfDimension, point, level + 1)) return true;
-            if (insertNorthEast(cX, cY, halfDimension, point, level + 1)) return true;
-            if (insertSouthWest(cX, cY, halfDimension, point, level + 1)) return true;
-            if (insertSouthEast(cX, cY, halfDimension, point, level + 1)) return true;
-
-            return false;
+            return this.child(Morton.quadrant(code, level + 1)).insert(point, code, level + 1);
         }
 
-        boolean insertNorthWest(double _cX, double _cY, double _halfDimension, Point point, int level) {
-            double halfDimension = _halfDimension / 2;
-            double cX = _cX - halfDimension;
-            double cY = _cY - halfDimension;
-            return this.northWest.insert(cX, cY, halfDimension, point, level);
+        /**
+         * @param quadrant - 0 - nw, 1 - ne, 2 - sw, 3 - se
+         */
+        QuadTree child(int quadrant) {
+            switch (quadrant) {
+                case 0: return this.northWest;
+                case 1: return this.northEast;
+                case 2: return this.southWest;
+                default: return this.southEast;
+            }
         }
 
-        boolean insertNorthEast(double _cX, double _cY, double _halfDimension, Point point, int level) {
-            double halfDimension = _halfDimension / 2;
-            double cX = _cX + halfDimension;
-            double cY = _cY - halfDimension;
-            return this.northEast.insert(cX, cY, halfDimension, point, level);
+        /**
+         * @return number of levels skipped by the compressed path of this node
+         */
+        public int skip() {
+            return (int) (this.path >>> PATH_SKIP_SHIFT);
         }
 
-        boolean insertSouthWest(double _cX, double _cY, double _halfDimension, Point point, int level) {
-            double halfDimension = _halfDimension / 2;
-            double cX = _cX - halfDimension;
-            double cY = _cY + halfDimension;
-            return this.southWest.insert(cX, cY, halfDimension, point, level);
+        /**
+         * @return quadrants of the levels skipped by the compressed path of this node, top level in the highest bits
+         */
+        long pathQuadrants() {
+            return this.path & ((1L << (2 * this.skip())) - 1);
         }
 
-        boolean insertSouthEast(double _cX, double _cY, double _halfDimension, Point point, int level) {
-            double halfDimension = _halfDimension / 2;
-            double cX = _cX + halfDimension;
-            double cY = _cY + halfDimension;
-            return this.southEast.insert(cX, cY, halfDimension, point, level);
+        /**
+         * follow the compressed path of this node from its cell
+         *
+         * @return {cX, cY, halfDimension} of the cell the four children split
+         */
+        public double[] skipPath(double _cX, double _cY, double _halfDimension) {
+            int skip = this.skip();
+            for (int i = skip - 1; i >= 0; i --) {
+                int quadrant = (int) (this.path >>> (2 * i)) & 3;
+                _halfDimension = _halfDimension / 2;
+                _cX += (quadrant & 1) == 0? -_halfDimension: _halfDimension;
+                _cY += (quadrant & 2) == 0? -_halfDimension: _halfDimension;
+            }
+            return new double[]{_cX, _cY, _halfDimension};
         }
 
-        void subdivide() {
-            this.northWest = new QuadTree();
-            this.northEast = new QuadTree();
-            this.southWest = new QuadTree();
-            this.southEast = new QuadTree();
-            nodesCount += 4;
+        /**
+         * before a leaf is split, compress the path down to the smallest cell still holding all its points and the new point,
+         * instead of a chain of nodes with only one non-empty child each
+         *
+         * - the cell at the end of the path is always split, so it is not below the highest level
+         */
+        void compressPath(Point[] _points, long _code, int _level) {
+            int common = Morton.LEVELS;
+            for (Point point: _points) {
+                common = Math.min(common, Morton.commonLevels(Morton.encode(point.getX(), point.getY()), _code));
+            }
+            int skip = Math.max(0, Math.min(common, highestLevel) - _level);
+            this.path = skip == 0? 0L: ((long) skip << PATH_SKIP_SHIFT) | Morton.quadrants(_code, _level, skip);
         }
 
-        class QEntry {
-            int level;
-            double ncX;
-            double ncY;
-            double nhalfDimension;
-            QuadTree node;
-            double benefit; // the benefit value if the take the best move
-
-            QEntry(int _level, double _ncX, double _ncY, double _nhalfDimension, QuadTree _node, double _benefit) {
-                level = _level;
-                ncX = _ncX;
-                ncY = _ncY;
-                nhalfDimension = _nhalfDimension;
-                node = _node;
-                benefit = _benefit;
+        /**
+         * a point falls off the compressed path of this node,
+         * split the path at the level they diverge:
+         *   this node keeps the common part of the path, with a new child taking over the rest of the path and the subtree,
+         *   so that the point goes into an empty sibling of that child
+         */
+        void splitPath(long _code, int _level) {
+            int skip = this.skip();
+            long quadrants = this.pathQuadrants();
+            int common = (Long.numberOfLeadingZeros(quadrants ^ Morton.quadrants(_code, _level, skip)) - (64 - 2 * skip)) / 2;
+            int rest = skip - 1 - common;
+            int quadrant = (int) (quadrants >>> (2 * rest)) & 3;
+
+            QuadTree child = newNode();
+            child.sample = this.sample;
+            child.sampleLng = this.sampleLng;
+            child.sampleLat = this.sampleLat;
+            child.count = this.count;
+            child.errors = this.errors;
+            child.dirty = this.dirty;
+            child.path = rest == 0? 0L: ((long) rest << PATH_SKIP_SHIFT) | (quadrants & ((1L << (2 * rest)) - 1));
+            child.northWest = this.northWest;
+            child.northEast = this.northEast;
+            child.southWest = this.southWest;
+            child.southEast = this.southEast;
+
+            this.errors = this.errors == null? null: this.errors.clone();
+            this.splitSummaries(child);
+            this.path = common == 0? 0L: ((long) common << PATH_SKIP_SHIFT) | (quadrants >>> (2 * (rest + 1)));
+            this.subdivide();
+            switch (quadrant) {
+                case 0: this.northWest = child; break;
+                case 1: this.northEast = child; break;
+                case 2: this.southWest = child; break;
+                default: this.southEast = child;
             }
         }
 
         /**
-         * breadth first search
+         * add a point inserted into this subtree to the summaries of the subtree,
+         * the timestamp to the temporal summary
          *
-         * explore nodes with higher estimated benefit first
-         * - benefit = gain of quality / cost of sample size
+         * @param point
+         */
+        void summarize(Point point) {
+            if (settings.timeBuckets <= 0 || !(point instanceof TimedPoint)) return;
+            if (this.times == null) {
+                this.times = new TimeSummary(settings.timeBuckets);
+            }
+            this.times.add(((TimedPoint) point).getTime(), settings);
+        }
+
+        /**
+         * hand the summaries of this subtree to given child splitting its compressed path,
+         * this node keeps copies of them, the subtree below it is the same
          *
-         * @param _ncX
-         * @param _ncY
-         * @param _nhalfDimension
-         * @param _rcX
-         * @param _rcY
-         * @param _rhalfWidth
-         * @param _rhalfHeight
-         * @param _zoom - zoom level of current query
-         * @param _targetSampleSize
-         * @return
+         * @param child
          */
-        public List<Point> bfs(double _ncX, double _ncY, double _nhalfDimension,
-                               double _rcX, double _rcY, double _rhalfWidth, double _rhalfHeight,
-                               int _zoom, int _targetSampleSize) {
+        void splitSummaries(QuadTree child) {
+            child.times = this.times;
+            this.times = this.times == null? null: this.times.copy();
+        }
 
-            List<Point> result = new ArrayList<>();
-
-            // explore larger estimatedProfit node first
-            PriorityQueue<QEntry> queue = new PriorityQueue<>(new Comparator<QEntry>() {
-                @Override
-                public int compare(QEntry o1, QEntry o2) {
-                    if (o2.benefit > o1.benefit)
-                        return 1;
-                    else if (o2.benefit < o1.benefit)
-                        return -1;
-                    else
-                        return 0;
-                }
-            });
-
-            double rootBenefit = computeBenefit(_zoom, 0, this);
-            QEntry rootEntry = new QEntry(0, _ncX, _ncY, _nhalfDimension, this, rootBenefit);
-            // add root node
-            queue.add(rootEntry);
-            int availableSampleSize = _targetSampleSize - Constants.NODE_SAMPLE_SIZE;
-
-            while (queue.size() > 0) {
-
-                // pick the largest benefit node
-                QEntry entry = queue.poll();
-                int level = entry.level;
-                double ncX = entry.ncX;
-                double ncY = entry.ncY;
-                double nhalfDimension = entry.nhalfDimension;
-                QuadTree node = entry.node;
-                double benefit = entry.benefit;
-                int sampleSize = node.sample == null? 0: Constants.NODE_SAMPLE_SIZE;
-
-                // if the largest estimated benefit is 0 or enough samples, entering collecting samples mode
-                if (benefit <= 0.0 || availableSampleSize <= 0) {
-                    //-DEBUG-//
-//                    System.out.println("[queue] level = " + level);
-//                    System.out.println("[queue] benefit = " + benefit);
-//                    System.out.println("[queue] sample size = " + sampleSize);
-                    //-DEBUG-//
-                    if (node.sample != null) {
-                        numberOfNodesStoppedAtLevels[level] ++;
-                        result.add(node.sample);
-                    }
-                    continue;
-                }
-
-                // otherwise, expand this node
-                double cX, cY;
-                double halfDimension = nhalfDimension / 2;
-                availableSampleSize += sampleSize;
-
-                // northwest
-                cX = ncX - halfDimension;
-                cY = ncY - halfDimension;
-                // ignore this node if the range does not intersect with it
-                if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitNW = computeBenefit(_zoom, level + 1, node.northWest);
-                    QEntry entryNW = new QEntry(level + 1, cX, cY, halfDimension, node.northWest, benefitNW);
-                    queue.add(entryNW);
-                    if (node.northWest.sample != null) {
-                        availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
-                    }
-                }
+        /**
+         * @param keywordId
+         * @return if any tagged point in this subtree has given keyword, false if the tree keeps no keywords
+         */
+        boolean hasKeyword(int keywordId) {
+            return false;
+        }
 
-                // northeast
-                cX = ncX + halfDimension;
-                cY = ncY - halfDimension;
-                // ignore this node if the range does not intersect with it
-                if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitNE = computeBenefit(_zoom, level + 1, node.northEast);
-                    QEntry entryNE = new QEntry(level + 1, cX, cY, halfDimension, node.northEast, benefitNE);
-                    queue.add(entryNE);
-                    if (node.northEast.sample != null) {
-                        availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
-                    }
-                }
+        /**
+         * estimate the number of timed points in [_tStart, _tEnd] in this subtree
+         *
+         * - a time bucket partially overlapping the range counts proportionally to the overlap,
+         *   with the bucket narrowed to [minTime, maxTime] of this subtree
+         *
+         * @param _tStart
+         * @param _tEnd
+         * @return
+         */
+        public double countInTimeRange(long _tStart, long _tEnd) {
+            TimeSummary times = this.times;
+            if (times == null || _tEnd < times.minTime || _tStart > times.maxTime) return 0.0;
+            double count = 0.0;
+            for (int bucket = 0; bucket < times.histogram.length; bucket ++) {
+                if (times.histogram[bucket] == 0) continue;
+                long bucketStart = Math.max(settings.timeBucketStart(bucket, times.histogram.length), times.minTime);
+                long bucketEnd = Math.min(settings.timeBucketEnd(bucket, times.histogram.length), times.maxTime);
+                long overlapStart = Math.max(bucketStart, _tStart);
+                long overlapEnd = Math.min(bucketEnd, _tEnd);
+                if (overlapEnd < overlapStart) continue;
+                count += times.histogram[bucket] * (double) (overlapEnd - overlapStart + 1) / (double) (bucketEnd - bucketStart + 1);
+            }
+            return count;
+        }
 
-                // southwest
-                cX = ncX - halfDimension;
-                cY = ncY + halfDimension;
-                // ignore this node if the range does not intersect with it
-                if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitSW = computeBenefit(_zoom, level + 1, node.southWest);
-                    QEntry entrySW = new QEntry(level + 1, cX, cY, halfDimension, node.southWest, benefitSW);
-                    queue.add(entrySW);
-                    if (node.southWest.sample != null) {
-                        availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
-                    }
+        /**
+         * find a sample in [_tStart, _tEnd] and with given keyword representing this subtree,
+         * descending towards the children with the most matching points first until a node's sample matches
+         *
+         * @param _tStart
+         * @param _tEnd
+         * @param _keywordId - NO_KEYWORD if no keyword
+         * @return null if no stored point of this subtree matches
+         */
+        public Point sampleMatching(long _tStart, long _tEnd, int _keywordId) {
+            if (matches(this.sample, _tStart, _tEnd, _keywordId)) return this.sample;
+            if (this.northWest == null) {
+                if (this.bucket == null) return null;
+                for (Point point: this.bucket) {
+                    if (matches(point, _tStart, _tEnd, _keywordId)) return point;
                 }
-
-                // southeast
-                cX = ncX + halfDimension;
-                cY = ncY + halfDimension;
-                // ignore this node if the range does not intersect with it
-                if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitSE = computeBenefit(_zoom, level + 1, node.southEast);
-                    QEntry entrySE = new QEntry(level + 1, cX, cY, halfDimension, node.southEast, benefitSE);
-                    queue.add(entrySE);
-                    if (node.southEast.sample != null) {
-                        availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
-                    }
+                return null;
+            }
+            QuadTree[] children = {this.northWest, this.northEast, this.southWest, this.southEast};
+            double[] counts = new double[4];
+            for (int i = 0; i < 4; i ++) {
+                counts[i] = countMatching(children[i], _tStart, _tEnd, _keywordId);
+            }
+            // a child may have matching points only among those skipped below the highest level,
+            // so fall back to the next child if it has no matching sample
+            for (int k = 0; k < 4; k ++) {
+                int best = -1;
+                for (int i = 0; i < 4; i ++) {
+                    if (counts[i] > 0 && (best < 0 || counts[i] > counts[best])) best = i;
                 }
+                if (best < 0) return null;
+                Point sample = children[best].sampleMatching(_tStart, _tEnd, _keywordId);
+                if (sample != null) return sample;
+                counts[best] = 0.0;
             }
+            return null;
+        }
 
-            //-DEBUG-//
-            System.out.println("[availableSampleSize] = " + availableSampleSize);
+        void subdivide() {
+            this.northWest = newNode();
+            this.northEast = newNode();
+            this.southWest = newNode();
+            this.southEast = newNode();
+            nodesCount += 4;
+        }
 
-            return result;
+        /**
+         * breadth first search from this node, see {@link RAQuadTree#bfs}
+         */
+        public List<Point> bfs(double _ncX, double _ncY, double _nhalfDimension,
+                               double _rcX, double _rcY, double _rhalfWidth, double _rhalfHeight,
+                               int _zoom, int _targetSampleSize) {
+            return RAQuadTree.bfs(Collections.singletonList(this), _ncX, _ncY, _nhalfDimension,
+                    _rcX, _rcY, _rhalfWidth, _rhalfHeight, _zoom, _targetSampleSize, Long.MIN_VALUE, Long.MAX_VALUE, NO_KEYWORD);
         }
 
         /**
@@ -417,11 +587,28 @@ public class RAQuadTree implements IAlgorithm {
          *    - store errors between sample on node and samples on children for all resolutions
          */
         public void selectSamples(double _cX, double _cY, double _halfDimension, int _level) {
-            // leaf node already has the best sample
+            this.dirty = false;
+
+            // leaf node already has the best sample, unless it has a bucket of points
             if (this.northWest == null) {
+                if (this.bucket != null) {
+                    this.selectSample(_cX, _cY, _halfDimension);
+                }
+                else {
+                    this.cacheSampleLngLat();
+                }
                 return;
             }
 
+            // children split the cell at the end of the compressed path
+            if (this.path != 0L) {
+                double[] cell = this.skipPath(_cX, _cY, _halfDimension);
+                _cX = cell[0];
+                _cY = cell[1];
+                _halfDimension = cell[2];
+                _level += this.skip();
+            }
+
             double halfDimension = _halfDimension / 2;
 
             // select best samples for all four children first
@@ -430,92 +617,224 @@ public class RAQuadTree implements IAlgorithm {
             this.southWest.selectSamples(_cX - halfDimension, _cY + halfDimension, halfDimension, _level + 1);
             this.southEast.selectSamples(_cX + halfDimension, _cY + halfDimension, halfDimension, _level + 1);
 
-            // render the four best samples on four children as the ground truth
-            byte[] rendering0 = renderer.createRendering(Constants.NODE_RESOLUTION);
-            if (this.northWest.sample != null) {
-                renderer.render(rendering0, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.northWest.sample);
+            this.selectSample(_cX, _cY, _halfDimension);
+        }
+
+        /**
+         * Post-order traverse only the dirty paths of the Quadtree,
+         * re-select the best sample for each node touched by insertions since the last refresh
+         *
+         * - cost is proportional to the number of nodes on the paths of the newly inserted points,
+         *   not to the size of the whole tree
+         *
+         * @return number of nodes refreshed
+         */
+        public int refreshSamples(double _cX, double _cY, double _halfDimension, int _level) {
+            // clean subtree already has the best sample
+            if (!this.dirty) {
+                return 0;
             }
-            if (this.northEast.sample != null) {
-                renderer.render(rendering0, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.northEast.sample);
+            this.dirty = false;
+
+            // leaf node already has the best sample, unless it has a bucket of points
+            if (this.northWest == null) {
+                if (this.bucket != null) {
+                    this.selectSample(_cX, _cY, _halfDimension);
+                }
+                else {
+                    this.cacheSampleLngLat();
+                }
+                return 1;
             }
-            if (this.southWest.sample != null) {
-                renderer.render(rendering0, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.southWest.sample);
+
+            // children split the cell at the end of the compressed path
+            if (this.path != 0L) {
+                double[] cell = this.skipPath(_cX, _cY, _halfDimension);
+                _cX = cell[0];
+                _cY = cell[1];
+                _halfDimension = cell[2];
+                _level += this.skip();
             }
-            if (this.southEast.sample != null) {
-                renderer.render(rendering0, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.southEast.sample);
+
+            double halfDimension = _halfDimension / 2;
+
+            // refresh dirty children first
+            int refreshed = 1;
+            refreshed += this.northWest.refreshSamples(_cX - halfDimension, _cY - halfDimension, halfDimension, _level + 1);
+            refreshed += this.northEast.refreshSamples(_cX + halfDimension, _cY - halfDimension, halfDimension, _level + 1);
+            refreshed += this.southWest.refreshSamples(_cX - halfDimension, _cY + halfDimension, halfDimension, _level + 1);
+            refreshed += this.southEast.refreshSamples(_cX + halfDimension, _cY + halfDimension, halfDimension, _level + 1);
+
+            this.selectSample(_cX, _cY, _halfDimension);
+            return refreshed;
+        }
+
+        /**
+         * Select the best sample of this node from its candidates (four children's samples, or points on its bucket),
+         * and store the errors between the best sample and the candidates for all zoom levels
+         *
+         * - children must already have their best samples
+         */
+        void selectSample(double _cX, double _cY, double _halfDimension) {
+            Point[] candidates = this.candidates();
+
+            // render all candidates as the ground truth
+            byte[] rendering0 = renderer.createRendering(Constants.NODE_RESOLUTION);
+            for (Point candidate: candidates) {
+                renderer.render(rendering0, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, candidate);
             }
 
-            // render each candidate of the four children individually and select the minimum error one
+            // render each candidate individually and select the minimum error one
             double minError = Double.MAX_VALUE;
             Point bestSample = null;
-            if (this.northWest.sample != null) {
-                byte[] renderingNW = renderer.createRendering(Constants.NODE_RESOLUTION);
-                renderer.render(renderingNW, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.northWest.sample);
-                double error = errorMetric.error(rendering0, renderingNW, renderer.realResolution(Constants.NODE_RESOLUTION));
-                if (error < minError) {
-                    minError = error;
-                    bestSample = this.northWest.sample;
-                }
-            }
-            if (this.northEast.sample != null) {
-                byte[] renderingNE = renderer.createRendering(Constants.NODE_RESOLUTION);
-                renderer.render(renderingNE, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.northEast.sample);
-                double error = errorMetric.error(rendering0, renderingNE, renderer.realResolution(Constants.NODE_RESOLUTION));
-                if (error < minError) {
-                    minError = error;
-                    bestSample = this.northEast.sample;
-                }
-            }
-            if (this.southWest.sample != null) {
-                byte[] renderingSW = renderer.createRendering(Constants.NODE_RESOLUTION);
-                renderer.render(renderingSW, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.southWest.sample);
-                double error = errorMetric.error(rendering0, renderingSW, renderer.realResolution(Constants.NODE_RESOLUTION));
-                if (error < minError) {
-                    minError = error;
-                    bestSample = this.southWest.sample;
-                }
-            }
-            if (this.southEast.sample != null) {
-                byte[] renderingSE = renderer.createRendering(Constants.NODE_RESOLUTION);
-                renderer.render(renderingSE, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, this.southEast.sample);
-                double error = errorMetric.error(rendering0, renderingSE, renderer.realResolution(Constants.NODE_RESOLUTION));
+            for (Point candidate: candidates) {
+                byte[] rendering = renderer.createRendering(Constants.NODE_RESOLUTION);
+                renderer.render(rendering, _cX, _cY, _halfDimension, Constants.NODE_RESOLUTION, candidate);
+                double error = errorMetric.error(rendering0, rendering, renderer.realResolution(Constants.NODE_RESOLUTION));
                 if (error < minError) {
                     minError = error;
-                    bestSample = this.southEast.sample;
+                    bestSample = candidate;
                 }
             }
             // best sample stored on this node
             this.sample = bestSample;
+            this.cacheSampleLngLat();
 
             // for all zoom levels (resolutions),
-            // compute and store the errors between best sample and all four children's best samples
-            for (int zoom = 0; zoom <= Constants.MAX_ZOOM; zoom ++) {
+            // compute and store the errors between best sample and all candidates
+            if (this.errors == null) {
+                this.errors = new double[settings.maxZoom + 1];
+            }
+            for (int zoom = 0; zoom <= settings.maxZoom; zoom ++) {
                 double pixelScale = 1.0 / 256 / Math.pow(2, zoom);
                 this.errors[zoom] = computeErrorAgainstChildren(this, _cX, _cY, _halfDimension, pixelScale);
             }
         }
 
+        void cacheSampleLngLat() {
+            if (this.sample == null) {
+                this.sampleLng = Float.NaN;
+                this.sampleLat = Float.NaN;
+                return;
+            }
+            this.sampleLng = (float) xLng(this.sample.getX());
+            this.sampleLat = (float) yLat(this.sample.getY());
+        }
 
+        /**
+         * @return points the sample of this node represents when it is expanded,
+         *         the samples of its four children, or the points on its bucket if it is a leaf
+         */
+        Point[] candidates() {
+            if (this.northWest == null) {
+                return this.bucket == null? new Point[0]: this.bucket;
+            }
+            List<Point> candidates = new ArrayList<>(4);
+            if (this.northWest.sample != null) candidates.add(this.northWest.sample);
+            if (this.northEast.sample != null) candidates.add(this.northEast.sample);
+            if (this.southWest.sample != null) candidates.add(this.southWest.sample);
+            if (this.southEast.sample != null) candidates.add(this.southEast.sample);
+            return candidates.toArray(new Point[candidates.size()]);
+        }
     }
 
-    public static double highestLevelNodeDimension;
+    static final int PATH_SKIP_SHIFT = 58;
+
+    /**
+     * settings shaping a tree, taken from Constants when the tree is constructed,
+     * so Constants.init() later on does not change trees already built
+     */
+    public static class Settings {
+        public final int maxZoom;
+        public final int leafBucketSize; // 1 - one point per leaf
+        public final boolean pathCompression;
+        public final int timeBuckets; // 0 - no temporal summaries on nodes
+        public final long timeStart; // time range covered by the temporal histograms, epoch milliseconds
+        public final long timeEnd;
+
+        public Settings(int maxZoom, int leafBucketSize, boolean pathCompression, int timeBuckets, long timeStart, long timeEnd) {
+            this.maxZoom = maxZoom;
+            this.leafBucketSize = Math.max(1, leafBucketSize);
+            this.pathCompression = pathCompression;
+            this.timeBuckets = timeBuckets;
+            this.timeStart = timeStart;
+            this.timeEnd = timeEnd;
+        }
 
-    public static IRenderer renderer;
+        public static Settings fromConstants() {
+            return new Settings(Constants.MAX_ZOOM, Constants.RAQT_LEAF_BUCKET_SIZE, Constants.RAQT_PATH_COMPRESSION,
+                    Constants.RAQT_TIME_BUCKETS, Constants.TIME_START, Constants.TIME_END);
+        }
 
-    public static IErrorMetric errorMetric;
+        /**
+         * time buckets evenly split [timeStart, timeEnd],
+         * the first and last buckets also take times before and after that range
+         */
+        long timeBucketWidth(int _buckets) {
+            return Math.max(1L, (this.timeEnd - this.timeStart) / _buckets);
+        }
+
+        int timeBucket(long _time, int _buckets) {
+            if (_time < this.timeStart) return 0;
+            return (int) Math.min((_time - this.timeStart) / timeBucketWidth(_buckets), _buckets - 1);
+        }
+
+        long timeBucketStart(int _bucket, int _buckets) {
+            if (_bucket == 0) return Long.MIN_VALUE;
+            return this.timeStart + _bucket * timeBucketWidth(_buckets);
+        }
+
+        long timeBucketEnd(int _bucket, int _buckets) {
+            if (_bucket == _buckets - 1) return Long.MAX_VALUE;
+            return this.timeStart + (_bucket + 1) * timeBucketWidth(_buckets) - 1;
+        }
+    }
+
+    /**
+     * min/max time and a histogram of the timed points in a subtree,
+     * only allocated on the nodes of a tree with settings.timeBuckets > 0 once a timed point is inserted
+     */
+    public static class TimeSummary {
+        public long minTime = Long.MAX_VALUE;
+        public long maxTime = Long.MIN_VALUE;
+        public final int[] histogram; // count per time bucket over [settings.timeStart, settings.timeEnd]
+
+        TimeSummary(int _buckets) {
+            this.histogram = new int[_buckets];
+        }
+
+        void add(long _time, Settings _settings) {
+            if (_time < this.minTime) this.minTime = _time;
+            if (_time > this.maxTime) this.maxTime = _time;
+            this.histogram[_settings.timeBucket(_time, this.histogram.length)] ++;
+        }
+
+        TimeSummary copy() {
+            TimeSummary copy = new TimeSummary(this.histogram.length);
+            copy.minTime = this.minTime;
+            copy.maxTime = this.maxTime;
+            System.arraycopy(this.histogram, 0, copy.histogram, 0, this.histogram.length);
+            return copy;
+        }
+    }
+
+    // configuration of this tree, fixed once constructed, trees of different settings live side by side
+    final Settings settings;
+
+    final double highestLevelNodeDimension;
+
+    final int highestLevel; // level of nodes with dimension highestLevelNodeDimension, the deepest nodes to split
+
+    final IRenderer renderer;
+
+    final IErrorMetric errorMetric;
 
     QuadTree quadTree;
     int totalNumberOfPoints = 0;
     int totalStoredNumberOfPoints = 0;
-    static long nodesCount = 0; // count quad-tree nodes
+    long nodesCount = 0; // count quad-tree nodes
     boolean finish = false; // loading data finish flag
-
-    /** For query stats */
-    static int[] numberOfNodesStoppedAtLevels; // for current query, count how many nodes stopped at a certain level
-    static int computeBenefitTimes; // for current query, count how many times compute the benefit
-
-    /** For query time analysis */
-    static Map<String, Double> times; // for current query, store times for different parts
+    boolean samplesReady = false; // samples and errors reflect all points loaded so far
 
     //-Timing-//
     static final boolean keepTiming = true;
@@ -523,38 +842,44 @@ public class RAQuadTree implements IAlgorithm {
     //-Timing-//
 
     public RAQuadTree() {
-        this.quadTree = new QuadTree();
+        this(Settings.fromConstants());
+    }
+
+    public RAQuadTree(Settings _settings) {
+        this.settings = _settings;
+        this.quadTree = newNode();
 
         // zoom level 0 is fixed with dimension 1.0 / 256 (because one tile of the base map is 256px x 256px)
-        highestLevelNodeDimension = 1.0 / 256 / Math.pow(2, Constants.MAX_ZOOM);
+        highestLevelNodeDimension = 1.0 / 256 / Math.pow(2, settings.maxZoom);
+        highestLevel = 8 + settings.maxZoom;
 
         switch (Constants.RENDERING_FUNCTION.toLowerCase()) {
             case "deckgl":
-                System.out.println("[RA-QuadTree] rendering function = Deck.GL");
+                logger.info("[RA-QuadTree] rendering function = Deck.GL");
                 renderer =  new DeckGLRenderer(Constants.RADIUS_IN_PIXELS);
                 switch (Constants.ERROR_FUNCTION.toLowerCase()) {
                     case "l2":
-                        System.out.println("[RA-QuadTree] error function = L2");
+                        logger.info("[RA-QuadTree] error function = L2");
                         errorMetric = new L2Error();
                         break;
                     case "l1":
                     default:
-                        System.out.println("[RA-QuadTree] error function = L1");
+                        logger.info("[RA-QuadTree] error function = L1");
                         errorMetric = new L1Error();
                 }
                 break;
             case "snap":
             default:
-                System.out.println("[RA-QuadTree] rendering function = Snap");
+                logger.info("[RA-QuadTree] rendering function = Snap");
                 renderer = new SnapRenderer();
                 switch (Constants.ERROR_FUNCTION.toLowerCase()) {
                     case "l2":
-                        System.out.println("[RA-QuadTree] error function = Snap L2");
+                        logger.info("[RA-QuadTree] error function = Snap L2");
                         errorMetric = new SnapL2Error();
                         break;
                     case "l1":
                     default:
-                        System.out.println("[RA-QuadTree] error function = Snap L1");
+                        logger.info("[RA-QuadTree] error function = Snap L1");
                         errorMetric = new SnapL1Error();
                 }
         }
@@ -565,17 +890,11 @@ public class RAQuadTree implements IAlgorithm {
             timing.put("total", 0.0);
         }
 
-        /** For query stats */
-        numberOfNodesStoppedAtLevels = new int[Constants.MAX_ZOOM + 9 + 1];
-
-        /** For query time analysis */
-        times = new HashMap<>();
-
         MyMemory.printMemory();
     }
 
     public boolean readFromFile(String fileName) {
-        System.out.println("[RA-QuadTree] read from file " + fileName + " ... ...");
+        logger.info("[RA-QuadTree] read from file {} ... ...", fileName);
 
         try {
             BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName));
@@ -585,18 +904,17 @@ public class RAQuadTree implements IAlgorithm {
             bufferedReader.close();
             //--time--//
             long endTime = System.nanoTime();
-            System.out.println("[RA-QuadTree] read from file " + fileName + " done! Time: " + ((double) (endTime - startTime) / 1000000000.0) + " seconds.");
+            logger.info("[RA-QuadTree] read from file {} done! Time: {} seconds.", fileName, (double) (endTime - startTime) / 1000000000.0);
             finish = true;
             return true;
         } catch (IOException e) {
-            System.out.println("[RA-QuadTree] read from file " + fileName + " failed!");
-            e.printStackTrace();
+            logger.error("[RA-QuadTree] read from file {} failed!", fileName, e);
         }
         return false;
     }
 
     public boolean writeToFile(String fileName) {
-        System.out.println("[RA-QuadTree] write to file " + fileName + " ... ...");
+        logger.info("[RA-QuadTree] write to file {} ... ...", fileName);
 
         try {
             File file = new File(fileName);
@@ -609,27 +927,29 @@ public class RAQuadTree implements IAlgorithm {
             fileOutputStream.close();
             //--time--//
             long endTime = System.nanoTime();
-            System.out.println("[RA-QuadTree] write to file " + fileName + " done! Time: " + ((double) (endTime - startTime) / 1000000000.0) + " seconds.");
+            logger.info("[RA-QuadTree] write to file {} done! Time: {} seconds.", fileName, (double) (endTime - startTime) / 1000000000.0);
             return true;
         }
         catch (IOException e) {
-            System.out.println("[RA-QuadTree] write to file " + fileName + " failed!");
-            e.printStackTrace();
+            logger.error("[RA-QuadTree] write to file {} failed!", fileName, e);
         }
 
         return false;
     }
 
     public void load(List<Point> points) {
-        System.out.println("[RA-QuadTree] loading " + points.size() + " points ... ...");
+        logger.info("[RA-QuadTree] loading {} points ... ...", points.size());
 
         MyTimer.startTimer();
         this.totalNumberOfPoints += points.size();
         int count = 0;
         int skip = 0;
         MyTimer.startTimer();
+        lngLatToXY(points);
         for (Point point: points) {
-            if (this.quadTree.insert(0.5, 0.5, 0.5, lngLatToXY(point), 0))
+            // ignore points out of the root, and locate the rest by their Morton codes
+            if (this.quadTree.containsPoint(0.5, 0.5, 0.5, point)
+                    && this.quadTree.insert(point, Morton.encode(point.getX(), point.getY()), 0))
                 count ++;
             else
                 skip ++;
@@ -637,45 +957,547 @@ public class RAQuadTree implements IAlgorithm {
         MyTimer.stopTimer();
         double insertTime = MyTimer.durationSeconds();
         this.totalStoredNumberOfPoints += count;
-        System.out.println("[RA-QuadTree] inserted " + count + " points and skipped " + skip + " points.");
-        System.out.println("[RA-QuadTree] insertion time: " + insertTime + " seconds.");
+        this.samplesReady = false;
+        logger.debug("[RA-QuadTree] inserted {} points and skipped {} points.", count, skip);
+        logger.debug("[RA-QuadTree] insertion time: {} seconds.", insertTime);
+
+        // re-select samples only along the paths this batch touched,
+        // always for points ingested into a finished tree
+        if (Constants.RAQT_PROGRESSIVE_SAMPLES || this.finish) {
+            MyTimer.startTimer();
+            int refreshed = this.quadTree.refreshSamples(0.5, 0.5, 0.5, 0);
+            MyTimer.stopTimer();
+            this.samplesReady = true;
+            logger.debug("[RA-QuadTree] refreshed samples of {} dirty nodes in {} seconds.", refreshed, MyTimer.durationSeconds());
+        }
 
         MyTimer.stopTimer();
         double loadTime = MyTimer.durationSeconds();
 
         if (keepTiming) timing.put("total", timing.get("total") + loadTime);
-        System.out.println("[RA-QuadTree] loading is done!");
-        System.out.println("[RA-QuadTree] loading time: " + loadTime + " seconds.");
+        logger.info("[RA-QuadTree] loading is done! loading time: {} seconds.", loadTime);
         if (keepTiming) this.printTiming();
 
         MyMemory.printMemory();
 
-        //-DEBUG-//
-        System.out.println("==== Until now ====");
-        System.out.println("RA-QuadTree has processed " + this.totalNumberOfPoints + " points.");
-        System.out.println("RA-QuadTree has stored " + this.totalStoredNumberOfPoints + " points.");
-        System.out.println("RA-QuadTree has skipped " + (this.totalNumberOfPoints - this.totalStoredNumberOfPoints) + " points.");
-        System.out.println("RA-QuadTree has generated " + nodesCount + " nodes.");
-        //-DEBUG-//
+        if (logger.isDebugEnabled()) {
+            logger.debug("==== Until now ====");
+            logger.debug("RA-QuadTree has processed {} points.", this.totalNumberOfPoints);
+            logger.debug("RA-QuadTree has stored {} points.", this.totalStoredNumberOfPoints);
+            logger.debug("RA-QuadTree has skipped {} points.", this.totalNumberOfPoints - this.totalStoredNumberOfPoints);
+            logger.debug("RA-QuadTree has generated {} nodes.", nodesCount);
+        }
     }
 
     @Override
     public void finishLoad() {
         this.finish = true;
-        // select best sample for each node in the QuadTree
+        // select best sample for each node in the QuadTree,
+        // only nodes still dirty since the last loaded batch if samples were maintained progressively
         MyTimer.startTimer();
-        this.quadTree.selectSamples(0.5, 0.5, 0.5, 0);
+        this.quadTree.refreshSamples(0.5, 0.5, 0.5, 0);
+        this.samplesReady = true;
         MyTimer.stopTimer();
         double selectSamplesTime = MyTimer.durationSeconds();
-        System.out.println("==== Data loading finished ====");
-        System.out.println("[RA-QuadTree] select best sample for each node is done!");
-        System.out.println("[RA-QuadTree] sample selection time: " + selectSamplesTime + " seconds.");
+        logger.info("==== Data loading finished ====");
+        logger.info("[RA-QuadTree] select best sample for each node is done! sample selection time: {} seconds.", selectSamplesTime);
+    }
+
+    static class QEntry {
+        int level;
+        double ncX;
+        double ncY;
+        double nhalfDimension;
+        QuadTree node;
+        double benefit; // the benefit value if the take the best move
+
+        QEntry(int _level, double _ncX, double _ncY, double _nhalfDimension, QuadTree _node, double _benefit) {
+            level = _level;
+            ncX = _ncX;
+            ncY = _ncY;
+            nhalfDimension = _nhalfDimension;
+            node = _node;
+            benefit = _benefit;
+        }
+
+        /**
+         * entry of a node at the cell its children split, following its compressed path from given cell
+         */
+        static QEntry of(int _level, double _ncX, double _ncY, double _nhalfDimension, QuadTree _node) {
+            if (_node.path == 0L) {
+                return new QEntry(_level, _ncX, _ncY, _nhalfDimension, _node, 0.0);
+            }
+            double[] cell = _node.skipPath(_ncX, _ncY, _nhalfDimension);
+            return new QEntry(_level + _node.skip(), cell[0], cell[1], cell[2], _node, 0.0);
+        }
+    }
+
+    /**
+     * breadth first search
+     *
+     * explore nodes with higher estimated benefit first
+     * - benefit = gain of quality / cost of sample size
+     * - roots covering the same region (e.g. trees of different time buckets) share one queue and one sample budget
+     * - with a time range, subtrees without points in range are pruned,
+     *   and benefits use the estimated count of points in range instead of the count of the subtree
+     * - with a keyword, subtrees whose keyword bitmap does not have it are pruned
+     *
+     * @param _roots
+     * @param _ncX
+     * @param _ncY
+     * @param _nhalfDimension
+     * @param _rcX
+     * @param _rcY
+     * @param _rhalfWidth
+     * @param _rhalfHeight
+     * @param _zoom - zoom level of current query
+     * @param _targetSampleSize
+     * @param _tStart - Long.MIN_VALUE if no time range
+     * @param _tEnd - Long.MAX_VALUE if no time range
+     * @param _keywordId - NO_KEYWORD if no keyword
+     * @return
+     */
+    public static SampleList bfs(List<QuadTree> _roots, double _ncX, double _ncY, double _nhalfDimension,
+                                  double _rcX, double _rcY, double _rhalfWidth, double _rhalfHeight,
+                                  int _zoom, int _targetSampleSize, long _tStart, long _tEnd, int _keywordId) {
+        return bfs(_roots, _ncX, _ncY, _nhalfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight,
+                _zoom, _targetSampleSize, _tStart, _tEnd, _keywordId, Long.MAX_VALUE, null, null, null);
+    }
+
+    /** expansions between two checks of the deadline */
+    static final int DEADLINE_CHECK_EXPANSIONS = 64;
+
+    /**
+     * anytime breadth first search with a deadline
+     *
+     * - once the samples of the search so far (collected and on the nodes in queue) reach the next of _frameSizes,
+     *   they are given to _onFrame as a coarser result, before the search goes on
+     * - once the deadline passed, no more node is expanded, the nodes in queue give their samples as the result
+     * - sample size, estimated error of the result and if the deadline was reached are set on TimingContext.current()
+     * - without coarser results, runs in parallel mode if Constants.RAQT_PARALLELISM > 1, see parallelBfs()
+     * - all state of the search lives in its Search, the tree is only read, so any number of queries may run at once
+     *
+     * @param _deadline - System.nanoTime() to stop expanding at, Long.MAX_VALUE if no deadline
+     * @param _frameSizes - ascending, null if no coarser results
+     * @param _onFrame - null if no coarser results
+     * @param _trace - stats of the query, null if not traced
+     */
+    public static SampleList bfs(List<QuadTree> _roots, double _ncX, double _ncY, double _nhalfDimension,
+                                  double _rcX, double _rcY, double _rhalfWidth, double _rhalfHeight,
+                                  int _zoom, int _targetSampleSize, long _tStart, long _tEnd, int _keywordId,
+                                  long _deadline, int[] _frameSizes, Consumer<List<Point>> _onFrame, QueryTrace _trace) {
+        Search search = new Search(_zoom, _rcX, _rcY, _rhalfWidth, _rhalfHeight, _tStart, _tEnd, _keywordId,
+                _deadline, _trace);
+        search.addRoots(_roots, _ncX, _ncY, _nhalfDimension, _targetSampleSize);
+
+        if (_onFrame == null && Constants.RAQT_PARALLELISM > 1) {
+            parallelBfs(search);
+        }
+        else {
+            int frame = 0;
+            while (!search.queue.isEmpty()) {
+                // give the samples so far as a coarser result once they reach the next frame size
+                if (_onFrame != null && frame < _frameSizes.length
+                        && _targetSampleSize - search.availableSampleSize >= _frameSizes[frame]) {
+                    _onFrame.accept(search.frontier());
+                    while (frame < _frameSizes.length && _targetSampleSize - search.availableSampleSize >= _frameSizes[frame]) {
+                        frame ++;
+                    }
+                }
+                if (!search.expandNext()) {
+                    break;
+                }
+            }
+            search.collect();
+        }
+
+        if (search.trace != null) search.trace.availableSampleSize = search.availableSampleSize;
+        TimingContext timings = TimingContext.current();
+        timings.sampleSize = search.result.size();
+        timings.estimatedError = search.estimatedError;
+        timings.deadlineReached = search.deadlineReached;
+
+        return search.result;
+    }
+
+    // explore larger estimatedProfit node first
+    static final Comparator<QEntry> BENEFIT_ORDER = new Comparator<QEntry>() {
+        @Override
+        public int compare(QEntry o1, QEntry o2) {
+            if (o2.benefit > o1.benefit)
+                return 1;
+            else if (o2.benefit < o1.benefit)
+                return -1;
+            else
+                return 0;
+        }
+    };
+
+    /**
+     * state of one best-first search over the queue of its entries,
+     * a query runs one, or one per part of its frontier in parallel mode
+     */
+    static class Search {
+        final int zoom;
+        final double rcX, rcY, rhalfWidth, rhalfHeight;
+        final long tStart, tEnd;
+        final int keywordId;
+        final boolean filter;
+        final long deadline;
+        final QueryTrace trace; // null if not traced, searches in parallel are not traced
+        // benefit below which the searches of a parallel query leave nodes to the merge, null if not parallel
+        final DoubleAccumulator threshold;
+
+        final PriorityQueue<QEntry> queue;
+        final SampleList result;
+        int availableSampleSize;
+        int expansions;
+        boolean deadlineReached;
+        // sum of errors of the nodes giving their samples while still worth expanding
+        double estimatedError;
+
+        Search(int _zoom, double _rcX, double _rcY, double _rhalfWidth, double _rhalfHeight,
+               long _tStart, long _tEnd, int _keywordId, long _deadline, QueryTrace _trace) {
+            this(_zoom, _rcX, _rcY, _rhalfWidth, _rhalfHeight, _tStart, _tEnd, _keywordId, _deadline, _trace, null);
+        }
+
+        Search(int _zoom, double _rcX, double _rcY, double _rhalfWidth, double _rhalfHeight,
+               long _tStart, long _tEnd, int _keywordId, long _deadline, QueryTrace _trace, DoubleAccumulator _threshold) {
+            zoom = _zoom;
+            rcX = _rcX;
+            rcY = _rcY;
+            rhalfWidth = _rhalfWidth;
+            rhalfHeight = _rhalfHeight;
+            tStart = _tStart;
+            tEnd = _tEnd;
+            keywordId = _keywordId;
+            filter = _tStart != Long.MIN_VALUE || _tEnd != Long.MAX_VALUE || _keywordId != NO_KEYWORD;
+            deadline = _deadline;
+            trace = _trace;
+            threshold = _threshold;
+            queue = new PriorityQueue<>(BENEFIT_ORDER);
+            result = new SampleList();
+        }
+
+        /**
+         * a search of the same query over given entries, with given sample budget
+         */
+        Search fork(Collection<QEntry> _entries, int _availableSampleSize, DoubleAccumulator _threshold) {
+            Search search = new Search(zoom, rcX, rcY, rhalfWidth, rhalfHeight, tStart, tEnd, keywordId, deadline, null, _threshold);
+            search.queue.addAll(_entries);
+            search.availableSampleSize = _availableSampleSize;
+            return search;
+        }
+
+        void addRoots(List<QuadTree> _roots, double _ncX, double _ncY, double _nhalfDimension, int _targetSampleSize) {
+            availableSampleSize = _targetSampleSize;
+            for (QuadTree root: _roots) {
+                double rootCount = countMatching(root, tStart, tEnd, keywordId);
+                if (rootCount <= 0) continue;
+                QEntry rootEntry = QEntry.of(0, _ncX, _ncY, _nhalfDimension, root);
+                rootEntry.benefit = computeBenefit(zoom, rootEntry.level, root, rootCount, trace);
+                queue.add(rootEntry);
+                if (root.sample != null) {
+                    availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
+                }
+            }
+        }
+
+        /**
+         * expand the node of the largest benefit
+         *
+         * @return false if no node is worth expanding, or out of samples or time
+         */
+        boolean expandNext() {
+            QEntry entry = queue.peek();
+            // if the largest estimated benefit is 0 or enough samples, entering collecting samples mode
+            if (entry == null || deadlineReached || entry.benefit <= 0.0 || availableSampleSize <= 0
+                    || (threshold != null && entry.benefit < threshold.get())) {
+                return false;
+            }
+
+            // pick the largest benefit node
+            queue.poll();
+            int level = entry.level;
+            double ncX = entry.ncX;
+            double ncY = entry.ncY;
+            double nhalfDimension = entry.nhalfDimension;
+            QuadTree node = entry.node;
+            int sampleSize = node.sample == null? 0: Constants.NODE_SAMPLE_SIZE;
+
+            // otherwise, expand this node
+            expansions ++;
+            if (deadline != Long.MAX_VALUE && expansions % DEADLINE_CHECK_EXPANSIONS == 0 && System.nanoTime() >= deadline) {
+                deadlineReached = true;
+            }
+            double cX, cY;
+            double halfDimension = nhalfDimension / 2;
+            availableSampleSize += sampleSize;
+
+            // a leaf is expanded into the points on its bucket in the range
+            if (node.northWest == null) {
+                for (Point point: node.bucket) {
+                    if (filter && !matches(point, tStart, tEnd, keywordId)) continue;
+                    if (Math.abs(point.getX() - rcX) > rhalfWidth || Math.abs(point.getY() - rcY) > rhalfHeight) continue;
+                    if (trace != null) trace.numberOfNodesStoppedAtLevels[level] ++;
+                    result.add(point);
+                    availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
+                }
+                return true;
+            }
+
+            // northwest
+            cX = ncX - halfDimension;
+            cY = ncY - halfDimension;
+            // ignore this node if the range does not intersect with it or it has no matching points
+            double countNW = countMatching(node.northWest, tStart, tEnd, keywordId);
+            if (countNW > 0 && node.intersectsBBox(cX, cY, halfDimension, rcX, rcY, rhalfWidth, rhalfHeight)) {
+                QEntry entryNW = QEntry.of(level + 1, cX, cY, halfDimension, node.northWest);
+                entryNW.benefit = computeBenefit(zoom, entryNW.level, node.northWest, countNW, trace);
+                queue.add(entryNW);
+                if (node.northWest.sample != null) {
+                    availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
+                }
+            }
+
+            // northeast
+            cX = ncX + halfDimension;
+            cY = ncY - halfDimension;
+            // ignore this node if the range does not intersect with it or it has no matching points
+            double countNE = countMatching(node.northEast, tStart, tEnd, keywordId);
+            if (countNE > 0 && node.intersectsBBox(cX, cY, halfDimension, rcX, rcY, rhalfWidth, rhalfHeight)) {
+                QEntry entryNE = QEntry.of(level + 1, cX, cY, halfDimension, node.northEast);
+                entryNE.benefit = computeBenefit(zoom, entryNE.level, node.northEast, countNE, trace);
+                queue.add(entryNE);
+                if (node.northEast.sample != null) {
+                    availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
+                }
+            }
+
+            // southwest
+            cX = ncX - halfDimension;
+            cY = ncY + halfDimension;
+            // ignore this node if the range does not intersect with it or it has no matching points
+            double countSW = countMatching(node.southWest, tStart, tEnd, keywordId);
+            if (countSW > 0 && node.intersectsBBox(cX, cY, halfDimension, rcX, rcY, rhalfWidth, rhalfHeight)) {
+                QEntry entrySW = QEntry.of(level + 1, cX, cY, halfDimension, node.southWest);
+                entrySW.benefit = computeBenefit(zoom, entrySW.level, node.southWest, countSW, trace);
+                queue.add(entrySW);
+                if (node.southWest.sample != null) {
+                    availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
+                }
+            }
+
+            // southeast
+            cX = ncX + halfDimension;
+            cY = ncY + halfDimension;
+            // ignore this node if the range does not intersect with it or it has no matching points
+            double countSE = countMatching(node.southEast, tStart, tEnd, keywordId);
+            if (countSE > 0 && node.intersectsBBox(cX, cY, halfDimension, rcX, rcY, rhalfWidth, rhalfHeight)) {
+                QEntry entrySE = QEntry.of(level + 1, cX, cY, halfDimension, node.southEast);
+                entrySE.benefit = computeBenefit(zoom, entrySE.level, node.southEast, countSE, trace);
+                queue.add(entrySE);
+                if (node.southEast.sample != null) {
+                    availableSampleSize -= Constants.NODE_SAMPLE_SIZE;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * expand nodes while worth it, a search of a parallel query running out of its share of samples
+         * publishes the benefit it stopped at, so the others do not spend samples on less beneficial nodes
+         */
+        void expandAll() {
+            while (expandNext());
+            if (threshold != null && availableSampleSize <= 0 && !queue.isEmpty()) {
+                threshold.accumulate(queue.peek().benefit);
+            }
+        }
+
+        /**
+         * all nodes in queue give their samples, no need to poll them in order
+         */
+        void collect() {
+            for (QEntry left: queue) {
+                Point sample = filter? left.node.sampleMatching(tStart, tEnd, keywordId): left.node.sample;
+                if (sample != null) {
+                    if (trace != null) trace.numberOfNodesStoppedAtLevels[left.level] ++;
+                    // a matching point below the node has no output coordinates cached on it
+                    if (sample == left.node.sample) {
+                        result.add(sample, left.node.sampleLng, left.node.sampleLat);
+                    }
+                    else {
+                        result.add(sample);
+                    }
+                }
+                if (left.benefit > 0.0 && left.node.errors != null) {
+                    estimatedError += left.node.errors[zoom];
+                }
+            }
+            queue.clear();
+        }
+
+        /**
+         * @return samples collected in result and samples of the nodes waiting in queue
+         */
+        List<Point> frontier() {
+            List<Point> samples = new ArrayList<>(result.size() + queue.size());
+            samples.addAll(result);
+            for (QEntry entry: queue) {
+                Point sample = filter? entry.node.sampleMatching(tStart, tEnd, keywordId): entry.node.sample;
+                if (sample != null) {
+                    samples.add(sample);
+                }
+            }
+            return samples;
+        }
     }
 
-    public static double computeErrorAgainstChildren(QuadTree _node, double _ncX, double _ncY, double _nhalfDimension,
-                                                     double _rPixelScale) {
-        // if already leaf, benefit is 0.0, no need to expand it
-        if (_node.northWest == null) return 0.0;
+    /** pool of the searches of parallel queries, shared by all trees */
+    static ForkJoinPool parallelPool;
+    /** frontier entries per search below which a query goes on sequentially */
+    static final int PARALLEL_MIN_ENTRIES = 16;
+
+    static synchronized ForkJoinPool parallelPool() {
+        if (parallelPool == null) {
+            parallelPool = new ForkJoinPool(Constants.RAQT_PARALLELISM);
+        }
+        return parallelPool;
+    }
+
+    /**
+     * parallel best-first search of one large query, e.g. zoom 0 over the whole tree
+     *
+     * - the levels always expanded (benefit MAX_VALUE below level 8) are expanded first, as the sequential search does
+     * - the frontier is dealt to Constants.RAQT_PARALLELISM searches on a ForkJoin pool,
+     *   each with a share of the sample budget in proportion to the benefit of its entries
+     * - a search running out of its share publishes the benefit it stopped at as a global threshold,
+     *   the others leave nodes below it, and the samples they did not spend, to the merge
+     * - the queues left by all searches are merged into one, which spends the samples left in benefit order,
+     *   so the result is close to the sequential one, but not necessarily the same
+     * - a frontier too small to split goes on sequentially
+     *
+     * @param _search - search of the query with its roots added, holds the result once done
+     */
+    static void parallelBfs(Search _search) {
+        int parallelism = Constants.RAQT_PARALLELISM;
+
+        // levels always expanded
+        while (!_search.queue.isEmpty() && _search.queue.peek().benefit == Double.MAX_VALUE && _search.expandNext());
+
+        if (_search.queue.size() < parallelism * PARALLEL_MIN_ENTRIES || _search.availableSampleSize <= 0
+                || _search.deadlineReached) {
+            while (_search.expandNext());
+            _search.collect();
+            return;
+        }
+
+        // deal the frontier in descending benefit, so that the parts are balanced
+        List<QEntry> frontier = new ArrayList<>(_search.queue);
+        _search.queue.clear();
+        frontier.sort(BENEFIT_ORDER);
+        List<List<QEntry>> parts = new ArrayList<>(parallelism);
+        double[] weights = new double[parallelism];
+        double totalWeight = 0.0;
+        for (int i = 0; i < parallelism; i ++) {
+            parts.add(new ArrayList<>());
+        }
+        for (int i = 0; i < frontier.size(); i ++) {
+            QEntry entry = frontier.get(i);
+            parts.get(i % parallelism).add(entry);
+            if (entry.benefit > 0.0 && entry.benefit != Double.MAX_VALUE) {
+                weights[i % parallelism] += entry.benefit;
+                totalWeight += entry.benefit;
+            }
+        }
+
+        // share the samples left in proportion to the benefit of each part
+        DoubleAccumulator threshold = new DoubleAccumulator(Math::max, 0.0);
+        int samplesLeft = _search.availableSampleSize;
+        List<Search> searches = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i ++) {
+            int share = totalWeight > 0.0? (int) (_search.availableSampleSize * (weights[i] / totalWeight)):
+                    _search.availableSampleSize / parallelism;
+            samplesLeft -= share;
+            searches.add(_search.fork(parts.get(i), share, threshold));
+        }
+
+        ForkJoinPool pool = parallelPool();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(parallelism);
+        for (Search search: searches) {
+            tasks.add(pool.submit(search::expandAll));
+        }
+        for (ForkJoinTask<?> task: tasks) {
+            task.join();
+        }
+
+        // merge the queues left, then spend the samples left in benefit order over all of them
+        _search.availableSampleSize = samplesLeft;
+        for (Search search: searches) {
+            _search.queue.addAll(search.queue);
+            _search.result.addAll(search.result);
+            _search.availableSampleSize += search.availableSampleSize;
+            _search.expansions += search.expansions;
+            _search.deadlineReached |= search.deadlineReached;
+        }
+        while (_search.expandNext());
+        _search.collect();
+    }
+
+    public static final int NO_KEYWORD = -1;
+
+    /**
+     * samples in time range [_tStart, _tEnd], for a tree without temporal summaries to narrow its search by
+     *
+     * @param _points
+     * @param _tStart
+     * @param _tEnd
+     * @return
+     */
+    static SampleList inTimeRange(List<Point> _points, long _tStart, long _tEnd) {
+        SampleList samples = _points instanceof SampleList? (SampleList) _points: null;
+        SampleList result = new SampleList();
+        for (int i = 0; i < _points.size(); i ++) {
+            Point point = _points.get(i);
+            if (!matches(point, _tStart, _tEnd, NO_KEYWORD)) continue;
+            if (samples != null) {
+                result.add(point, samples.getLng(i), samples.getLat(i));
+            }
+            else {
+                result.add(point);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return if given point is in [_tStart, _tEnd] and has given keyword
+     */
+    static boolean matches(Point _point, long _tStart, long _tEnd, int _keywordId) {
+        if (_point == null) return false;
+        if (_keywordId != NO_KEYWORD && !(_point instanceof TaggedPoint && ((TaggedPoint) _point).hasKeywordId(_keywordId))) return false;
+        if (_tStart == Long.MIN_VALUE && _tEnd == Long.MAX_VALUE) return true;
+        if (!(_point instanceof TimedPoint)) return false;
+        long time = ((TimedPoint) _point).getTime();
+        return _tStart <= time && time <= _tEnd;
+    }
+
+    /**
+     * estimate the number of points in given subtree taking part in a query with given time range and keyword
+     *
+     * - the keyword bitmap only tells presence, so the count of a subtree having the keyword is not narrowed by it
+     */
+    static double countMatching(QuadTree _node, long _tStart, long _tEnd, int _keywordId) {
+        if (_keywordId != NO_KEYWORD && !_node.hasKeyword(_keywordId)) return 0.0;
+        if (_tStart == Long.MIN_VALUE && _tEnd == Long.MAX_VALUE) return _node.count;
+        return _node.countInTimeRange(_tStart, _tEnd);
+    }
+
+    double computeErrorAgainstChildren(QuadTree _node, double _ncX, double _ncY, double _nhalfDimension,
+                                       double _rPixelScale) {
+        // if already leaf without bucket, benefit is 0.0, no need to expand it
+        if (_node.northWest == null && _node.bucket == null) return 0.0;
 
         // get the resolution for given _node as piece of the result
         int resolution = (int) Math.round(2 * _nhalfDimension / _rPixelScale);
@@ -684,6 +1506,7 @@ public class RAQuadTree implements IAlgorithm {
         if (resolution == 0) return 0.0;
 
         double error;
+        Point[] candidates = _node.candidates();
 
         if (resolution > 4 * Constants.NODE_SAMPLE_SIZE) {
             // render the point on node
@@ -692,20 +1515,11 @@ public class RAQuadTree implements IAlgorithm {
             if (_node.sample != null) {
                 renderer.render(rendering1, _ncX, _ncY, _nhalfDimension, resolution, _node.sample);
             }
-            // render the 4 children points
+            // render the 4 children points, or the points on bucket
             // for pixel list rendering, background is always an empty list
             List<Pixel> rendering2 = new ArrayList<>();
-            if (_node.northWest.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.northWest.sample);
-            }
-            if (_node.northEast.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.northEast.sample);
-            }
-            if (_node.southWest.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.southWest.sample);
-            }
-            if (_node.southEast.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.southEast.sample);
+            for (Point candidate: candidates) {
+                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, candidate);
             }
             error = errorMetric.error(rendering1, rendering2, renderer.realResolution(resolution));
         }
@@ -716,19 +1530,10 @@ public class RAQuadTree implements IAlgorithm {
             if (_node.sample != null) {
                 renderer.render(rendering1, _ncX, _ncY, _nhalfDimension, resolution, _node.sample);
             }
-            // render the 4 children points
+            // render the 4 children points, or the points on bucket
             byte[] rendering2 = renderer.createRendering(resolution);
-            if (_node.northWest.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.northWest.sample);
-            }
-            if (_node.northEast.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.northEast.sample);
-            }
-            if (_node.southWest.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.southWest.sample);
-            }
-            if (_node.southEast.sample != null) {
-                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, _node.southEast.sample);
+            for (Point candidate: candidates) {
+                renderer.render(rendering2, _ncX, _ncY, _nhalfDimension, resolution, candidate);
             }
             error = errorMetric.error(rendering1, rendering2, renderer.realResolution(resolution));
         }
@@ -736,32 +1541,57 @@ public class RAQuadTree implements IAlgorithm {
     }
 
     public static double computeBenefit(int _zoom, int _level, QuadTree _node) {
-        computeBenefitTimes ++;
+        return computeBenefit(_zoom, _level, _node, _node.count, null);
+    }
+
+    /**
+     * @param _count - number of points of _node taking part in the query, e.g. only those in the query's time range
+     * @param _trace - stats of the query, null if not traced
+     */
+    public static double computeBenefit(int _zoom, int _level, QuadTree _node, double _count, QueryTrace _trace) {
+        if (_trace == null) {
+            return benefit(_zoom, _level, _node, _count);
+        }
 
         //--time--//
+        // counted and timed on every exit, including the leaf and top level shortcuts
+        _trace.computeBenefitTimes ++;
         long startTime = System.nanoTime();
+        try {
+            return benefit(_zoom, _level, _node, _count);
+        }
+        finally {
+            long endTime = System.nanoTime();
+            _trace.computeBenefitTime += (double) (endTime - startTime) / 1000000000.0;
+        }
+    }
 
-        // for leaf node, it can not be expanded at all.
-        if (_node.northWest == null) return 0.0;
+    /**
+     * benefit of expanding _node into its children or its bucket, see computeBenefit()
+     */
+    static double benefit(int _zoom, int _level, QuadTree _node, double _count) {
+        // for leaf node without bucket, it can not be expanded at all.
+        if (_node.northWest == null && _node.bucket == null) return 0.0;
 
         // for levels < zoom level 0 (2^8 = 256, zoom level 0 has 256px resolution), always expand.
         if (_level < 8) return Double.MAX_VALUE;
 
         double error = _node.errors[_zoom];
 
-        double gain = error * Math.log(_node.count);
+        double gain = error * Math.log(_count);
         int sampleSize = (_node.sample == null? 0: 1);
         int sampleSizeOfChildren = 0;
-        sampleSizeOfChildren += (_node.northWest.sample == null? 0: 1);
-        sampleSizeOfChildren += (_node.northEast.sample == null? 0: 1);
-        sampleSizeOfChildren += (_node.southWest.sample == null? 0: 1);
-        sampleSizeOfChildren += (_node.southEast.sample == null? 0: 1);
+        if (_node.northWest == null) {
+            sampleSizeOfChildren = _node.bucket.length;
+        }
+        else {
+            sampleSizeOfChildren += (_node.northWest.sample == null? 0: 1);
+            sampleSizeOfChildren += (_node.northEast.sample == null? 0: 1);
+            sampleSizeOfChildren += (_node.southWest.sample == null? 0: 1);
+            sampleSizeOfChildren += (_node.southEast.sample == null? 0: 1);
+        }
         int cost = sampleSizeOfChildren - sampleSize;
 
-        //--time--//
-        long endTime = System.nanoTime();
-        times.put("computeBenefit", times.get("computeBenefit") + ((double) (endTime - startTime) / 1000000000.0));
-
         if (cost == 0) {
             return Double.MAX_VALUE;
         }
@@ -771,11 +1601,21 @@ public class RAQuadTree implements IAlgorithm {
     }
 
     public byte[] answerQuery(Query query) {
+        return answerQuery(query, null, null);
+    }
 
-        if (!this.finish) {
-            System.out.println("[RA-QuadTree] has not finished loading data, will not answer this query!");
-            MyTimer.temporaryTimer.put("treeTime", 0.0);
-            MyTimer.temporaryTimer.put("aggregateTime", 0.0);
+    /**
+     * @param _refinements - null if no coarser results,
+     *                       otherwise used if query.anytime, for frames of Constants.RAQT_ANYTIME_FRAMES samples
+     * @param _shipped - null if the result must be full, otherwise builds the result message and remembers it
+     */
+    @Override
+    public byte[] answerQuery(Query query, ObjDoubleConsumer<byte[]> _refinements, ShippedSamples _shipped) {
+
+        if (!this.finish && !this.samplesReady) {
+            logger.info("[RA-QuadTree] samples are not selected for loaded data yet, will not answer this query!");
+            TimingContext.current().treeTime = 0.0;
+            TimingContext.current().aggregateTime = 0.0;
             BinaryMessageBuilder messageBuilder = new BinaryMessageBuilder();
             double lng = xLng(0.5);
             double lat = yLat(0.5);
@@ -791,15 +1631,18 @@ public class RAQuadTree implements IAlgorithm {
         int resY = query.resY;
         int zoom = query.zoom;
         int sampleSize = query.sampleSize <= 0? Constants.DEFAULT_SAMPLE_SIZE: query.sampleSize;
+        long deadline = query.latencyBudget <= 0? Long.MAX_VALUE: System.nanoTime() + query.latencyBudget * 1000000L;
 
         MyTimer.startTimer();
-        System.out.println("[RA-QuadTree] is answering query: \n" +
-                "Q = { \n" +
-                "    range: [" + lng0 + ", " + lat0 + "] ~ [" + lng1 + ", " + lat1 + "], \n" +
-                "    resolution: [" + resX + " x " + resY + "], \n" +
-                "    zoom: " + zoom + ",\n " +
-                "    sampleSize: " + sampleSize + " \n" +
-                " }");
+        if (logger.isDebugEnabled()) {
+            logger.debug("[RA-QuadTree] is answering query: \n" +
+                    "Q = { \n" +
+                    "    range: [" + lng0 + ", " + lat0 + "] ~ [" + lng1 + ", " + lat1 + "], \n" +
+                    "    resolution: [" + resX + " x " + resY + "], \n" +
+                    "    zoom: " + zoom + ",\n " +
+                    "    sampleSize: " + sampleSize + " \n" +
+                    " }");
+        }
 
         double iX0 = lngX(lng0);
         double iY0 = latY(lat0);
@@ -811,61 +1654,120 @@ public class RAQuadTree implements IAlgorithm {
         double rhalfWidth = (iX1 - iX0) / 2;
         double rhalfHeight = (iY0 - iY1) / 2;
 
-        System.out.println("[RA-QuadTree] starting range search on QuadTree with: \n" +
-                "bbox = [(" + iX0 + ", " + iY0 + "), (" + iX1 + ", " + iY1 + ")] ; \n" +
-                "range = [(" + rcX + ", " + rcY + "), " + rhalfWidth + ", " + rhalfHeight + "] ; \n" +
-                "pixelScale = " + pixelScale + ";");
+        if (logger.isDebugEnabled()) {
+            logger.debug("[RA-QuadTree] starting range search on QuadTree with: \n" +
+                    "bbox = [(" + iX0 + ", " + iY0 + "), (" + iX1 + ", " + iY1 + ")] ; \n" +
+                    "range = [(" + rcX + ", " + rcY + "), " + rhalfWidth + ", " + rhalfHeight + "] ; \n" +
+                    "pixelScale = " + pixelScale + ";");
+        }
 
-        /** For query stats*/
-        for (int i = 0; i <= Constants.MAX_ZOOM + 9; i ++) numberOfNodesStoppedAtLevels[i] = 0;
-        computeBenefitTimes = 0;
+        /** For query stats and time analysis */
+        QueryTrace trace = null;
+        if (query.trace || logger.isDebugEnabled()) {
+            trace = new QueryTrace("RA-QuadTree", settings.maxZoom + 9 + 1);
+            trace.zoom = zoom;
+            trace.targetSampleSize = sampleSize;
+        }
 
-        /** For query time analysis */
-        times.put("computeBenefit", 0.0);
+        // time range of the query, narrows the search if nodes keep temporal summaries,
+        // otherwise the samples found are filtered by it
+        long tStart = Long.MIN_VALUE;
+        long tEnd = Long.MAX_VALUE;
+        boolean filterTime = query.tEnd > 0 && settings.timeBuckets <= 0;
+        if (query.tEnd > 0 && settings.timeBuckets > 0) {
+            tStart = query.tStart;
+            tEnd = query.tEnd;
+        }
+
+        // coarser results of an anytime query, frames smaller than the target sample size
+        int[] frameSizes = null;
+        Consumer<List<Point>> onFrame = null;
+        if (query.anytime && _refinements != null) {
+            frameSizes = Arrays.stream(Constants.RAQT_ANYTIME_FRAMES).filter(size -> size < sampleSize).toArray();
+            onFrame = samples -> {
+                BinaryMessageBuilder frameBuilder = new BinaryMessageBuilder();
+                for (Point point : filterTime? inTimeRange(samples, query.tStart, query.tEnd): samples) {
+                    frameBuilder.add(point);
+                }
+                _refinements.accept(frameBuilder.getBuffer(), (double) samples.size() / sampleSize);
+            };
+        }
 
         MyTimer.startTimer();
-        System.out.println("[RA-QuadTree] is doing a best first search with sampleSize = " + sampleSize + ".");
-        List<Point> points = this.quadTree.bfs(0.5, 0.5, 0.5,
-                rcX, rcY, rhalfWidth, rhalfHeight, zoom, sampleSize);
+        SampleList points = bfs(Collections.singletonList(this.quadTree), 0.5, 0.5, 0.5,
+                rcX, rcY, rhalfWidth, rhalfHeight, zoom, sampleSize, tStart, tEnd, keywordIdOf(query),
+                deadline, frameSizes, onFrame, trace);
+        if (filterTime) {
+            points = inTimeRange(points, query.tStart, query.tEnd);
+            TimingContext.current().sampleSize = points.size();
+        }
         MyTimer.stopTimer();
         double treeTime = MyTimer.durationSeconds();
 
-        MyTimer.temporaryTimer.put("treeTime", treeTime);
-        System.out.println("[RA-QuadTree] tree search got " + points.size() + " data points.");
-        System.out.println("[RA-QuadTree] tree search time: " + treeTime + " seconds.");
-        System.out.println("[RA-QuadTree]     - compute benefit time: " + times.get("computeBenefit") + " seconds.");
-        System.out.println("[RA-QuadTree]     - compute benefit was called: " + computeBenefitTimes + " times.");
+        TimingContext.current().treeTime = treeTime;
 
-        // build binary result message
+        // build binary result message, or delta message against the samples the client holds
         MyTimer.startTimer();
-        BinaryMessageBuilder messageBuilder = new BinaryMessageBuilder();
-        double lng, lat;
-        int resultSize = 0;
-        for (Point point : points) {
-            lng = xLng(point.getX());
-            lat = yLat(point.getY());
-            messageBuilder.add(lng, lat);
-            resultSize++;
+        byte[] message;
+        int resultSize = points.size();
+        if (_shipped != null) {
+            message = _shipped.answer(points);
+        }
+        else {
+            BinaryMessageBuilder messageBuilder = new BinaryMessageBuilder();
+            messageBuilder.addAll(points);
+            message = messageBuilder.getBuffer();
         }
         MyTimer.stopTimer();
         double buildBinaryTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
-
-        System.out.println("[RA-QuadTree] build binary result with  " + resultSize + " points.");
-        System.out.println("[RA-QuadTree] build binary result time: " + buildBinaryTime + " seconds.");
+        TimingContext.current().aggregateTime = buildBinaryTime;
 
         MyTimer.stopTimer();
-        System.out.println("[RA-QuadTree] answer query total time: " + MyTimer.durationSeconds() + " seconds.");
-        System.out.println("[RA-QuadTree] ---- # of nodes stopping at each level ----");
-        for (int i = 0; i <= Constants.MAX_ZOOM + 9; i ++) {
-            System.out.println("Level " + i + ": " + numberOfNodesStoppedAtLevels[i]);
+        double totalTime = MyTimer.durationSeconds();
+
+        if (trace != null) {
+            trace.resultSize = resultSize;
+            trace.treeTime = treeTime;
+            trace.aggregateTime = buildBinaryTime;
+            TimingContext.current().trace = trace;
+            if (logger.isDebugEnabled()) {
+                logger.debug("[RA-QuadTree] tree search got {} data points.", points.size());
+                logger.debug("[RA-QuadTree]     - stopped at latency budget: {}", TimingContext.current().deadlineReached);
+                logger.debug("[RA-QuadTree]     - estimated error: {}", TimingContext.current().estimatedError);
+                logger.debug("[RA-QuadTree] tree search time: {} seconds.", treeTime);
+                logger.debug("[RA-QuadTree]     - compute benefit time: {} seconds.", trace.computeBenefitTime);
+                logger.debug("[RA-QuadTree]     - compute benefit was called: {} times.", trace.computeBenefitTimes);
+                logger.debug("[RA-QuadTree]     - available sample size: {}", trace.availableSampleSize);
+                logger.debug("[RA-QuadTree] build binary result with {} points.", resultSize);
+                logger.debug("[RA-QuadTree] build binary result time: {} seconds.", buildBinaryTime);
+                logger.debug("[RA-QuadTree] answer query total time: {} seconds.", totalTime);
+                logger.debug("[RA-QuadTree] ---- # of nodes stopping at each level ----");
+                for (int i = 0; i <= settings.maxZoom + 9; i ++) {
+                    logger.debug("Level {}: {}", i, trace.numberOfNodesStoppedAtLevels[i]);
+                }
+            }
         }
 
-        return messageBuilder.getBuffer();
+        return message;
+    }
+
+    /**
+     * @return a new node of this tree, trees keeping more summaries on nodes extend QuadTree
+     */
+    QuadTree newNode() {
+        return new QuadTree();
+    }
+
+    /**
+     * @param query
+     * @return id of the keyword the query is filtered by, NO_KEYWORD if not filtered
+     */
+    int keywordIdOf(Query query) {
+        return NO_KEYWORD;
     }
 
     private void printTiming() {
-        System.out.println("[Total Time] " + timing.get("total") + " seconds.");
+        logger.debug("[Total Time] {} seconds.", timing.get("total"));
     }
 
     public static void printRenderingGray(String name, byte[] _rendering, int _resolution, boolean _expansion) {
@@ -287,11 +287,12 @@ public class RAQuadTreeDistance implements IAlgorithm {
          * @param _rhalfHeight
          * @param _zoom - zoom level of current query
          * @param _targetSampleSize
+         * @param _trace - stats of the query
          * @return
          */
         public List<Point> bfs(double _ncX, double _ncY, double _nhalfDimension,
                                double _rcX, double _rcY, double _rhalfWidth, double _rhalfHeight,
-                               int _zoom, int _targetSampleSize) {
+                               int _zoom, int _targetSampleSize, QueryTrace _trace) {
 
             List<Point> result = new ArrayList<>();
 
@@ -308,7 +309,7 @@ public class RAQuadTreeDistance implements IAlgorithm {
                 }
             });
 
-            double rootBenefit = computeBenefit(_zoom, 0, this);
+            double rootBenefit = computeBenefit(_zoom, 0, this, _trace);
             QEntry rootEntry = new QEntry(0, _ncX, _ncY, _nhalfDimension, this, rootBenefit);
             // add root node
             queue.add(rootEntry);
@@ -334,7 +335,7 @@ public class RAQuadTreeDistance implements IAlgorithm {
 //                    System.out.println("[queue] sample size = " + sampleSize);
                     //-DEBUG-//
                     if (node.sample != null) {
-                        numberOfNodesStoppedAtLevels[level] ++;
+                        _trace.numberOfNodesStoppedAtLevels[level] ++;
                         result.add(node.sample);
                     }
                     continue;
@@ -350,7 +351,7 @@ public class RAQuadTreeDistance implements IAlgorithm {
                 cY = ncY - halfDimension;
                 // ignore this node if the range does not intersect with it
                 if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitNW = computeBenefit(_zoom, level + 1, node.northWest);
+                    double benefitNW = computeBenefit(_zoom, level + 1, node.northWest, _trace);
                     QEntry entryNW = new QEntry(level + 1, cX, cY, halfDimension, node.northWest, benefitNW);
                     queue.add(entryNW);
                     if (node.northWest.sample != null) {
@@ -363,7 +364,7 @@ public class RAQuadTreeDistance implements IAlgorithm {
                 cY = ncY - halfDimension;
                 // ignore this node if the range does not intersect with it
                 if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitNE = computeBenefit(_zoom, level + 1, node.northEast);
+                    double benefitNE = computeBenefit(_zoom, level + 1, node.northEast, _trace);
                     QEntry entryNE = new QEntry(level + 1, cX, cY, halfDimension, node.northEast, benefitNE);
                     queue.add(entryNE);
                     if (node.northEast.sample != null) {
@@ -376,7 +377,7 @@ public class RAQuadTreeDistance implements IAlgorithm {
                 cY = ncY + halfDimension;
                 // ignore this node if the range does not intersect with it
                 if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitSW = computeBenefit(_zoom, level + 1, node.southWest);
+                    double benefitSW = computeBenefit(_zoom, level + 1, node.southWest, _trace);
                     QEntry entrySW = new QEntry(level + 1, cX, cY, halfDimension, node.southWest, benefitSW);
                     queue.add(entrySW);
                     if (node.southWest.sample != null) {
@@ -389,7 +390,7 @@ public class RAQuadTreeDistance implements IAlgorithm {
                 cY = ncY + halfDimension;
                 // ignore this node if the range does not intersect with it
                 if (intersectsBBox(cX, cY, halfDimension, _rcX, _rcY, _rhalfWidth, _rhalfHeight)) {
-                    double benefitSE = computeBenefit(_zoom, level + 1, node.southEast);
+                    double benefitSE = computeBenefit(_zoom, level + 1, node.southEast, _trace);
                     QEntry entrySE = new QEntry(level + 1, cX, cY, halfDimension, node.southEast, benefitSE);
                     queue.add(entrySE);
                     if (node.southEast.sample != null) {
@@ -473,21 +474,15 @@ public class RAQuadTreeDistance implements IAlgorithm {
 
     }
 
-    public static double highestLevelNodeDimension;
+    // configuration of this tree, fixed once constructed
+    final double highestLevelNodeDimension;
 
     QuadTree quadTree;
     int totalNumberOfPoints = 0;
     int totalStoredNumberOfPoints = 0;
-    static long nodesCount = 0; // count quad-tree nodes
+    long nodesCount = 0; // count quad-tree nodes
     boolean finish = false; // loading data finish flag
 
-    /** For query stats */
-    static int[] numberOfNodesStoppedAtLevels; // for current query, count how many nodes stopped at a certain level
-    static int computeBenefitTimes; // for current query, count how many times compute the benefit
-
-    /** For query time analysis */
-    static Map<String, Double> times; // for current query, store times for different parts
-
     //-Timing-//
     static final boolean keepTiming = true;
     Map<String, Double> timing;
@@ -508,12 +503,6 @@ public class RAQuadTreeDistance implements IAlgorithm {
             timing.put("total", 0.0);
         }
 
-        /** For query stats */
-        numberOfNodesStoppedAtLevels = new int[Constants.MAX_ZOOM + 9 + 1];
-
-        /** For query time analysis */
-        times = new HashMap<>();
-
         MyMemory.printMemory();
     }
 
@@ -615,42 +604,46 @@ public class RAQuadTreeDistance implements IAlgorithm {
         System.out.println("[RA-QuadTree-Distance] sample selection time: " + selectSamplesTime + " seconds.");
     }
 
-    public static double computeBenefit(int _zoom, int _level, QuadTree _node) {
-        computeBenefitTimes ++;
-
+    /**
+     * @param _trace - stats of the query
+     */
+    public static double computeBenefit(int _zoom, int _level, QuadTree _node, QueryTrace _trace) {
         //--time--//
+        // counted and timed on every exit, including the shortcuts
+        _trace.computeBenefitTimes ++;
         long startTime = System.nanoTime();
+        try {
+            // for leaf node, it can not be expanded at all.
+            if (_node.northWest == null) return 0.0;
 
-        // for leaf node, it can not be expanded at all.
-        if (_node.northWest == null) return 0.0;
-
-        // for levels < zoom level 0 (2^8 = 256, zoom level 0 has 256px resolution), always expand.
-        if (_level < 8) return Double.MAX_VALUE;
+            // for levels < zoom level 0 (2^8 = 256, zoom level 0 has 256px resolution), always expand.
+            if (_level < 8) return Double.MAX_VALUE;
 
-        // current error
-        double error = _node.error;
+            // current error
+            double error = _node.error;
 
-        // total error of children
-        double sumErrorChildren = _node.northWest.error + _node.northEast.error + _node.southWest.error + _node.southEast.error;
+            // total error of children
+            double sumErrorChildren = _node.northWest.error + _node.northEast.error + _node.southWest.error + _node.southEast.error;
 
-        double gain = error - (sumErrorChildren / 4.0);
-        int sampleSize = (_node.sample == null? 0: 1);
-        int sampleSizeOfChildren = 0;
-        sampleSizeOfChildren += (_node.northWest.sample == null? 0: 1);
-        sampleSizeOfChildren += (_node.northEast.sample == null? 0: 1);
-        sampleSizeOfChildren += (_node.southWest.sample == null? 0: 1);
-        sampleSizeOfChildren += (_node.southEast.sample == null? 0: 1);
-        int cost = sampleSizeOfChildren - sampleSize;
+            double gain = error - (sumErrorChildren / 4.0);
+            int sampleSize = (_node.sample == null? 0: 1);
+            int sampleSizeOfChildren = 0;
+            sampleSizeOfChildren += (_node.northWest.sample == null? 0: 1);
+            sampleSizeOfChildren += (_node.northEast.sample == null? 0: 1);
+            sampleSizeOfChildren += (_node.southWest.sample == null? 0: 1);
+            sampleSizeOfChildren += (_node.southEast.sample == null? 0: 1);
+            int cost = sampleSizeOfChildren - sampleSize;
 
-        //--time--//
-        long endTime = System.nanoTime();
-        times.put("computeBenefit", times.get("computeBenefit") + ((double) (endTime - startTime) / 1000000000.0));
-
-        if (cost == 0) {
-            return Double.MAX_VALUE;
+            if (cost == 0) {
+                return Double.MAX_VALUE;
+            }
+            else {
+                return gain / (double) cost;
+            }
         }
-        else {
-            return gain / (double) cost;
+        finally {
+            long endTime = System.nanoTime();
+            _trace.computeBenefitTime += (double) (endTime - startTime) / 1000000000.0;
         }
     }
 
@@ -658,8 +651,8 @@ public class RAQuadTreeDistance implements IAlgorithm {
 
         if (!this.finish) {
             System.out.println("[RA-QuadTree-Distance] has not finished loading data, will not answer this query!");
-            MyTimer.temporaryTimer.put("treeTime", 0.0);
-            MyTimer.temporaryTimer.put("aggregateTime", 0.0);
+            TimingContext.current().treeTime = 0.0;
+            TimingContext.current().aggregateTime = 0.0;
             BinaryMessageBuilder messageBuilder = new BinaryMessageBuilder();
             double lng = xLng(0.5);
             double lat = yLat(0.5);
@@ -700,25 +693,23 @@ public class RAQuadTreeDistance implements IAlgorithm {
                 "range = [(" + rcX + ", " + rcY + "), " + rhalfWidth + ", " + rhalfHeight + "] ; \n" +
                 "pixelScale = " + pixelScale + ";");
 
-        /** For query stats*/
-        for (int i = 0; i <= Constants.MAX_ZOOM + 9; i ++) numberOfNodesStoppedAtLevels[i] = 0;
-        computeBenefitTimes = 0;
-
-        /** For query time analysis */
-        times.put("computeBenefit", 0.0);
+        /** For query stats and time analysis, per query as the tree may answer queries concurrently */
+        QueryTrace trace = new QueryTrace("RA-QuadTree-Distance", Constants.MAX_ZOOM + 9 + 1);
+        trace.zoom = zoom;
+        trace.targetSampleSize = sampleSize;
 
         MyTimer.startTimer();
         System.out.println("[RA-QuadTree-Distance] is doing a best first search with sampleSize = " + sampleSize + ".");
         List<Point> points = this.quadTree.bfs(0.5, 0.5, 0.5,
-                rcX, rcY, rhalfWidth, rhalfHeight, zoom, sampleSize);
+                rcX, rcY, rhalfWidth, rhalfHeight, zoom, sampleSize, trace);
         MyTimer.stopTimer();
         double treeTime = MyTimer.durationSeconds();
 
-        MyTimer.temporaryTimer.put("treeTime", treeTime);
+        TimingContext.current().treeTime = treeTime;
         System.out.println("[RA-QuadTree-Distance] tree search got " + points.size() + " data points.");
         System.out.println("[RA-QuadTree-Distance] tree search time: " + treeTime + " seconds.");
-        System.out.println("[RA-QuadTree-Distance]     - compute benefit time: " + times.get("computeBenefit") + " seconds.");
-        System.out.println("[RA-QuadTree-Distance]     - compute benefit was called: " + computeBenefitTimes + " times.");
+        System.out.println("[RA-QuadTree-Distance]     - compute benefit time: " + trace.computeBenefitTime + " seconds.");
+        System.out.println("[RA-QuadTree-Distance]     - compute benefit was called: " + trace.computeBenefitTimes + " times.");
 
         // build binary result message
         MyTimer.startTimer();
@@ -733,7 +724,7 @@ public class RAQuadTreeDistance implements IAlgorithm {
         }
         MyTimer.stopTimer();
         double buildBinaryTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
+        TimingContext.current().aggregateTime = buildBinaryTime;
 
         System.out.println("[RA-QuadTree-Distance] build binary result with  " + resultSize + " points.");
         System.out.println("[RA-QuadTree-Distance] build binary result time: " + buildBinaryTime + " seconds.");
@@ -742,9 +733,14 @@ public class RAQuadTreeDistance implements IAlgorithm {
         System.out.println("[RA-QuadTree-Distance] answer query total time: " + MyTimer.durationSeconds() + " seconds.");
         System.out.println("[RA-QuadTree-Distance] ---- # of nodes stopping at each level ----");
         for (int i = 0; i <= Constants.MAX_ZOOM + 9; i ++) {
-            System.out.println("Level " + i + ": " + numberOfNodesStoppedAtLevels[i]);
+            System.out.println("Level " + i + ": " + trace.numberOfNodesStoppedAtLevels[i]);
         }
 
+        trace.resultSize = resultSize;
+        trace.treeTime = treeTime;
+        trace.aggregateTime = buildBinaryTime;
+        TimingContext.current().trace = trace;
+
         return messageBuilder.getBuffer();
     }
 
@@ -732,7 +732,7 @@ public class RAQuadTreeSnap implements IAlgorithm {
         MyTimer.stopTimer();
         double treeTime = MyTimer.durationSeconds();
 
-        MyTimer.temporaryTimer.put("treeTime", treeTime);
+        TimingContext.current().treeTime = treeTime;
         System.out.println("[RA-QuadTree-Snap] tree search got " + points.size() + " data points.");
         System.out.println("[RA-QuadTree-Snap] tree search time: " + treeTime + " seconds.");
 
@@ -749,7 +749,7 @@ public class RAQuadTreeSnap implements IAlgorithm {
         }
         MyTimer.stopTimer();
         double buildBinaryTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
+        TimingContext.current().aggregateTime = buildBinaryTime;
 
         System.out.println("[RA-QuadTree-Snap] build binary result with  " + resultSize + " points.");
         System.out.println("[RA-QuadTree-Snap] build binary result time: " + buildBinaryTime + " seconds.");
@@ -1674,7 +1674,7 @@ public class RAQuadTreeV0 implements IAlgorithm {
         MyTimer.stopTimer();
         double treeTime = MyTimer.durationSeconds();
 
-        MyTimer.temporaryTimer.put("treeTime", treeTime);
+        TimingContext.current().treeTime = treeTime;
         System.out.println("[RA-QuadTree] tree search got " + points.size() + " data points.");
         System.out.println("[RA-QuadTree] tree search time: " + treeTime + " seconds.");
         System.out.println("[RA-QuadTree]     - estimate benefit time: " + times.get("estimateBenefit") + " seconds.");
@@ -1696,7 +1696,7 @@ public class RAQuadTreeV0 implements IAlgorithm {
         }
         MyTimer.stopTimer();
         double buildBinaryTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
+        TimingContext.current().aggregateTime = buildBinaryTime;
 
         System.out.println("[RA-QuadTree] build binary result with  " + resultSize + " points.");
         System.out.println("[RA-QuadTree] build binary result time: " + buildBinaryTime + " seconds.");
@@ -720,7 +720,7 @@ public class RAQuadTreeV2 implements IAlgorithm {
         MyTimer.stopTimer();
         double treeTime = MyTimer.durationSeconds();
 
-        MyTimer.temporaryTimer.put("treeTime", treeTime);
+        TimingContext.current().treeTime = treeTime;
         System.out.println("[RA-QuadTree] tree search got " + points.size() + " data points.");
         System.out.println("[RA-QuadTree] tree search time: " + treeTime + " seconds.");
         System.out.println("[RA-QuadTree]     - compute benefit time: " + times.get("computeBenefit") + " seconds.");
@@ -740,7 +740,7 @@ public class RAQuadTreeV2 implements IAlgorithm {
         }
         MyTimer.stopTimer();
         double buildBinaryTime = MyTimer.durationSeconds();
-        MyTimer.temporaryTimer.put("aggregateTime", buildBinaryTime);
+        TimingContext.current().aggregateTime = buildBinaryTime;
 
         System.out.println("[RA-QuadTree] build binary result with  " + resultSize + " points.");
         System.out.println("[RA-QuadTree] build binary result time: " + buildBinaryTime + " seconds.");
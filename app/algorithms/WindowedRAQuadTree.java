@@ -0,0 +1,213 @@
+package algorithms;
+
+import model.Point;
+import model.Query;
+import model.TimedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.BinaryMessageBuilder;
+import util.Constants;
+import util.MyTimer;
+import util.SampleList;
+import util.TimingContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static util.Mercator.*;
+
+/**
+ * Sliding time window of RA-QuadTrees
+ *
+ *  - time is cut into buckets of Constants.WINDOW_INTERVAL seconds,
+ *    the window keeps the latest Constants.WINDOW_BUCKETS buckets
+ *  - each bucket is an independent RAQuadTree in a ring, slot = bucket number % WINDOW_BUCKETS
+ *  - load() moves the window forward to the latest point time of the batch, see advanceTo(),
+ *    then inserts each point into the bucket of its own time (TimedPoint.getTime()),
+ *    points without a time go to the current bucket, points older than the window are dropped
+ *  - an expired bucket is dropped as a whole, no per-point deletion
+ *  - a query is one best-first search over the roots of all live buckets sharing one sample budget
+ */
+public class WindowedRAQuadTree implements IAlgorithm {
+
+    private static final Logger logger = LoggerFactory.getLogger(WindowedRAQuadTree.class);
+
+    RAQuadTree.Settings settings; // of all buckets, taken when the window is constructed
+    RAQuadTree[] buckets;
+    long[] bucketNumbers; // bucket number held by each slot of the ring
+    long bucketMillis;
+    long currentBucket;
+    boolean started = false; // advanceTo() was called at least once
+
+    public WindowedRAQuadTree() {
+        this.settings = RAQuadTree.Settings.fromConstants();
+        this.buckets = new RAQuadTree[Constants.WINDOW_BUCKETS];
+        this.bucketNumbers = new long[Constants.WINDOW_BUCKETS];
+        this.bucketMillis = Constants.WINDOW_INTERVAL * 1000L;
+        logger.info("[Windowed-RA-QuadTree] initializing with { buckets: {}, interval: {} seconds }.",
+                Constants.WINDOW_BUCKETS, Constants.WINDOW_INTERVAL);
+    }
+
+    /**
+     * move the window forward to given time, buckets falling out of the window are dropped
+     *
+     *  - time never moves backward, points loaded later than that still go to the bucket of their time if live
+     *
+     * @param time - epoch milliseconds, Long.MIN_VALUE - unknown, the window stays where it is
+     */
+    public void advanceTo(long time) {
+        if (time == Long.MIN_VALUE) {
+            return;
+        }
+        long bucket = Math.floorDiv(time, this.bucketMillis);
+        if (this.started && bucket <= this.currentBucket) {
+            return;
+        }
+        this.started = true;
+        this.currentBucket = bucket;
+        int expired = 0;
+        for (int i = 0; i < this.buckets.length; i ++) {
+            if (this.buckets[i] != null && this.bucketNumbers[i] <= bucket - this.buckets.length) {
+                this.buckets[i] = null;
+                expired ++;
+            }
+        }
+        logger.debug("[Windowed-RA-QuadTree] advanced to bucket {}, {} buckets expired.", bucket, expired);
+    }
+
+    /**
+     * @param points
+     * @return - latest time of the timed points, Long.MIN_VALUE if none has a time
+     */
+    public static long latestTime(List<Point> points) {
+        long latest = Long.MIN_VALUE;
+        for (Point point: points) {
+            if (point instanceof TimedPoint && ((TimedPoint) point).getTime() > 0L) {
+                latest = Math.max(latest, ((TimedPoint) point).getTime());
+            }
+        }
+        return latest;
+    }
+
+    @Override
+    public void load(List<Point> points) {
+        long latest = latestTime(points);
+        if (latest != Long.MIN_VALUE) {
+            advanceTo(latest);
+        }
+        else if (!this.started) {
+            advanceTo(System.currentTimeMillis());
+        }
+
+        // split the batch by the buckets of the point times
+        Map<Long, List<Point>> batches = new HashMap<>();
+        int dropped = 0;
+        for (Point point: points) {
+            long time = point instanceof TimedPoint? ((TimedPoint) point).getTime(): 0L;
+            long bucket = time > 0L? Math.floorDiv(time, this.bucketMillis): this.currentBucket;
+            if (bucket <= this.currentBucket - this.buckets.length) {
+                dropped ++;
+                continue;
+            }
+            batches.computeIfAbsent(bucket, k -> new ArrayList<>()).add(point);
+        }
+        if (dropped > 0) {
+            logger.debug("[Windowed-RA-QuadTree] dropped {} points older than the window.", dropped);
+        }
+
+        for (Map.Entry<Long, List<Point>> batch: batches.entrySet()) {
+            long bucket = batch.getKey();
+            int slot = (int) Math.floorMod(bucket, (long) this.buckets.length);
+            if (this.buckets[slot] == null || this.bucketNumbers[slot] != bucket) {
+                this.buckets[slot] = new RAQuadTree(this.settings);
+                this.bucketNumbers[slot] = bucket;
+            }
+            this.buckets[slot].load(batch.getValue());
+        }
+    }
+
+    @Override
+    public void finishLoad() {
+        for (RAQuadTree bucket: this.buckets) {
+            if (bucket != null) {
+                bucket.finishLoad();
+            }
+        }
+    }
+
+    @Override
+    public byte[] answerQuery(Query query) {
+        double lng0 = query.bbox[0];
+        double lat0 = query.bbox[1];
+        double lng1 = query.bbox[2];
+        double lat1 = query.bbox[3];
+        int zoom = query.zoom;
+        int sampleSize = query.sampleSize <= 0? Constants.DEFAULT_SAMPLE_SIZE: query.sampleSize;
+        long deadline = query.latencyBudget <= 0? Long.MAX_VALUE: System.nanoTime() + query.latencyBudget * 1000000L;
+
+        double iX0 = lngX(lng0);
+        double iY0 = latY(lat0);
+        double iX1 = lngX(lng1);
+        double iY1 = latY(lat1);
+        double rcX = (iX0 + iX1) / 2;
+        double rcY = (iY0 + iY1) / 2;
+        double rhalfWidth = (iX1 - iX0) / 2;
+        double rhalfHeight = (iY0 - iY1) / 2;
+
+        // roots of live buckets with samples ready
+        List<RAQuadTree.QuadTree> roots = new ArrayList<>();
+        for (RAQuadTree bucket: this.buckets) {
+            if (bucket != null && (bucket.finish || bucket.samplesReady) && bucket.quadTree.count > 0) {
+                roots.add(bucket.quadTree);
+            }
+        }
+
+        // time range of the query, narrows the search if nodes keep temporal summaries,
+        // otherwise the samples found are filtered by it
+        long tStart = Long.MIN_VALUE;
+        long tEnd = Long.MAX_VALUE;
+        boolean filterTime = query.tEnd > 0 && this.settings.timeBuckets <= 0;
+        if (query.tEnd > 0 && this.settings.timeBuckets > 0) {
+            tStart = query.tStart;
+            tEnd = query.tEnd;
+        }
+
+        MyTimer.startTimer();
+        SampleList points = RAQuadTree.bfs(roots, 0.5, 0.5, 0.5,
+                rcX, rcY, rhalfWidth, rhalfHeight, zoom, sampleSize, tStart, tEnd, RAQuadTree.NO_KEYWORD,
+                deadline, null, null, null);
+        if (filterTime) {
+            points = RAQuadTree.inTimeRange(points, query.tStart, query.tEnd);
+            TimingContext.current().sampleSize = points.size();
+        }
+        MyTimer.stopTimer();
+        double treeTime = MyTimer.durationSeconds();
+        TimingContext.current().treeTime = treeTime;
+
+        // build binary result message
+        MyTimer.startTimer();
+        BinaryMessageBuilder messageBuilder = new BinaryMessageBuilder();
+        messageBuilder.addAll(points);
+        MyTimer.stopTimer();
+        TimingContext.current().aggregateTime = MyTimer.durationSeconds();
+
+        logger.debug("[Windowed-RA-QuadTree] searched {} buckets, got {} data points in {} seconds.", roots.size(), points.size(), treeTime);
+
+        return messageBuilder.getBuffer();
+    }
+
+    /**
+     * a window is rebuilt from the stream, it is not saved to file
+     */
+    @Override
+    public boolean readFromFile(String fileName) {
+        return false;
+    }
+
+    @Override
+    public boolean writeToFile(String fileName) {
+        return false;
+    }
+}
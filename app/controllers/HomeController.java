@@ -1,6 +1,8 @@
 package controllers;
 
 import actor.Agent;
+import akka.NotUsed;
+import akka.japi.Pair;
 import akka.util.ByteString;
 import com.fasterxml.jackson.databind.JsonNode;
 import play.api.http.websocket.CloseCodes;
@@ -11,10 +13,19 @@ import play.mvc.*;
 import play.libs.streams.ActorFlow;
 import akka.actor.*;
 import akka.stream.*;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.SourceQueueWithComplete;
 import javax.inject.Inject;
 import com.typesafe.config.Config;
 import scala.compat.java8.FutureConverters;
+import util.Metrics;
+import util.MyLogger;
+import util.TileArchive;
 
+import java.io.IOException;
+import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 import static akka.pattern.Patterns.ask;
 
@@ -78,11 +89,66 @@ public class HomeController extends Controller {
                 }
                 throw Scala.noMatch();
             }
-        ).accept(request -> ActorFlow.actorRef((actorRef) -> Agent.props(actorRef, config), actorSystem, materializer));
+        ).accept(request -> agentFlow());
+    }
+
+    /**
+     * Flow of one WebSocket connection
+     *  - inbound requests are told to a new Agent, which is stopped when the client closes the connection
+     *  - outbound frames go through a bounded queue with backpressure,
+     *    the Agent offers one frame at a time and waits until the client takes it
+     */
+    private Flow<JsonNode, Object, NotUsed> agentFlow() {
+        Pair<SourceQueueWithComplete<Object>, Source<Object, NotUsed>> outbound =
+                Source.<Object>queue(config.getInt("agent.outbound.buffer"), OverflowStrategy.backpressure())
+                        .preMaterialize(materializer);
+        ActorRef agent = actorSystem.actorOf(Agent.props(outbound.first(), config));
+        Sink<JsonNode, NotUsed> inbound = Sink.actorRef(agent, PoisonPill.getInstance());
+        return Flow.fromSinkAndSource(inbound, outbound.second());
     }
 
     public CompletionStage<Result> transfer() {
         return FutureConverters.toJava(ask(actorSystem.actorOf(Agent.getProps()), JsonNode.class, 30000))
                 .thenApply(response -> ok((JsonNode) response));
     }
+
+    /**
+     * A tile of the tile pyramid exported by a "tiles" request for the algorithm of given key,
+     * read from its tile archive without searching the algorithm
+     *  - 200 with the result message of the tile, 204 if the tile has no points
+     *  - 304 if the client holds the same tile by If-None-Match
+     *  - 404 if no tile archive was exported for the key or the tile is beyond its max zoom
+     */
+    public Result tile(Http.Request request, String key, int z, int x, int y) {
+        TileArchive archive;
+        try {
+            archive = TileArchive.get(TileArchive.fileName(config.getString("dataset.name"), key));
+        } catch (IOException e) {
+            MyLogger.error(HomeController.class, "opening tile archive of key " + key + " failed!", e);
+            return internalServerError(e.getMessage());
+        }
+        if (archive == null) {
+            return notFound("no tiles exported for key " + key);
+        }
+        String etag = archive.etag(z, x, y);
+        if (etag == null) {
+            return notFound("tile " + z + "/" + x + "/" + y + " is not in the tiles of key " + key);
+        }
+        Optional<String> ifNoneMatch = request.header(Http.HeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch.isPresent() && ifNoneMatch.get().equals(etag)) {
+            return status(Http.Status.NOT_MODIFIED).withHeader(Http.HeaderNames.ETAG, etag);
+        }
+        byte[] payload = archive.tile(z, x, y);
+        if (payload.length == 0) {
+            return noContent().withHeader(Http.HeaderNames.ETAG, etag);
+        }
+        return ok(payload).as("application/octet-stream").withHeader(Http.HeaderNames.ETAG, etag);
+    }
+
+    /**
+     * Query latency / payload histograms in Prometheus text format
+     */
+    public Result metrics() {
+        return ok(Metrics.prometheus()).as("text/plain; version=0.0.4; charset=utf-8");
+    }
 }
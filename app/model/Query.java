@@ -13,4 +13,11 @@ public class Query {
     public String aggregator; // for DataAggregator and QuadTreeAggregators: "gl-pixel" / "leaflet" / "deck-gl"
     public int sampleSize; // target sample size, <=0 - disabled
     public int samplePercentage; // target sample percentage (1 ~ 100), 0 - disabled
+    public boolean trace; // if true, also respond the diagnostics of answering this query (RAQuadTree only)
+    public long tStart; // time range [tStart, tEnd] in epoch milliseconds (RAQuadTree only)
+    public long tEnd; // <=0 - disabled
+    public String keyword; // for KeywordRAQuadTree: only points with this keyword, null - disabled
+    public int latencyBudget; // milliseconds, answer with the samples found when it runs out (RAQuadTree only), <=0 - disabled
+    public boolean anytime; // if true, also respond coarser results found while answering this query (RAQuadTree only)
+    public boolean delta; // if true, respond only the samples added to and removed from the last result of this key (RAQuadTree only)
 }
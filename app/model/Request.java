@@ -19,10 +19,18 @@ public class Request {
      *
      * - analysis
      *   - Query statistics of algorithm for given keyword
+     *
+     * - ingest
+     *   - Append points to the existing algorithm of given query.key
+     *
+     * - tiles
+     *   - Export the tile pyramid of the existing algorithm of given query.key
      */
-    public String type; // "query"/"cmd"/"transfer"/"progress-transfer"/"analysis"
+    public String type; // "query"/"cmd"/"transfer"/"progress-transfer"/"analysis"/"ingest"/"tiles"
     public String keyword;
     public Query query;
     public Command[] cmds;
     public Analysis analysis;
+    public double[][] points; // for "ingest": [[lng, lat], ...] or [[lng, lat, time], ...], time in epoch milliseconds, default now
+    public boolean flush; // for "ingest": insert buffered points without waiting for a full micro-batch
 }
@@ -0,0 +1,46 @@
+package model;
+
+/**
+ * Timed point with the keywords of the record it comes from
+ *
+ *  - keywords are replaced by their ids once the point is indexed, see util.KeywordDictionary
+ */
+public class TaggedPoint extends TimedPoint {
+    protected String[] keywords;
+    protected int[] keywordIds;
+
+    public TaggedPoint(double _x, double _y, long _time, String[] _keywords) {
+        super(_x, _y, _time);
+        keywords = _keywords;
+    }
+
+    public String[] getKeywords() {
+        return keywords;
+    }
+
+    public void setKeywords(String[] _keywords) {
+        keywords = _keywords;
+    }
+
+    public int[] getKeywordIds() {
+        return keywordIds;
+    }
+
+    public void setKeywordIds(int[] _keywordIds) {
+        keywordIds = _keywordIds;
+    }
+
+    public boolean hasKeywordId(int _keywordId) {
+        if (keywordIds == null) return false;
+        for (int keywordId: keywordIds) {
+            if (keywordId == _keywordId) return true;
+        }
+        return false;
+    }
+
+    public I2DPoint clone() {
+        TaggedPoint copy = new TaggedPoint(x, y, time, keywords);
+        copy.keywordIds = keywordIds;
+        return copy;
+    }
+}
@@ -0,0 +1,43 @@
+package model;
+
+/**
+ * Point with the timestamp of the record it comes from
+ */
+public class TimedPoint extends Point {
+    protected long time; // epoch milliseconds
+
+    public TimedPoint() {
+        super();
+        time = 0L;
+    }
+
+    public TimedPoint(double _x, double _y, long _time) {
+        super(_x, _y);
+        time = _time;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long _time) {
+        time = _time;
+    }
+
+    public I2DPoint clone() {
+        I2DPoint copy = new TimedPoint(x, y, time);
+        return copy;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("(");
+        sb.append(x);
+        sb.append(",");
+        sb.append(y);
+        sb.append(",");
+        sb.append(time);
+        sb.append(")");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,269 @@
+package util;
+
+import model.Point;
+import model.TimedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Point source backed by memory-mapped binary columnar files, one file per keyword
+ *
+ *  - file name: [directory]/[DATASET_NAME]-[keyword].points, keyword "%" is stored as "all"
+ *  - file format (big endian):
+ *      magic     version   count     lng[0..count)       lat[0..count)       time[0..count)
+ *    | 4 BYTES | 4 BYTES | 8 BYTES | count * 8 BYTES   | count * 8 BYTES   | count * 8 BYTES |
+ *  - time is epoch milliseconds and sorted ascending, so a time range is two binary searches
+ *  - time ranges are [sd, ed)
+ */
+public class BinaryFilePointSource implements IPointSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryFilePointSource.class);
+
+    public static final int MAGIC = 0x42535650; // "BSVP"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    // a column is mapped in segments of 2^27 values (1 GB), one MappedByteBuffer can not exceed 2 GB
+    static final int SEGMENT_SHIFT = 27;
+    static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    static class MappedColumns {
+        long count;
+        DoubleBuffer[] lngs;
+        DoubleBuffer[] lats;
+        LongBuffer[] times;
+
+        double lng(long i) {
+            return lngs[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK));
+        }
+
+        double lat(long i) {
+            return lats[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK));
+        }
+
+        long time(long i) {
+            return times[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK));
+        }
+
+        /**
+         * @return the first index whose time >= t
+         */
+        long lowerBound(long t) {
+            long lo = 0, hi = count;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (time(mid) < t) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    String directory;
+    Map<String, MappedColumns> files;
+
+    public BinaryFilePointSource(String directory) {
+        this.directory = directory;
+        // mapped by concurrent fetches
+        this.files = new ConcurrentHashMap<>();
+    }
+
+    public static String fileName(String directory, String keyword) {
+        String name = keyword.equals("%") ? "all" : keyword.replaceAll("[^A-Za-z0-9_-]", "_");
+        return directory + File.separator + Constants.DATASET_NAME + "-" + name + ".points";
+    }
+
+    @Override
+    public List<Point> queryPointsForKeyword(String keyword) {
+        MappedColumns columns = open(keyword);
+        if (columns == null) return null;
+        return gather(columns, 0, columns.count);
+    }
+
+    @Override
+    public List<Point> queryPointsForKeywordAndTime(String keyword, Date sd, Date ed) {
+        MappedColumns columns = open(keyword);
+        if (columns == null) return null;
+        return gather(columns, columns.lowerBound(sd.getTime()), columns.lowerBound(ed.getTime()));
+    }
+
+    @Override
+    public List<Point> queryPointsForTime(Date sd, Date ed) {
+        return queryPointsForKeywordAndTime("%", sd, ed);
+    }
+
+    /**
+     * points files do not store keywords
+     */
+    @Override
+    public List<Point> queryTaggedPointsForTime(Date sd, Date ed) {
+        logger.error("[BinaryFilePointSource] points files do not store keywords.");
+        return null;
+    }
+
+    private List<Point> gather(MappedColumns columns, long from, long to) {
+        List<Point> result = new ArrayList<>((int) Math.max(0, to - from));
+        for (long i = from; i < to; i ++) {
+            result.add(new TimedPoint(columns.lng(i), columns.lat(i), columns.time(i)));
+        }
+        return result;
+    }
+
+    MappedColumns open(String keyword) {
+        MappedColumns mapped = files.get(keyword);
+        if (mapped != null) {
+            return mapped;
+        }
+        // concurrent fetches of the same keyword map it once
+        synchronized (this) {
+            mapped = files.get(keyword);
+            return mapped != null? mapped: mapFile(keyword);
+        }
+    }
+
+    private MappedColumns mapFile(String keyword) {
+        String fileName = fileName(this.directory, keyword);
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+             FileChannel channel = file.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                logger.error("[BinaryFilePointSource] {} is not a version {} points file.", fileName, VERSION);
+                return null;
+            }
+            MappedColumns columns = new MappedColumns();
+            columns.count = header.getLong();
+            long columnBytes = columns.count * Constants.DOUBLE_BYTES;
+            int segments = (int) ((columns.count + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            columns.lngs = new DoubleBuffer[segments];
+            columns.lats = new DoubleBuffer[segments];
+            columns.times = new LongBuffer[segments];
+            for (int s = 0; s < segments; s ++) {
+                long offset = (long) s << SEGMENT_SHIFT;
+                long length = Math.min(SEGMENT_MASK + 1L, columns.count - offset) * Constants.DOUBLE_BYTES;
+                long position = HEADER_SIZE + offset * Constants.DOUBLE_BYTES;
+                columns.lngs[s] = map(channel, position, length).asDoubleBuffer();
+                columns.lats[s] = map(channel, position + columnBytes, length).asDoubleBuffer();
+                columns.times[s] = map(channel, position + 2 * columnBytes, length).asLongBuffer();
+            }
+            logger.info("[BinaryFilePointSource] mapped {} points from {}.", columns.count, fileName);
+            files.put(keyword, columns);
+            return columns;
+        } catch (IOException e) {
+            logger.error("[BinaryFilePointSource] opening {} failed: {}", fileName, e.getMessage());
+            return null;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        // the mapping stays valid after the channel is closed
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * Streaming writer of a points file,
+     * columns are buffered in three temporary files and concatenated behind the header on close()
+     */
+    public static class Writer implements Closeable {
+        String fileName;
+        File[] columnFiles;
+        DataOutputStream[] columns;
+        long count;
+        long lastTime;
+
+        public Writer(String fileName) throws IOException {
+            this.fileName = fileName;
+            this.columnFiles = new File[3];
+            this.columns = new DataOutputStream[3];
+            for (int c = 0; c < 3; c ++) {
+                this.columnFiles[c] = new File(fileName + ".col" + c);
+                this.columns[c] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.columnFiles[c]), 1 << 20));
+            }
+            this.count = 0;
+            this.lastTime = Long.MIN_VALUE;
+        }
+
+        public void add(double lng, double lat, long time) throws IOException {
+            if (time < lastTime) {
+                throw new IllegalStateException("points must be added in ascending time order");
+            }
+            columns[0].writeDouble(lng);
+            columns[1].writeDouble(lat);
+            columns[2].writeLong(time);
+            lastTime = time;
+            count ++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataOutputStream column: columns) {
+                column.close();
+            }
+            try (FileOutputStream out = new FileOutputStream(fileName);
+                 FileChannel target = out.getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putLong(count);
+                header.flip();
+                target.write(header);
+                for (File columnFile: columnFiles) {
+                    try (FileInputStream in = new FileInputStream(columnFile);
+                         FileChannel source = in.getChannel()) {
+                        long position = 0, size = source.size();
+                        while (position < size) {
+                            position += source.transferTo(position, size - position, target);
+                        }
+                    }
+                    columnFile.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Generate a synthetic points file for load testing without PostgreSQL
+     *
+     * usage: BinaryFilePointSource [fileName] [size] [seed] [start yyyy-MM-dd] [end yyyy-MM-dd]
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length < 5) {
+            System.out.println("usage: BinaryFilePointSource [fileName] [size] [seed] [start yyyy-MM-dd] [end yyyy-MM-dd]");
+            return;
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        String fileName = args[0];
+        long size = Long.valueOf(args[1]);
+        long seed = Long.valueOf(args[2]);
+        Date start = sdf.parse(args[3]);
+        Date end = sdf.parse(args[4]);
+        SyntheticPointSource synthetic = new SyntheticPointSource(size, seed, start, end);
+
+        MyTimer.startTimer();
+        try (Writer writer = new Writer(fileName)) {
+            // generate one day at a time, sorted by time within the day
+            for (long t = start.getTime(); t < end.getTime(); t += SyntheticPointSource.DAY) {
+                List<Long> times = new ArrayList<>();
+                List<Point> points = synthetic.generate("%", t, Math.min(t + SyntheticPointSource.DAY, end.getTime()), times);
+                Integer[] order = new Integer[points.size()];
+                for (int i = 0; i < order.length; i ++) order[i] = i;
+                Arrays.sort(order, Comparator.comparing(times::get));
+                for (int i: order) {
+                    writer.add(points.get(i).getX(), points.get(i).getY(), times.get(i));
+                }
+            }
+        }
+        MyTimer.stopTimer();
+        logger.info("Generated {} in {} seconds.", fileName, MyTimer.durationSeconds());
+    }
+}
@@ -1,5 +1,7 @@
 package util;
 
+import model.Point;
+
 import static util.Constants.DOUBLE_BYTES;
 import static util.Constants.INT_BYTES;
 
@@ -10,8 +12,8 @@ public class BinaryMessageBuilder {
 
     /**
      * ---- header ----
-     *  progress  totalTime  treeTime   aggTime  msgType
-     * | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES |
+     *  progress  totalTime  treeTime   aggTime  msgType  sampleSize  error
+     * | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | 4 BYTES | 8 BYTES |
      * ---- binary data payload ----
      *   lat1      lng1      lat2      lng2      ...
      * | 8 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | ...
@@ -75,6 +77,32 @@ public class BinaryMessageBuilder {
         count++;
     }
 
+    /**
+     * add a point in spherical mercator, by the inverse projection
+     *
+     * @param point
+     */
+    public void add(Point point) {
+        add(Mercator.xLng(point.getX()), Mercator.yLat(point.getY()));
+    }
+
+    /**
+     * add the points of a query result, by their cached output [lng, lat] if they have, otherwise by the inverse projection
+     *
+     * @param samples
+     */
+    public void addAll(SampleList samples) {
+        for (int i = 0; i < samples.size(); i ++) {
+            float lng = samples.getLng(i);
+            if (Float.isNaN(lng)) {
+                add(samples.get(i));
+            }
+            else {
+                add(lng, samples.getLat(i));
+            }
+        }
+    }
+
     public byte[] getBuffer() {
         // shrink buffer to exact the size of data payload
         byte[] newBuffer = new byte[Constants.HEADER_SIZE + (DOUBLE_BYTES + DOUBLE_BYTES) * count];
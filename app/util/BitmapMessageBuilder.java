@@ -9,8 +9,8 @@ public class BitmapMessageBuilder {
 
     /**
      * ---- header ----
-     *  progress  totalTime  treeTime   aggTime  msgType
-     * | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES |
+     *  progress  totalTime  treeTime   aggTime  msgType  sampleSize  error
+     * | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | 4 BYTES | 8 BYTES |
      * ---- bitmap header ----
      *   resX      resY      lng0      lat0      lng1      lat1
      * | 4 BYTES | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 8 BYTES |
@@ -0,0 +1,70 @@
+package util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Executor running at most a fixed number of tasks at the same time on an underlying executor
+ *
+ *  - tasks beyond the limit wait in a FIFO queue, not on a thread of the underlying executor,
+ *    a task finishing hands its permit to the next waiting task
+ *  - safe to share by any number of submitters
+ */
+public class BoundedExecutor implements Executor {
+
+    Executor executor;
+    Semaphore permits;
+    Queue<Runnable> waiting;
+
+    /**
+     * @param _executor - runs the tasks
+     * @param _limit - tasks running at the same time
+     */
+    public BoundedExecutor(Executor _executor, int _limit) {
+        this.executor = _executor;
+        this.permits = new Semaphore(_limit);
+        this.waiting = new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.waiting.offer(task);
+        drain();
+    }
+
+    /**
+     * start waiting tasks while permits are free
+     */
+    void drain() {
+        while (!this.waiting.isEmpty() && this.permits.tryAcquire()) {
+            Runnable task = this.waiting.poll();
+            if (task == null) {
+                // taken by a concurrent drain()
+                this.permits.release();
+                continue;
+            }
+            try {
+                this.executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        this.permits.release();
+                        drain();
+                    }
+                });
+            } catch (RuntimeException e) {
+                this.permits.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return - tasks waiting for a permit
+     */
+    public int waiting() {
+        return this.waiting.size();
+    }
+}
@@ -1,5 +1,10 @@
 package util;
 
+import com.typesafe.config.Config;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
 public class Constants {
 
     // Map
@@ -29,9 +34,9 @@ public class Constants {
     public static int DOUBLE_BYTES = 8;
     public static int INT_BYTES = 4;
     // ---- header ----
-    //  progress  totalTime  treeTime   aggTime  msgType   binary data payload
-    // | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | ...
-    public static int HEADER_SIZE = INT_BYTES + 3 * DOUBLE_BYTES + INT_BYTES;
+    //  progress  totalTime  treeTime   aggTime  msgType  sampleSize  error     binary data payload
+    // | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | 4 BYTES | 8 BYTES | ...
+    public static int HEADER_SIZE = INT_BYTES + 3 * DOUBLE_BYTES + INT_BYTES + INT_BYTES + DOUBLE_BYTES;
     public static int MSG_TYPE = 0;
 
     public static int RADIUS_IN_PIXELS = 1;
@@ -49,4 +54,94 @@ public class Constants {
 
     public static String RENDERING_FUNCTION = "snap";
     public static String ERROR_FUNCTION = "L1";
+    public static boolean RAQT_PROGRESSIVE_SAMPLES = true;
+    public static int RAQT_TIME_BUCKETS = 0; // 0 - no temporal summaries on nodes
+    public static int RAQT_LEAF_BUCKET_SIZE = 1; // 1 - one point per leaf
+    public static boolean RAQT_PATH_COMPRESSION = false;
+    public static int[] RAQT_ANYTIME_FRAMES = {5000, 20000}; // sizes of coarser results of an anytime query, ascending
+    public static int RAQT_PARALLELISM = 1; // searches a large query is split into, 1 - sequential
+    public static long TIME_START = 0L; // time range covered by the temporal histograms, epoch milliseconds
+    public static long TIME_END = 0L;
+
+    // For KeywordRAQuadTree
+    public static String[] KEYWORD_VOCABULARY = {}; // keywords kept, empty - the KEYWORD_TOP most frequent ones
+    public static int KEYWORD_TOP = 1000;
+
+    // For WindowedRAQuadTree
+    public static int WINDOW_BUCKETS = 24;
+    public static long WINDOW_INTERVAL = 3600; // seconds
+
+    // For GQuadTree
+    public static String GQT_RENDERING = "coverage";
+
+    /**
+     * initialize constants from application.conf
+     *
+     * @param config
+     */
+    public static void init(Config config) {
+        MIN_ZOOM = config.getInt("map.min_zoom");
+        MAX_ZOOM = config.getInt("map.max_zoom");
+        MIN_LONGITUDE = config.getDouble("data.minLng");
+        MIN_LATITUDE = config.getDouble("data.minLat");
+        MAX_LONGITUDE = config.getDouble("data.maxLng");
+        MAX_LATITUDE = config.getDouble("data.maxLat");
+
+        /**
+         * Note: Mercator project a globe coordinate [lng, lat] onto a [0 ~ 1] coordinate on a continuous plane
+         *              ^ 90                   0 ----------------> 1
+         *              |                      |
+         *              |                      |
+         * -180 --------+--------> 180  ==>    |
+         *              |                      |
+         *              |                      |
+         *              |-90                   V 1
+         */
+        MIN_X = Mercator.lngX(MIN_LONGITUDE);
+        MIN_Y = Mercator.latY(MAX_LATITUDE); // latitude -> y is reversed than geo coordinates
+        MAX_X = Mercator.lngX(MAX_LONGITUDE);
+        MAX_Y = Mercator.latY(MIN_LATITUDE); // latitude -> y is reversed than geo coordinates
+
+        DB_URL = config.getString("db.url");
+        DB_USERNAME = config.getString("db.username");
+        DB_PASSWORD = config.getString("db.password");
+        DB_TABLENAME = config.getString("db.tablename");
+
+        DATASET_NAME = config.getString("dataset.name");
+
+        MSG_TYPE = config.getInt("message.type");
+
+        TILE_RESOLUTION = config.getInt("tile.resolution");
+
+        SAMPLING_METHOD = config.getString("sampling.method");
+
+        STOP_CRITERIA = config.getDouble("stop.criteria");
+
+        RENDERING_FUNCTION = config.getString("rendering.function");
+        ERROR_FUNCTION = config.getString("error.function");
+        RAQT_PROGRESSIVE_SAMPLES = config.getBoolean("raquadtree.progressive.samples");
+        RAQT_TIME_BUCKETS = config.getInt("raquadtree.time.buckets");
+        RAQT_LEAF_BUCKET_SIZE = Math.max(1, config.getInt("raquadtree.leaf.bucket"));
+        RAQT_PATH_COMPRESSION = config.getBoolean("raquadtree.path.compression");
+        RAQT_ANYTIME_FRAMES = config.getIntList("raquadtree.anytime.frames").stream().mapToInt(Integer::intValue).sorted().toArray();
+        RAQT_PARALLELISM = config.getInt("raquadtree.parallelism");
+        if (RAQT_PARALLELISM <= 0) {
+            RAQT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            TIME_START = sdf.parse(config.getString("progressive.start")).getTime();
+            TIME_END = sdf.parse(config.getString("progressive.end")).getTime();
+        } catch (ParseException e) {
+            e.printStackTrace();
+        }
+
+        GQT_RENDERING = config.getString("gquadtree.rendering");
+
+        KEYWORD_VOCABULARY = config.getStringList("keyword.vocabulary").toArray(new String[0]);
+        KEYWORD_TOP = config.getInt("keyword.top");
+
+        WINDOW_BUCKETS = config.getInt("window.buckets");
+        WINDOW_INTERVAL = config.getLong("window.interval");
+    }
 }
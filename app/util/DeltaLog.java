@@ -0,0 +1,296 @@
+package util;
+
+import model.Point;
+import model.TimedPoint;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log of points ingested after a tree snapshot was written to file
+ *
+ *  - file name: [snapshot file name].delta, next to the .raqt snapshot
+ *  - each point is one line: lng (double), lat (double)[, time (long)]
+ *  - replayed on top of the snapshot when the snapshot is read back
+ *
+ * One DeltaLog per snapshot file is shared by all agents holding its key,
+ * appends, snapshot reads and snapshot writes of the key go through it one at a time.
+ * Points of the log are numbered by sequence since the log was opened in this process,
+ * an agent tracks the sequence its algorithm has applied up to,
+ * so a snapshot only discards the points its algorithm has, points ingested through other agents stay in the log.
+ */
+public class DeltaLog {
+
+    /**
+     * points of the log in sequence [from, from + points.size())
+     */
+    public static class Batch {
+        public final long from;
+        private final List<Point> points;
+
+        Batch(long _from, List<Point> _points) {
+            this.from = _from;
+            this.points = _points;
+        }
+
+        public long end() {
+            return this.from + this.points.size();
+        }
+
+        /**
+         * copies of the points from sequence _from on, algorithms project the points they load in place
+         *
+         * @param _from
+         * @return points in [lng, lat]
+         */
+        public List<Point> points(long _from) {
+            List<Point> copies = new ArrayList<>();
+            for (int i = (int) Math.max(_from - this.from, 0); i < this.points.size(); i ++) {
+                copies.add(copy(this.points.get(i)));
+            }
+            return copies;
+        }
+    }
+
+    private static final Map<String, DeltaLog> logs = new HashMap<>();
+
+    private final String snapshotFileName;
+    private final String fileName;
+    /**
+     * sequence of the first point in the log file
+     */
+    private long base;
+    /**
+     * sequence after the last point in the log file
+     */
+    private long end;
+
+    private DeltaLog(String _snapshotFileName) {
+        this.snapshotFileName = _snapshotFileName;
+        this.fileName = fileName(_snapshotFileName);
+        this.base = 0;
+        List<Point> points = new ArrayList<>();
+        // a torn last line from an interrupted append is dropped, so lines and sequences stay aligned
+        if (readPoints(points) && !writePoints(points)) {
+            MyLogger.error(DeltaLog.class, "[DeltaLog] can not drop torn lines of file {}", this.fileName);
+        }
+        this.end = points.size();
+    }
+
+    /**
+     * the log shared by all agents of given snapshot file
+     *
+     * @param snapshotFileName
+     * @return
+     */
+    public static synchronized DeltaLog of(String snapshotFileName) {
+        return logs.computeIfAbsent(snapshotFileName, DeltaLog::new);
+    }
+
+    /**
+     * join batches published one after another into one batch from given sequence on
+     *
+     * @param batches - in the order they were published
+     * @param applied - sequence an algorithm has applied up to
+     * @return null if a batch in between is missing
+     */
+    public static Batch merge(List<Batch> batches, long applied) {
+        List<Point> points = new ArrayList<>();
+        long end = applied;
+        for (Batch batch: batches) {
+            if (batch.end() <= end) continue;
+            if (batch.from > end) {
+                return null;
+            }
+            points.addAll(batch.points.subList((int) (end - batch.from), batch.points.size()));
+            end = batch.end();
+        }
+        return new Batch(applied, points);
+    }
+
+    public static String fileName(String snapshotFileName) {
+        return snapshotFileName + ".delta";
+    }
+
+    /**
+     * read the snapshot and the points logged after it, with no append or snapshot write in between
+     *
+     * @param readSnapshot - reads the snapshot into an algorithm, always true for an algorithm not built from file
+     * @return all points of the log, null if the snapshot can not be read
+     */
+    public synchronized Batch open(BooleanSupplier readSnapshot) {
+        if (!readSnapshot.getAsBoolean()) {
+            return null;
+        }
+        return since(this.base);
+    }
+
+    /**
+     * sequence of the first point in the log, an algorithm not built from the snapshot has applied up to it
+     */
+    public synchronized long first() {
+        return this.base;
+    }
+
+    /**
+     * points of the log from given sequence on
+     *
+     * @param applied - sequence an algorithm has applied up to
+     * @return
+     */
+    public synchronized Batch since(long applied) {
+        if (applied >= this.end) {
+            return new Batch(this.end, new ArrayList<>());
+        }
+        List<Point> points = new ArrayList<>();
+        readPoints(points);
+        long from = Math.max(applied, this.base);
+        return new Batch(from, new ArrayList<>(points.subList((int) (from - this.base), points.size())));
+    }
+
+    /**
+     * append points to the end of the log, creates the log if not exists
+     *
+     * @param points - in [lng, lat]
+     * @param applied - sequence the algorithm appending has applied up to
+     * @param _published - accepts the appended points before any other append, null if nothing
+     * @return points the algorithm appending has to load, the ones appended by others since applied and the given ones,
+     *         null if the append failed
+     */
+    public synchronized Batch append(List<Point> points, long applied, Consumer<Batch> _published) {
+        Batch missed = since(applied);
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(this.fileName, true))) {
+            for (Point point: points) {
+                writePoint(bufferedWriter, point);
+            }
+        } catch (IOException e) {
+            MyLogger.error(DeltaLog.class, "[DeltaLog] append to file " + this.fileName + " failed!", e);
+            return null;
+        }
+        // others get their own copies, the algorithm appending may project the given points in place
+        List<Point> copies = new ArrayList<>();
+        for (Point point: points) {
+            copies.add(copy(point));
+        }
+        Batch appended = new Batch(this.end, copies);
+        this.end += points.size();
+        if (_published != null) {
+            _published.accept(appended);
+        }
+        List<Point> toLoad = new ArrayList<>(missed.points);
+        toLoad.addAll(points);
+        return new Batch(missed.from, toLoad);
+    }
+
+    /**
+     * write a snapshot of an algorithm and discard the points it covers, keep the ones logged after
+     *  - a snapshot of an algorithm behind the last snapshot written is not written,
+     *    the points it lacks are not in the log any more
+     *
+     * @param applied - sequence the algorithm has applied up to
+     * @param writeSnapshot - writes the algorithm to the snapshot file
+     * @return if the snapshot was written
+     */
+    public synchronized boolean commit(long applied, BooleanSupplier writeSnapshot) {
+        if (applied < this.base) {
+            MyLogger.info(DeltaLog.class, "[DeltaLog] snapshot of {} behind the last one, not written.", this.snapshotFileName);
+            return false;
+        }
+        if (!writeSnapshot.getAsBoolean()) {
+            return false;
+        }
+        List<Point> points = new ArrayList<>();
+        readPoints(points);
+        if (writePoints(points.subList((int) (applied - this.base), points.size()))) {
+            this.base = applied;
+        }
+        return true;
+    }
+
+    /**
+     * @param points - accepts the points of the log file
+     * @return if a line can not be parsed
+     */
+    private boolean readPoints(List<Point> points) {
+        boolean torn = false;
+        if (!new File(this.fileName).exists()) {
+            return false;
+        }
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(this.fileName))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                String[] attributes = line.split(",");
+                if (attributes.length != 2 && attributes.length != 3) {
+                    torn = true;
+                    continue;
+                }
+                try {
+                    double lng = Double.valueOf(attributes[0]);
+                    double lat = Double.valueOf(attributes[1]);
+                    if (attributes.length == 3) {
+                        points.add(new TimedPoint(lng, lat, Long.valueOf(attributes[2])));
+                    }
+                    else {
+                        points.add(new Point(lng, lat));
+                    }
+                } catch (NumberFormatException e) {
+                    MyLogger.error(DeltaLog.class, "[DeltaLog] can not parse point line: {}", line);
+                    torn = true;
+                }
+            }
+        } catch (IOException e) {
+            MyLogger.error(DeltaLog.class, "[DeltaLog] read from file " + this.fileName + " failed!", e);
+        }
+        return torn;
+    }
+
+    /**
+     * replace the log file by given points
+     */
+    private boolean writePoints(List<Point> points) {
+        File tempFile = new File(this.fileName + ".tmp");
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(tempFile))) {
+            for (Point point: points) {
+                writePoint(bufferedWriter, point);
+            }
+        } catch (IOException e) {
+            MyLogger.error(DeltaLog.class, "[DeltaLog] write to file " + tempFile + " failed!", e);
+            tempFile.delete();
+            return false;
+        }
+        try {
+            Files.move(tempFile.toPath(), new File(this.fileName).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            MyLogger.error(DeltaLog.class, "[DeltaLog] replace file " + this.fileName + " failed!", e);
+            tempFile.delete();
+            return false;
+        }
+    }
+
+    private static void writePoint(BufferedWriter bufferedWriter, Point point) throws IOException {
+        bufferedWriter.write(String.valueOf(point.getX()));
+        bufferedWriter.write(",");
+        bufferedWriter.write(String.valueOf(point.getY()));
+        if (point instanceof TimedPoint) {
+            bufferedWriter.write(",");
+            bufferedWriter.write(String.valueOf(((TimedPoint) point).getTime()));
+        }
+        bufferedWriter.newLine();
+    }
+
+    private static Point copy(Point point) {
+        if (point instanceof TimedPoint) {
+            return new TimedPoint(point.getX(), point.getY(), ((TimedPoint) point).getTime());
+        }
+        return new Point(point.getX(), point.getY());
+    }
+}
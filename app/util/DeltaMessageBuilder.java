@@ -0,0 +1,65 @@
+package util;
+
+import model.Point;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static util.Constants.DOUBLE_BYTES;
+import static util.Constants.INT_BYTES;
+
+public class DeltaMessageBuilder {
+
+    /**
+     * ---- header ----
+     *  progress  totalTime  treeTime   aggTime  msgType  sampleSize  error
+     * | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | 4 BYTES | 8 BYTES |
+     * ---- delta header ----
+     *   full     additions  keyLength  key (UTF-8)
+     * | 4 BYTES | 4 BYTES | 4 BYTES | keyLength BYTES |
+     * ---- delta data payload ----
+     *   added records (lat, lng) x additions, then removed records (lat, lng) till the end
+     * | 8 BYTES | 8 BYTES | ...
+     *
+     *  - key is the key the samples belong to, the client merges them into what it holds for that key
+     *  - full = 1: the added records replace what the client holds for the key, no removed records
+     */
+    ByteBuffer buffer;
+
+    /**
+     * @param _key - key of the query answered
+     * @param _full - true if the added records are the whole result
+     */
+    public DeltaMessageBuilder(String _key, boolean _full, int _additions, int _removals) {
+        byte[] key = _key.getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocate(Constants.HEADER_SIZE + 3 * INT_BYTES + key.length
+                + (DOUBLE_BYTES + DOUBLE_BYTES) * (_additions + _removals));
+
+        // tag msgType in the header
+        // delta message (2)
+        int msgType = 2;
+        // offset of msgType position in the header
+        buffer.putInt(INT_BYTES + 3 * DOUBLE_BYTES, msgType);
+
+        // write the delta header
+        buffer.position(Constants.HEADER_SIZE);
+        buffer.putInt(_full? 1: 0);
+        buffer.putInt(_additions);
+        buffer.putInt(key.length);
+        buffer.put(key);
+    }
+
+    /**
+     * add the next record, all added points first, then all removed points
+     *
+     * @param point - in spherical mercator
+     */
+    public void add(Point point) {
+        buffer.putDouble(Mercator.yLat(point.getY()));
+        buffer.putDouble(Mercator.xLng(point.getX()));
+    }
+
+    public byte[] getBuffer() {
+        return buffer.array();
+    }
+}
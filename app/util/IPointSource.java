@@ -0,0 +1,31 @@
+package util;
+
+import model.Point;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A source of raw [lng, lat] points, e.g. PostgreSQL, a synthetic generator or a local binary file
+ *
+ *  - keyword "%" means all points
+ *  - returns null if the source is not available
+ *  - safe for concurrent fetches, agents fetch batches of different keys at the same time
+ */
+public interface IPointSource {
+
+    List<Point> queryPointsForKeyword(String keyword);
+
+    List<Point> queryPointsForKeywordAndTime(String keyword, Date sd, Date ed);
+
+    List<Point> queryPointsForTime(Date sd, Date ed);
+
+    /**
+     * points of all records in the time range, each as a TaggedPoint with the keywords of its record
+     *
+     * @param sd
+     * @param ed
+     * @return null if the source does not store keywords
+     */
+    List<Point> queryTaggedPointsForTime(Date sd, Date ed);
+}
@@ -0,0 +1,496 @@
+package util;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import model.Point;
+import model.TaggedPoint;
+import model.TimedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Point source backed by a local inverted keyword index, no database needed to build keyword trees
+ *
+ *  - columns: [directory]/[DATASET_NAME]-all.points, see BinaryFilePointSource,
+ *    the ordinal of a point is its position in this time sorted file
+ *  - terms: [directory]/[DATASET_NAME].terms (big endian)
+ *      magic     version   count     term (UTF), offset (long), length (int) ...
+ *    | 4 BYTES | 4 BYTES | 4 BYTES | ...
+ *  - postings: [directory]/[DATASET_NAME].postings, posting lists of ascending ordinals (int, big endian),
+ *    memory-mapped, list of a term = [offset, offset + length)
+ *  - keyword is a tsquery-style expression of terms, "&" (and), "|" (or) and parentheses,
+ *    "&" binds tighter than "|", e.g. "trump & (hillary | clinton)"
+ *  - terms are matched as lower-case words, see KeywordDictionary.tokenize(), without stemming
+ */
+public class InvertedIndexPointSource implements IPointSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvertedIndexPointSource.class);
+
+    public static final int MAGIC = 0x42535649; // "BSVI"
+    public static final int VERSION = 1;
+
+    // postings are mapped in segments of 2^28 ints (1 GB), one MappedByteBuffer can not exceed 2 GB
+    static final int SEGMENT_SHIFT = 28;
+    static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    /**
+     * posting list of one term, a view of the mapped postings file
+     */
+    class Postings {
+        long offset;
+        int length;
+
+        Postings(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int get(int i) {
+            long index = offset + i;
+            return postings[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+        }
+
+        /**
+         * @return the first position in [from, length) whose ordinal >= target, by galloping then binary search
+         */
+        int seek(int from, int target) {
+            int step = 1;
+            int hi = from;
+            while (hi < length && get(hi) < target) {
+                from = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi, length);
+            while (from < hi) {
+                int mid = (from + hi) >>> 1;
+                if (get(mid) < target) from = mid + 1;
+                else hi = mid;
+            }
+            return from;
+        }
+    }
+
+    String directory;
+    BinaryFilePointSource columns;
+    volatile Map<String, Postings> terms; // set once postings are mapped
+    IntBuffer[] postings;
+
+    public InvertedIndexPointSource(String directory) {
+        this.directory = directory;
+        this.columns = new BinaryFilePointSource(directory);
+    }
+
+    public static String termsFileName(String directory) {
+        return directory + File.separator + Constants.DATASET_NAME + ".terms";
+    }
+
+    public static String postingsFileName(String directory) {
+        return directory + File.separator + Constants.DATASET_NAME + ".postings";
+    }
+
+    @Override
+    public List<Point> queryPointsForKeyword(String keyword) {
+        if (keyword.equals("%")) {
+            return columns.queryPointsForKeyword("%");
+        }
+        BinaryFilePointSource.MappedColumns all = columns.open("%");
+        if (all == null) return null;
+        return query(all, keyword, 0, all.count);
+    }
+
+    @Override
+    public List<Point> queryPointsForKeywordAndTime(String keyword, Date sd, Date ed) {
+        if (keyword.equals("%")) {
+            return columns.queryPointsForTime(sd, ed);
+        }
+        BinaryFilePointSource.MappedColumns all = columns.open("%");
+        if (all == null) return null;
+        return query(all, keyword, all.lowerBound(sd.getTime()), all.lowerBound(ed.getTime()));
+    }
+
+    @Override
+    public List<Point> queryPointsForTime(Date sd, Date ed) {
+        return columns.queryPointsForTime(sd, ed);
+    }
+
+    /**
+     * the index does not keep the terms of each point
+     */
+    @Override
+    public List<Point> queryTaggedPointsForTime(Date sd, Date ed) {
+        logger.error("[InvertedIndexPointSource] the index does not store keywords of each point.");
+        return null;
+    }
+
+    /**
+     * evaluate the keyword expression to ordinals in [from, to) and gather their coordinates
+     */
+    private List<Point> query(BinaryFilePointSource.MappedColumns all, String keyword, long from, long to) {
+        if (!open()) return null;
+        int[] ordinals;
+        try {
+            ordinals = evaluate(new Parser(keyword).parse(), (int) from, (int) to);
+        } catch (IllegalArgumentException e) {
+            logger.error("[InvertedIndexPointSource] can not parse keyword {}: {}", keyword, e.getMessage());
+            return null;
+        }
+        List<Point> result = new ArrayList<>(ordinals.length);
+        for (int ordinal: ordinals) {
+            result.add(new TimedPoint(all.lng(ordinal), all.lat(ordinal), all.time(ordinal)));
+        }
+        return result;
+    }
+
+    /**
+     * @return ascending ordinals in [from, to) matching given expression node
+     */
+    int[] evaluate(Node node, int from, int to) {
+        switch (node.operator) {
+            case '&': {
+                // start from the shortest operand, then gallop into the posting lists of the other terms
+                List<Node> operands = new ArrayList<>(node.operands);
+                operands.sort(Comparator.comparingLong(this::estimate));
+                int[] result = evaluate(operands.get(0), from, to);
+                for (int i = 1; i < operands.size() && result.length > 0; i ++) {
+                    Node operand = operands.get(i);
+                    if (operand.operator == 0) {
+                        result = intersect(result, terms.get(operand.term));
+                    }
+                    else {
+                        result = intersect(result, evaluate(operand, from, to));
+                    }
+                }
+                return result;
+            }
+            case '|': {
+                int[] result = new int[0];
+                for (Node operand: node.operands) {
+                    result = union(result, evaluate(operand, from, to));
+                }
+                return result;
+            }
+            default: {
+                Postings list = terms.get(node.term);
+                if (list == null) return new int[0];
+                int start = list.seek(0, from);
+                int end = list.seek(start, to);
+                int[] result = new int[end - start];
+                for (int i = start; i < end; i ++) {
+                    result[i - start] = list.get(i);
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * upper bound of the number of ordinals of given expression node
+     */
+    long estimate(Node node) {
+        switch (node.operator) {
+            case '&':
+                long min = Long.MAX_VALUE;
+                for (Node operand: node.operands) min = Math.min(min, estimate(operand));
+                return min;
+            case '|':
+                long sum = 0;
+                for (Node operand: node.operands) sum += estimate(operand);
+                return sum;
+            default:
+                Postings list = terms.get(node.term);
+                return list == null? 0: list.length;
+        }
+    }
+
+    int[] intersect(int[] a, Postings b) {
+        if (b == null) return new int[0];
+        int[] result = new int[a.length];
+        int size = 0;
+        int j = 0;
+        for (int ordinal: a) {
+            j = b.seek(j, ordinal);
+            if (j == b.length) break;
+            if (b.get(j) == ordinal) result[size ++] = ordinal;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) i ++;
+            else if (a[i] > b[j]) j ++;
+            else {
+                result[size ++] = a[i];
+                i ++;
+                j ++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int size = 0;
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) result[size ++] = a[i ++];
+            else if (a[i] > b[j]) result[size ++] = b[j ++];
+            else {
+                result[size ++] = a[i ++];
+                j ++;
+            }
+        }
+        while (i < a.length) result[size ++] = a[i ++];
+        while (j < b.length) result[size ++] = b[j ++];
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * read the terms file and map the postings file, only once
+     */
+    private synchronized boolean open() {
+        if (this.terms != null) return true;
+        String termsFileName = termsFileName(this.directory);
+        String postingsFileName = postingsFileName(this.directory);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(termsFileName), 1 << 20));
+             RandomAccessFile file = new RandomAccessFile(postingsFileName, "r");
+             FileChannel channel = file.getChannel()) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.error("[InvertedIndexPointSource] {} is not a version {} terms file.", termsFileName, VERSION);
+                return false;
+            }
+            int count = in.readInt();
+            Map<String, Postings> terms = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i ++) {
+                String term = in.readUTF();
+                long offset = in.readLong();
+                int length = in.readInt();
+                terms.put(term, new Postings(offset, length));
+            }
+            long size = channel.size() / Constants.INT_BYTES;
+            int segments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            this.postings = new IntBuffer[segments];
+            for (int s = 0; s < segments; s ++) {
+                long offset = (long) s << SEGMENT_SHIFT;
+                long length = Math.min(SEGMENT_MASK + 1L, size - offset) * Constants.INT_BYTES;
+                this.postings[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset * Constants.INT_BYTES, length).asIntBuffer();
+            }
+            this.terms = terms;
+            logger.info("[InvertedIndexPointSource] opened index of {} terms and {} postings.", count, size);
+            return true;
+        } catch (IOException e) {
+            logger.error("[InvertedIndexPointSource] opening index in {} failed: {}", this.directory, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * node of a parsed keyword expression, operator 0 - term
+     */
+    static class Node {
+        char operator;
+        String term;
+        List<Node> operands;
+
+        Node(String term) {
+            this.operator = 0;
+            this.term = term;
+        }
+
+        Node(char operator, List<Node> operands) {
+            this.operator = operator;
+            this.operands = operands;
+        }
+    }
+
+    /**
+     * recursive descent parser of tsquery-style keyword expressions
+     *
+     *   or   := and ( '|' and )*
+     *   and  := atom ( '&' atom )*
+     *   atom := term | '(' or ')'
+     */
+    static class Parser {
+        String text;
+        int position;
+
+        Parser(String text) {
+            this.text = text;
+            this.position = 0;
+        }
+
+        Node parse() {
+            Node node = parseOr();
+            skipSpaces();
+            if (position < text.length()) {
+                throw new IllegalArgumentException("unexpected '" + text.charAt(position) + "' at " + position);
+            }
+            return node;
+        }
+
+        Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (peek() == '|') {
+                position ++;
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1? operands.get(0): new Node('|', operands);
+        }
+
+        Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAtom());
+            while (peek() == '&') {
+                position ++;
+                operands.add(parseAtom());
+            }
+            return operands.size() == 1? operands.get(0): new Node('&', operands);
+        }
+
+        Node parseAtom() {
+            char c = peek();
+            if (c == '(') {
+                position ++;
+                Node node = parseOr();
+                if (peek() != ')') {
+                    throw new IllegalArgumentException("missing ')' at " + position);
+                }
+                position ++;
+                return node;
+            }
+            int start = position;
+            while (position < text.length() && "&|() \t".indexOf(text.charAt(position)) < 0) {
+                position ++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("missing term at " + position);
+            }
+            return new Node(text.substring(start, position).toLowerCase());
+        }
+
+        char peek() {
+            skipSpaces();
+            return position < text.length()? text.charAt(position): 0;
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position ++;
+            }
+        }
+    }
+
+    /**
+     * Build the columns and the inverted index from a full export of the point source in application.conf
+     *
+     *  - reads TaggedPoints of [start, end) slice by slice from "source.type" (postgresql / synthetic)
+     *  - posting lists are kept in memory until written
+     *
+     * usage: InvertedIndexPointSource [directory] [start yyyy-MM-dd] [end yyyy-MM-dd] [slice days]
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length < 4) {
+            System.out.println("usage: InvertedIndexPointSource [directory] [start yyyy-MM-dd] [end yyyy-MM-dd] [slice days]");
+            return;
+        }
+        Config config = ConfigFactory.load();
+        Constants.init(config);
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        String directory = args[0];
+        Date start = sdf.parse(args[1]);
+        Date end = sdf.parse(args[2]);
+        int sliceDays = Integer.valueOf(args[3]);
+        IPointSource source;
+        switch (config.getString("source.type").toLowerCase()) {
+            case "synthetic":
+                source = new SyntheticPointSource(config.getLong("source.synthetic.size"), config.getLong("source.synthetic.seed"), start, end);
+                break;
+            case "postgresql":
+            default:
+                source = new PostgreSQL();
+        }
+        build(source, directory, start, end, sliceDays);
+    }
+
+    /**
+     * Write the columns and the inverted index of all TaggedPoints of the source in [start, end) into directory
+     *
+     * @param source
+     * @param directory
+     * @param start
+     * @param end
+     * @param sliceDays - number of days read from the source at a time
+     */
+    public static void build(IPointSource source, String directory, Date start, Date end, int sliceDays) throws IOException {
+        MyTimer.startTimer();
+        Map<String, int[]> lists = new HashMap<>();
+        Map<String, Integer> sizes = new HashMap<>();
+        int ordinal = 0;
+        try (BinaryFilePointSource.Writer writer = new BinaryFilePointSource.Writer(BinaryFilePointSource.fileName(directory, "%"))) {
+            Calendar calendar = Calendar.getInstance();
+            for (Date sliceStart = start; sliceStart.before(end); ) {
+                calendar.setTime(sliceStart);
+                calendar.add(Calendar.DATE, sliceDays);
+                Date sliceEnd = calendar.getTime().before(end)? calendar.getTime(): end;
+                List<Point> points = source.queryTaggedPointsForTime(sliceStart, sliceEnd);
+                if (points == null) {
+                    logger.error("[InvertedIndexPointSource] source does not provide keywords.");
+                    return;
+                }
+                // ordinals follow time order, a slice is sorted before it is appended
+                points.sort(Comparator.comparingLong(p -> ((TimedPoint) p).getTime()));
+                for (Point point: points) {
+                    TaggedPoint taggedPoint = (TaggedPoint) point;
+                    writer.add(taggedPoint.getX(), taggedPoint.getY(), taggedPoint.getTime());
+                    for (String term: taggedPoint.getKeywords()) {
+                        int[] list = lists.get(term);
+                        int size = sizes.getOrDefault(term, 0);
+                        // a term repeated in one record is posted once
+                        if (size > 0 && list[size - 1] == ordinal) continue;
+                        if (list == null || size == list.length) {
+                            list = list == null? new int[4]: Arrays.copyOf(list, list.length * 2);
+                            lists.put(term, list);
+                        }
+                        list[size] = ordinal;
+                        sizes.put(term, size + 1);
+                    }
+                    ordinal ++;
+                }
+                logger.info("[InvertedIndexPointSource] indexed {} points until {}.", ordinal, sliceEnd);
+                sliceStart = sliceEnd;
+            }
+        }
+
+        try (DataOutputStream terms = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(termsFileName(directory)), 1 << 20));
+             DataOutputStream postings = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(postingsFileName(directory)), 1 << 20))) {
+            terms.writeInt(MAGIC);
+            terms.writeInt(VERSION);
+            terms.writeInt(lists.size());
+            long offset = 0;
+            for (Map.Entry<String, int[]> entry: lists.entrySet()) {
+                int size = sizes.get(entry.getKey());
+                terms.writeUTF(entry.getKey());
+                terms.writeLong(offset);
+                terms.writeInt(size);
+                int[] list = entry.getValue();
+                for (int i = 0; i < size; i ++) {
+                    postings.writeInt(list[i]);
+                }
+                offset += size;
+            }
+        }
+        MyTimer.stopTimer();
+        logger.info("Indexed {} points and {} terms into {} in {} seconds.", ordinal, lists.size(), directory, MyTimer.durationSeconds());
+    }
+}
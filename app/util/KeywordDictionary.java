@@ -0,0 +1,145 @@
+package util;
+
+import java.util.*;
+
+/**
+ * Dense integer ids of keywords, used as the members of per-node keyword bitmaps
+ *
+ *  - id = order the keyword is first seen
+ *  - keywords are lower-case tokens of the tweet text, see tokenize()
+ *  - once the vocabulary is fixed, other keywords get no id, so the ids and the bitmaps keyed by them stay bounded
+ *    however many distinct terms the data has, see Constants.KEYWORD_VOCABULARY and Constants.KEYWORD_TOP
+ */
+public class KeywordDictionary {
+
+    Map<String, Integer> ids;
+    List<String> keywords;
+    boolean fixed;
+
+    /**
+     * a dictionary of the configured vocabulary, fixed, or an empty one if no vocabulary is configured
+     */
+    public KeywordDictionary() {
+        this(vocabulary());
+    }
+
+    /**
+     * @param vocabulary - keywords of the fixed vocabulary, null for an empty dictionary not fixed yet
+     */
+    public KeywordDictionary(Set<String> vocabulary) {
+        this.ids = new HashMap<>();
+        this.keywords = new ArrayList<>();
+        if (vocabulary != null) {
+            for (String keyword: vocabulary) {
+                idOf(keyword);
+            }
+            this.fixed = true;
+        }
+    }
+
+    /**
+     * @return lower-case keywords of the configured vocabulary, null if none is configured
+     */
+    public static Set<String> vocabulary() {
+        if (Constants.KEYWORD_VOCABULARY.length == 0) return null;
+        Set<String> vocabulary = new LinkedHashSet<>();
+        for (String keyword: Constants.KEYWORD_VOCABULARY) {
+            vocabulary.add(keyword.toLowerCase());
+        }
+        return vocabulary;
+    }
+
+    public boolean isFixed() {
+        return this.fixed;
+    }
+
+    /**
+     * fix the vocabulary to the keywords having ids
+     */
+    public void fix() {
+        this.fixed = true;
+    }
+
+    /**
+     * fix the vocabulary to the given number of most frequent keywords
+     *
+     * @param tokens - keywords of each record
+     * @param top
+     */
+    public void fix(List<String[]> tokens, int top) {
+        if (this.fixed) return;
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String[] keywords: tokens) {
+            for (String keyword: keywords) {
+                frequencies.merge(keyword, 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(frequencies.entrySet());
+        entries.sort((a, b) -> a.getValue().equals(b.getValue())? a.getKey().compareTo(b.getKey()): b.getValue() - a.getValue());
+        for (Map.Entry<String, Integer> entry: entries.subList(0, Math.min(top, entries.size()))) {
+            idOf(entry.getKey());
+        }
+        this.fixed = true;
+    }
+
+    /**
+     * @param keyword
+     * @return id of given keyword, a new id is assigned if not seen yet, -1 if not in the fixed vocabulary
+     */
+    public int idOf(String keyword) {
+        Integer id = this.ids.get(keyword);
+        if (id == null) {
+            if (this.fixed) return -1;
+            id = this.keywords.size();
+            this.ids.put(keyword, id);
+            this.keywords.add(keyword);
+        }
+        return id;
+    }
+
+    /**
+     * @param keyword
+     * @return id of given keyword, -1 if not seen yet
+     */
+    public int lookup(String keyword) {
+        Integer id = this.ids.get(keyword.toLowerCase());
+        return id == null? -1: id;
+    }
+
+    public String keywordOf(int id) {
+        return this.keywords.get(id);
+    }
+
+    public int size() {
+        return this.keywords.size();
+    }
+
+    /**
+     * split text into distinct lower-case keywords,
+     * a keyword is a run of letters, digits, '_', '#' or '@' with at least 2 characters
+     *
+     * @param text
+     * @return
+     */
+    public static String[] tokenize(String text) {
+        return tokenize(text, null);
+    }
+
+    /**
+     * split text into distinct lower-case keywords of given vocabulary, see tokenize(String)
+     *
+     * @param text
+     * @param vocabulary - null if any keyword
+     * @return
+     */
+    public static String[] tokenize(String text, Set<String> vocabulary) {
+        if (text == null) return new String[0];
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token: text.toLowerCase().split("[^\\p{L}\\p{N}_#@]+")) {
+            if (token.length() >= 2 && (vocabulary == null || vocabulary.contains(token))) {
+                tokens.add(token);
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+}
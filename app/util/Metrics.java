@@ -0,0 +1,115 @@
+package util;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide latency / size histograms, exported in Prometheus text format
+ *
+ *  - one HDR histogram per metric name and label value
+ *  - times are recorded in microseconds and exported in seconds
+ */
+public class Metrics {
+
+    public static final String TOTAL_TIME = "query_total_time_seconds";
+    public static final String TREE_TIME = "query_tree_time_seconds";
+    public static final String AGGREGATE_TIME = "query_aggregate_time_seconds";
+    public static final String PAYLOAD_BYTES = "query_payload_bytes";
+    public static final String DB_TIME = "db_time_seconds";
+    public static final String LOAD_TIME = "load_time_seconds";
+    public static final String SAMPLE_SIZE = "query_sample_size";
+
+    static final String PREFIX = "bigspatialviz_";
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    static class Metric {
+        String help;
+        String label;
+        boolean seconds;
+        Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+        Metric(String help, String label, boolean seconds) {
+            this.help = help;
+            this.label = label;
+            this.seconds = seconds;
+        }
+    }
+
+    static final Map<String, Metric> metrics = new TreeMap<>();
+    static {
+        metrics.put(TOTAL_TIME, new Metric("Time to answer a query", "algorithm", true));
+        metrics.put(TREE_TIME, new Metric("Time spent searching the index for a query", "algorithm", true));
+        metrics.put(AGGREGATE_TIME, new Metric("Time spent building the result of a query", "algorithm", true));
+        metrics.put(PAYLOAD_BYTES, new Metric("Size of a query result message", "algorithm", false));
+        metrics.put(DB_TIME, new Metric("Time to fetch a batch of points from the point source", "source", true));
+        metrics.put(LOAD_TIME, new Metric("Time to load a batch of points into an algorithm", "algorithm", true));
+        metrics.put(SAMPLE_SIZE, new Metric("Number of samples in a query result, lower than asked if the latency budget ran out", "algorithm", false));
+    }
+
+    public static void recordSeconds(String name, String labelValue, double seconds) {
+        record(name, labelValue, Math.round(seconds * 1000000.0));
+    }
+
+    public static void record(String name, String labelValue, long value) {
+        Metric metric = metrics.get(name);
+        Histogram histogram = metric.histograms.get(labelValue);
+        if (histogram == null) {
+            histogram = metric.histograms.computeIfAbsent(labelValue, k -> new ConcurrentHistogram(3));
+        }
+        histogram.recordValue(Math.max(0, value));
+    }
+
+    /**
+     * record the timings of one answered query
+     *
+     * @param algorithm
+     * @param totalTime - seconds
+     * @param timings
+     */
+    public static void recordQuery(String algorithm, double totalTime, TimingContext timings) {
+        recordSeconds(TOTAL_TIME, algorithm, totalTime);
+        recordSeconds(TREE_TIME, algorithm, timings.treeTime);
+        recordSeconds(AGGREGATE_TIME, algorithm, timings.aggregateTime);
+        record(PAYLOAD_BYTES, algorithm, timings.payloadBytes);
+        if (timings.sampleSize >= 0) {
+            record(SAMPLE_SIZE, algorithm, timings.sampleSize);
+        }
+    }
+
+    /**
+     * @return all histograms as Prometheus summaries
+     */
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Metric> entry: metrics.entrySet()) {
+            String name = PREFIX + entry.getKey();
+            Metric metric = entry.getValue();
+            double scale = metric.seconds ? 1000000.0 : 1.0;
+            sb.append("# HELP ").append(name).append(" ").append(metric.help).append("\n");
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<String, Histogram> labeled: new TreeMap<>(metric.histograms).entrySet()) {
+                Histogram histogram = labeled.getValue().copy();
+                String labelValue = escape(labeled.getKey());
+                for (double quantile: QUANTILES) {
+                    sb.append(name).append("{").append(metric.label).append("=\"").append(labelValue)
+                            .append("\",quantile=\"").append(quantile).append("\"} ")
+                            .append(histogram.getValueAtPercentile(quantile * 100) / scale).append("\n");
+                }
+                String labels = "{" + metric.label + "=\"" + labelValue + "\"} ";
+                sb.append(name).append("_sum").append(labels)
+                        .append(histogram.getMean() * histogram.getTotalCount() / scale).append("\n");
+                sb.append(name).append("_count").append(labels).append(histogram.getTotalCount()).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    static String escape(String labelValue) {
+        if (labelValue == null) return "";
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,80 @@
+package util;
+
+public class Morton {
+
+    /**
+     * Note: Morton code of a spherical mercator coordinate [x, y] in [0 ~ 1)
+     *
+     *   - x and y are each truncated to a 32-bit fixed-point number, floor(x * 2^32),
+     *     clamped to [0, 2^32 - 1] so that x or y = 1 (e.g. longitude 180) falls into the last cell
+     *   - bits are interleaved from the highest: y31 x31 y30 x30 ... y0 x0
+     *   - so the 2 bits at level l (root is level 0, its children are level 1) are
+     *     the quadrant of the level l cell holding the point: 0 - nw, 1 - ne, 2 - sw, 3 - se
+     *   - points in one cell of level l share the highest 2 * l bits
+     */
+
+    public static final int LEVELS = 32;
+
+    static final double SCALE = 4294967296.0; // 2^32
+
+    static final long MAX_FIXED = 0xFFFFFFFFL; // 2^32 - 1
+
+    // spherical mercator [x, y] to Morton code, x and y in [0..1]
+    public static long encode(double x, double y) {
+        return spread(fixed(x)) | (spread(fixed(y)) << 1);
+    }
+
+    // [0..1] to 32-bit fixed-point
+    static long fixed(double v) {
+        return Math.max(0L, Math.min(MAX_FIXED, (long) (v * SCALE)));
+    }
+
+    // Morton code to spherical mercator x of the lower corner of its fixed-point cell
+    public static double decodeX(long code) {
+        return compact(code) / SCALE;
+    }
+
+    // Morton code to spherical mercator y of the lower corner of its fixed-point cell
+    public static double decodeY(long code) {
+        return compact(code >>> 1) / SCALE;
+    }
+
+    // quadrant of the level _level cell holding the code, _level in [1..32]
+    public static int quadrant(long code, int _level) {
+        return (int) (code >>> (2 * (LEVELS - _level))) & 3;
+    }
+
+    // 2 bits quadrants of levels (_level, _level + _levels], the top level in the highest bits, _level + _levels <= 32
+    public static long quadrants(long code, int _level, int _levels) {
+        if (_levels == 0) return 0L;
+        if (_levels == LEVELS) return code;
+        return (code >>> (2 * (LEVELS - _level - _levels))) & ((1L << (2 * _levels)) - 1);
+    }
+
+    // number of levels from root on which two codes fall into the same cell
+    public static int commonLevels(long code1, long code2) {
+        return Long.numberOfLeadingZeros(code1 ^ code2) / 2;
+    }
+
+    // 32 bits -> even bits of 64 bits
+    static long spread(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    // even bits of 64 bits -> 32 bits
+    static long compact(long v) {
+        v &= 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return v;
+    }
+}
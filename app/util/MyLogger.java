@@ -1,17 +1,37 @@
 package util;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Thin wrapper of SLF4J loggers, levels are configured in conf/logback.xml
+ */
 public class MyLogger {
-    private static final DateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     public static void info(Class c, String message) {
-        System.out.println("[" + sdf.format(new Date()) + "][" + c.getName() + "] " + message);
+        LoggerFactory.getLogger(c).info(message);
+    }
+
+    public static void info(Class c, String format, Object arg) {
+        LoggerFactory.getLogger(c).info(format, arg);
+    }
+
+    public static void debug(Class c, String message) {
+        LoggerFactory.getLogger(c).debug(message);
+    }
+
+    public static void debug(Class c, String format, Object arg) {
+        LoggerFactory.getLogger(c).debug(format, arg);
     }
 
     public static void error(Class c, String message) {
-        System.err.println("[" + sdf.format(new Date()) + "][" + c.getName() + "] " + message);
+        LoggerFactory.getLogger(c).error(message);
+    }
+
+    public static void error(Class c, String format, Object arg) {
+        LoggerFactory.getLogger(c).error(format, arg);
+    }
+
+    public static boolean isDebugEnabled(Class c) {
+        return LoggerFactory.getLogger(c).isDebugEnabled();
     }
 }
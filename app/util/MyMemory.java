@@ -1,35 +1,33 @@
 package util;
 
-import java.util.ArrayList;
-import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class MyMemory {
 
-    static final int mb = 1024*1024;
+    private static final Logger logger = LoggerFactory.getLogger(MyMemory.class);
 
-    public static List<Integer> progressUsedMemory = new ArrayList<>();
-    public static List<Integer> porgressTotalMemory = new ArrayList<>();
+    static final int mb = 1024*1024;
 
     public static void printMemory() {
+        if (!logger.isDebugEnabled()) return;
 
         //Getting the runtime reference from system
         Runtime runtime = Runtime.getRuntime();
 
-        System.out.println("##### Heap utilization statistics [MB] #####");
+        logger.debug("##### Heap utilization statistics [MB] #####");
 
         //Print used memory
-        System.out.println("Used Memory:"
-                + (runtime.totalMemory() - runtime.freeMemory()) / mb);
+        logger.debug("Used Memory: {}", (runtime.totalMemory() - runtime.freeMemory()) / mb);
 
         //Print free memory
-        System.out.println("Free Memory:"
-                + runtime.freeMemory() / mb);
+        logger.debug("Free Memory: {}", runtime.freeMemory() / mb);
 
         //Print total available memory
-        System.out.println("Total Memory:" + runtime.totalMemory() / mb);
+        logger.debug("Total Memory: {}", runtime.totalMemory() / mb);
 
         //Print Maximum available memory
-        System.out.println("Max Memory:" + runtime.maxMemory() / mb);
+        logger.debug("Max Memory: {}", runtime.maxMemory() / mb);
     }
 
     public static int getUsedMemory() {
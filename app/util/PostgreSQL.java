@@ -1,83 +1,128 @@
 package util;
 
 import model.Point;
+import model.TaggedPoint;
+import model.TimedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Set;
 import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
 
-public class PostgreSQL {
+/**
+ * Point source of the tweets table in PostgreSQL
+ *
+ *  - safe for concurrent fetches, each fetch borrows a connection of its own for its duration
+ *  - connections are kept in a pool shared by all instances once returned,
+ *    so the connections open never exceed the fetches running at the same time
+ */
+public class PostgreSQL implements IPointSource {
 
-    public Connection conn = null;
+    private static final Logger logger = LoggerFactory.getLogger(PostgreSQL.class);
 
-    public boolean connectDB() {
+    // idle connections, most recently returned first
+    static final Deque<Connection> idleConnections = new ConcurrentLinkedDeque<>();
+
+    static Connection connectDB() {
         try {
-            conn = DriverManager.getConnection(Constants.DB_URL, Constants.DB_USERNAME, Constants.DB_PASSWORD);
-            System.out.println("Connected to the PostgreSQL server successfully.");
-            return true;
+            Connection conn = DriverManager.getConnection(Constants.DB_URL, Constants.DB_USERNAME, Constants.DB_PASSWORD);
+            logger.info("Connected to the PostgreSQL server successfully.");
+            return conn;
         } catch (SQLException e) {
-            System.err.println("Connecting to the PostgreSQL server failed. Exceptions:");
-            System.err.println(e.getMessage());
-            return false;
+            logger.error("Connecting to the PostgreSQL server failed. Exceptions: {}", e.getMessage());
+            return null;
         }
     }
 
-    public void disconnectDB() {
-        try {
-            conn.close();
-            System.out.println("Disconnected from the PostgreSQL server successfully.");
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /**
+     * close the idle connections of the pool, connections borrowed now are closed once returned
+     */
+    public static void disconnectDB() {
+        Connection conn;
+        while ((conn = idleConnections.pollFirst()) != null) {
+            try {
+                conn.close();
+                logger.info("Disconnected from the PostgreSQL server successfully.");
+            } catch (SQLException e) {
+                logger.error("Disconnecting from the PostgreSQL server failed.", e);
+            }
+        }
+    }
+
+    /**
+     * @return - an idle connection still valid, or a new one, null if connecting failed
+     */
+    static Connection borrowConnection() {
+        Connection conn;
+        while ((conn = idleConnections.pollFirst()) != null) {
+            try {
+                if (conn.isValid(1)) {
+                    return conn;
+                }
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("Dropping a broken PostgreSQL connection. Exceptions: {}", e.getMessage());
+            }
         }
+        return connectDB();
+    }
+
+    static void returnConnection(Connection conn) {
+        idleConnections.offerFirst(conn);
     }
 
     public List<Point> queryPointsForKeyword(String keyword) {
 
-        if (this.conn == null) {
-            if(!this.connectDB()) {
-                return null;
-            }
+        Connection conn = borrowConnection();
+        if (conn == null) {
+            return null;
         }
 
-        System.out.println("Querying PostgreSQL with keyword: [" + keyword + "] ... ...");
+        logger.debug("Querying PostgreSQL with keyword: [{}] ... ...", keyword);
         List<Point> result = new ArrayList<>();
-        String sql = "SELECT x, y FROM " + Constants.DB_TABLENAME + " WHERE to_tsvector('english', text)@@to_tsquery('english', ?)";
+        String sql = "SELECT x, y, create_at FROM " + Constants.DB_TABLENAME + " WHERE to_tsvector('english', text)@@to_tsquery('english', ?)";
         long start = System.nanoTime();
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
             statement.setString(1, keyword);
             ResultSet rs = statement.executeQuery();
             while (rs.next()) {
                 Double x = rs.getDouble(1);
                 Double y = rs.getDouble(2);
-                result.add(new Point(x, y));
+                Timestamp t = rs.getTimestamp(3);
+                result.add(new TimedPoint(x, y, t == null? 0L: t.getTime()));
             }
         } catch (SQLException e) {
-            System.err.println(e.getMessage());
+            logger.error(e.getMessage());
+        } finally {
+            returnConnection(conn);
         }
         long end = System.nanoTime();
-        System.out.println("Querying PostgreSQL with keyword: [" + keyword + "] is done! ");
-        System.out.println("Takes time: " + TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS) + " seconds");
-        System.out.println("Result size: " + result.size());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Querying PostgreSQL with keyword: [{}] is done! ", keyword);
+            logger.debug("Takes time: {} seconds", TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS));
+            logger.debug("Result size: {}", result.size());
+        }
         return result;
     }
 
     public List<Point> queryPointsForKeywordAndTime(String keyword, Date sd, Date ed) {
 
-        if (this.conn == null) {
-            if(!this.connectDB()) {
-                return null;
-            }
+        Connection conn = borrowConnection();
+        if (conn == null) {
+            return null;
         }
 
-        System.out.println("Querying PostgreSQL with keyword: [" + keyword + "] and time [" + sd + ", " + ed + "]... ...");
+        logger.debug("Querying PostgreSQL with keyword: [{}] and time [{}, {}]... ...", keyword, sd, ed);
         List<Point> result = new ArrayList<>();
-        String sql = "SELECT x, y FROM " + Constants.DB_TABLENAME + " WHERE to_tsvector('english', text)@@to_tsquery('english', ?) and create_at between ? and ?";
+        String sql = "SELECT x, y, create_at FROM " + Constants.DB_TABLENAME + " WHERE to_tsvector('english', text)@@to_tsquery('english', ?) and create_at between ? and ?";
         long start = System.nanoTime();
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
             statement.setString(1, keyword);
             statement.setTimestamp(2, new Timestamp(sd.getTime()));
             statement.setTimestamp(3, new Timestamp(ed.getTime()));
@@ -85,47 +130,93 @@ public class PostgreSQL {
             while (rs.next()) {
                 Double x = rs.getDouble(1);
                 Double y = rs.getDouble(2);
-                result.add(new Point(x, y));
+                Timestamp t = rs.getTimestamp(3);
+                result.add(new TimedPoint(x, y, t == null? 0L: t.getTime()));
             }
         } catch (SQLException e) {
-            System.err.println(e.getMessage());
+            logger.error(e.getMessage());
+        } finally {
+            returnConnection(conn);
         }
         long end = System.nanoTime();
-        System.out.println("Querying PostgreSQL with keyword: [" + keyword + "] and time [" + sd + ", " + ed +  "] is done! ");
-        System.out.println("Takes time: " + TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS) + " seconds");
-        System.out.println("Result size: " + result.size());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Querying PostgreSQL with keyword: [{}] and time [{}, {}] is done! ", keyword, sd, ed);
+            logger.debug("Takes time: {} seconds", TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS));
+            logger.debug("Result size: {}", result.size());
+        }
         return result;
     }
 
-    public List<Point> queryPointsForTime(Date sd, Date ed) {
+    public List<Point> queryTaggedPointsForTime(Date sd, Date ed) {
+
+        Connection conn = borrowConnection();
+        if (conn == null) {
+            return null;
+        }
 
-        if (this.conn == null) {
-            if(!this.connectDB()) {
-                return null;
+        logger.debug("Querying PostgreSQL tagged points with time [{}, {}]... ...", sd, ed);
+        List<Point> result = new ArrayList<>();
+        String sql = "SELECT x, y, create_at, text FROM " + Constants.DB_TABLENAME + " WHERE create_at between ? and ?";
+        // terms out of the configured vocabulary are never indexed, skip them here
+        Set<String> vocabulary = KeywordDictionary.vocabulary();
+        long start = System.nanoTime();
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setTimestamp(1, new Timestamp(sd.getTime()));
+            statement.setTimestamp(2, new Timestamp(ed.getTime()));
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                Double x = rs.getDouble(1);
+                Double y = rs.getDouble(2);
+                Timestamp t = rs.getTimestamp(3);
+                String[] keywords = KeywordDictionary.tokenize(rs.getString(4), vocabulary);
+                result.add(new TaggedPoint(x, y, t == null? 0L: t.getTime(), keywords));
             }
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+        } finally {
+            returnConnection(conn);
         }
+        long end = System.nanoTime();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Querying PostgreSQL tagged points with time [{}, {}] is done! ", sd, ed);
+            logger.debug("Database time: {} seconds", TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS));
+            logger.debug("Result size: {}", result.size());
+        }
+        return result;
+    }
+
+    public List<Point> queryPointsForTime(Date sd, Date ed) {
 
-        System.out.println("Querying PostgreSQL with time [" + sd + ", " + ed + "]... ...");
+        Connection conn = borrowConnection();
+        if (conn == null) {
+            return null;
+        }
+
+        logger.debug("Querying PostgreSQL with time [{}, {}]... ...", sd, ed);
         List<Point> result = new ArrayList<>();
-        String sql = "SELECT x, y FROM " + Constants.DB_TABLENAME + " WHERE create_at between ? and ?";
+        String sql = "SELECT x, y, create_at FROM " + Constants.DB_TABLENAME + " WHERE create_at between ? and ?";
         long start = System.nanoTime();
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
             statement.setTimestamp(1, new Timestamp(sd.getTime()));
             statement.setTimestamp(2, new Timestamp(ed.getTime()));
             ResultSet rs = statement.executeQuery();
             while (rs.next()) {
                 Double x = rs.getDouble(1);
                 Double y = rs.getDouble(2);
-                result.add(new Point(x, y));
+                Timestamp t = rs.getTimestamp(3);
+                result.add(new TimedPoint(x, y, t == null? 0L: t.getTime()));
             }
         } catch (SQLException e) {
-            System.err.println(e.getMessage());
+            logger.error(e.getMessage());
+        } finally {
+            returnConnection(conn);
         }
         long end = System.nanoTime();
-        System.out.println("Querying PostgreSQL with time [" + sd + ", " + ed +  "] is done! ");
-        System.out.println("Database time: " + TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS) + " seconds");
-        System.out.println("Result size: " + result.size());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Querying PostgreSQL with time [{}, {}] is done! ", sd, ed);
+            logger.debug("Database time: {} seconds", TimeUnit.SECONDS.convert(end - start, TimeUnit.NANOSECONDS));
+            logger.debug("Result size: {}", result.size());
+        }
         return result;
     }
 }
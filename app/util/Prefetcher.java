@@ -0,0 +1,235 @@
+package util;
+
+import model.Query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import static util.Mercator.*;
+
+/**
+ * Speculative answers of one algorithm for the viewports a client of one connection is likely to ask next
+ *
+ *  - predict() is called with each answered query, it guesses the next viewports from the last move:
+ *    the same pan again, zoom in / out by one level, and the ring of 8 viewports adjacent to the current one,
+ *    ordered by the direction of the last pan
+ *  - answers of predicted viewports are put() by the agent on spare time, a query of the same bbox as a predicted viewport
+ *    takes its answer instead of searching the tree, or one within tolerance pixels of it if tolerance > 0,
+ *    an answer of another bbox than the query's, see sameViewport()
+ *  - answers not taken before the next predict() are discarded
+ *  - not thread safe, the agent uses it on its own messages only
+ */
+public class Prefetcher {
+
+    /**
+     * an answer of a predicted viewport
+     */
+    public static class Prefetched {
+        public final Query query;
+        public final byte[] binaryData;
+        public final int sampleSize;
+        public final double estimatedError;
+
+        public Prefetched(Query query, byte[] binaryData, int sampleSize, double estimatedError) {
+            this.query = query;
+            this.binaryData = binaryData;
+            this.sampleSize = sampleSize;
+            this.estimatedError = estimatedError;
+        }
+    }
+
+    int maxViewports;
+    // edges of two viewports closer than this many pixels are the same, predicted viewports are converted
+    // from spherical mercator back to lng / lat, so they rarely equal the bbox of a query bit by bit
+    static final double SAME_VIEWPORT_PIXELS = 1e-6;
+
+    int tolerance; // pixels, 0 - the same viewports only
+    Query last; // last answered query, null if none
+    long generation; // number of predict() calls, answers of older predictions are not put
+    List<Prefetched> answers;
+
+    /**
+     * @param _maxViewports - number of viewports predicted after each query
+     * @param _tolerance - pixels each edge of a query may be away from a predicted viewport to take its answer,
+     *                     0 - only a query of the same bbox as the predicted viewport takes its answer
+     */
+    public Prefetcher(int _maxViewports, int _tolerance) {
+        this.maxViewports = _maxViewports;
+        this.tolerance = _tolerance;
+        this.last = null;
+        this.generation = 0;
+        this.answers = new ArrayList<>();
+    }
+
+    /**
+     * predict the next viewports after given query, answers of the last prediction are discarded
+     *
+     * @param query - answered query with bbox
+     * @return - queries of the predicted viewports, most likely first
+     */
+    public List<Query> predict(Query query) {
+        this.generation ++;
+        this.answers.clear();
+
+        double x0 = lngX(query.bbox[0]);
+        double y1 = latY(query.bbox[1]);
+        double x1 = lngX(query.bbox[2]);
+        double y0 = latY(query.bbox[3]);
+        double width = x1 - x0;
+        double height = y1 - y0;
+
+        // last move in spherical mercator, 0 if not a pan
+        double dx = 0.0, dy = 0.0;
+        int dz = 0;
+        if (this.last != null && this.last.bbox != null) {
+            dz = query.zoom - this.last.zoom;
+            if (dz == 0) {
+                dx = (x0 + x1) / 2 - (lngX(this.last.bbox[0]) + lngX(this.last.bbox[2])) / 2;
+                dy = (y0 + y1) / 2 - (latY(this.last.bbox[1]) + latY(this.last.bbox[3])) / 2;
+            }
+        }
+        this.last = query;
+
+        List<Query> viewports = new ArrayList<>();
+        // the same pan again
+        if (dx != 0.0 || dy != 0.0) {
+            add(viewports, query, x0 + dx, y0 + dy, x1 + dx, y1 + dy, query.zoom);
+        }
+        // zoom in the same direction as the last zoom first, in by default
+        boolean zoomInFirst = dz >= 0;
+        addZoomed(viewports, query, zoomInFirst, x0, y0, x1, y1);
+        // adjacent ring, the neighbour in the direction of the last pan first
+        List<double[]> ring = new ArrayList<>();
+        for (int i = -1; i <= 1; i ++) {
+            for (int j = -1; j <= 1; j ++) {
+                if (i != 0 || j != 0) {
+                    ring.add(new double[]{i, j});
+                }
+            }
+        }
+        final double px = dx, py = dy;
+        ring.sort(Comparator.comparingDouble(d -> -(d[0] * px + d[1] * py) / Math.hypot(d[0], d[1])));
+        for (double[] d: ring) {
+            add(viewports, query, x0 + d[0] * width, y0 + d[1] * height, x1 + d[0] * width, y1 + d[1] * height, query.zoom);
+        }
+        addZoomed(viewports, query, !zoomInFirst, x0, y0, x1, y1);
+
+        return viewports.size() > this.maxViewports? new ArrayList<>(viewports.subList(0, this.maxViewports)): viewports;
+    }
+
+    /**
+     * @return - generation of the last prediction
+     */
+    public long generation() {
+        return this.generation;
+    }
+
+    /**
+     * keep the answer of a predicted viewport, if it is still of the last prediction
+     */
+    public void put(long _generation, Prefetched answer) {
+        if (_generation == this.generation) {
+            this.answers.add(answer);
+        }
+    }
+
+    /**
+     * take the answer of the predicted viewport matching given query
+     *
+     * @param query
+     * @return - null if no predicted viewport matches
+     */
+    public Prefetched take(Query query) {
+        Iterator<Prefetched> iterator = this.answers.iterator();
+        while (iterator.hasNext()) {
+            Prefetched answer = iterator.next();
+            if (matches(answer.query, query)) {
+                iterator.remove();
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        this.generation ++;
+        this.answers.clear();
+    }
+
+    boolean matches(Query predicted, Query query) {
+        if (query.bbox == null || predicted.zoom != query.zoom
+                || !Objects.equals(predicted.algorithm, query.algorithm)
+                || !Objects.equals(predicted.aggregator, query.aggregator)
+                || !Objects.equals(predicted.keyword, query.keyword)
+                || predicted.resX != query.resX || predicted.resY != query.resY
+                || predicted.sampleSize != query.sampleSize || predicted.samplePercentage != query.samplePercentage
+                || predicted.tStart != query.tStart || predicted.tEnd != query.tEnd) {
+            return false;
+        }
+        return this.tolerance <= 0? sameViewport(predicted, query): edgesWithin(predicted, query, this.tolerance);
+    }
+
+    /**
+     * @return - true if the answer of the predicted viewport is of the bbox of the query,
+     *           up to the rounding of the mercator conversions,
+     *           otherwise it only matches within tolerance, and its estimated error is not the query's
+     */
+    public static boolean sameViewport(Query predicted, Query query) {
+        return query.bbox != null && edgesWithin(predicted, query, SAME_VIEWPORT_PIXELS);
+    }
+
+    /**
+     * @return - true if each edge of the query is within given pixels of the predicted viewport's at the query's zoom
+     */
+    static boolean edgesWithin(Query predicted, Query query, double pixels) {
+        double pixel = 1.0 / 256 / Math.pow(2, query.zoom);
+        double maxOffset = pixels * pixel;
+        return Math.abs(lngX(predicted.bbox[0]) - lngX(query.bbox[0])) <= maxOffset
+                && Math.abs(latY(predicted.bbox[1]) - latY(query.bbox[1])) <= maxOffset
+                && Math.abs(lngX(predicted.bbox[2]) - lngX(query.bbox[2])) <= maxOffset
+                && Math.abs(latY(predicted.bbox[3]) - latY(query.bbox[3])) <= maxOffset;
+    }
+
+    /**
+     * add the viewport zoomed in / out by one level around the center of [x0, y0] ~ [x1, y1]
+     */
+    void addZoomed(List<Query> viewports, Query query, boolean zoomIn, double x0, double y0, double x1, double y1) {
+        double cX = (x0 + x1) / 2, cY = (y0 + y1) / 2;
+        double scale = zoomIn? 0.25: 1.0;
+        double halfWidth = (x1 - x0) * scale, halfHeight = (y1 - y0) * scale;
+        add(viewports, query, cX - halfWidth, cY - halfHeight, cX + halfWidth, cY + halfHeight,
+                zoomIn? query.zoom + 1: query.zoom - 1);
+    }
+
+    /**
+     * add the viewport [x0, y0] ~ [x1, y1] in spherical mercator, unless it is out of the map
+     */
+    void add(List<Query> viewports, Query query, double x0, double y0, double x1, double y1, int zoom) {
+        if (zoom < Constants.MIN_ZOOM || zoom > Constants.MAX_ZOOM
+                || x0 < 0.0 || y0 < 0.0 || x1 > 1.0 || y1 > 1.0) {
+            return;
+        }
+        Query viewport = new Query();
+        viewport.key = query.key;
+        viewport.zoom = zoom;
+        viewport.bbox = new double[]{xLng(x0), yLat(y1), xLng(x1), yLat(y0)};
+        viewport.algorithm = query.algorithm;
+        viewport.resX = query.resX;
+        viewport.resY = query.resY;
+        viewport.aggregator = query.aggregator;
+        viewport.sampleSize = query.sampleSize;
+        viewport.samplePercentage = query.samplePercentage;
+        viewport.tStart = query.tStart;
+        viewport.tEnd = query.tEnd;
+        viewport.keyword = query.keyword;
+        for (Query other: viewports) {
+            if (matches(other, viewport)) {
+                return;
+            }
+        }
+        viewports.add(viewport);
+    }
+}
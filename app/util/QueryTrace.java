@@ -0,0 +1,23 @@
+package util;
+
+/**
+ * Diagnostics of answering one query,
+ * only collected when the query asks for it (Query.trace) or debug logging is enabled
+ */
+public class QueryTrace {
+    public String algorithm;
+    public int zoom;
+    public int targetSampleSize;
+    public int resultSize;
+    public int availableSampleSize; // sample budget left when the search stopped
+    public int[] numberOfNodesStoppedAtLevels; // how many nodes stopped at each level
+    public int computeBenefitTimes; // how many times the benefit was computed
+    public double computeBenefitTime; // seconds
+    public double treeTime; // seconds
+    public double aggregateTime; // seconds
+
+    public QueryTrace(String algorithm, int levels) {
+        this.algorithm = algorithm;
+        this.numberOfNodesStoppedAtLevels = new int[levels];
+    }
+}
@@ -0,0 +1,58 @@
+package util;
+
+import model.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Points of a query result, each with the output [lng, lat] the tree cached for it, NaN if none
+ *
+ *  - a node keeps the output coordinates of its sample only, see RAQuadTree.QuadTree.sampleLng,
+ *    other points of a result are inverse projected when the message is built
+ *  - only appended to, the coordinates follow the order the points were added in
+ */
+public class SampleList extends ArrayList<Point> {
+
+    private float[] lngLats = new float[64];
+
+    public boolean add(Point point, float lng, float lat) {
+        int i = size();
+        if (2 * i + 2 > lngLats.length) {
+            lngLats = Arrays.copyOf(lngLats, 2 * lngLats.length);
+        }
+        lngLats[2 * i] = lng;
+        lngLats[2 * i + 1] = lat;
+        return super.add(point);
+    }
+
+    @Override
+    public boolean add(Point point) {
+        return add(point, Float.NaN, Float.NaN);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Point> points) {
+        if (points instanceof SampleList) {
+            SampleList samples = (SampleList) points;
+            for (int i = 0; i < samples.size(); i ++) {
+                add(samples.get(i), samples.getLng(i), samples.getLat(i));
+            }
+        }
+        else {
+            for (Point point: points) {
+                add(point);
+            }
+        }
+        return !points.isEmpty();
+    }
+
+    public float getLng(int i) {
+        return lngLats[2 * i];
+    }
+
+    public float getLat(int i) {
+        return lngLats[2 * i + 1];
+    }
+}
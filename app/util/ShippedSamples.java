@@ -0,0 +1,165 @@
+package util;
+
+import model.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples of one algorithm the client of one connection holds, to respond a query by delta
+ *
+ *  - an open addressing hash table of the points of the last result shipped, by coordinates
+ *  - points on the same coordinates are drawn the same, so a result is shipped without duplicates
+ *  - until a full result is shipped, what the client holds is unknown
+ *  - every result is shipped as a delta message tagged with the key, so the client merges it
+ *    into the samples of the key the server answered for, not of whatever key it queries by then
+ *  - not thread safe, the agent uses it by at most one query of its key at a time
+ */
+public class ShippedSamples {
+
+    // load factor of the hash table is at most 1/2
+    static int MIN_CAPACITY = 16;
+
+    String key;
+    Point[] table; // null - unknown what the client holds
+    int size;
+    long shipments; // number of results built by answer()
+
+    /**
+     * @param _key - key of the algorithm the samples belong to, echoed in each message
+     */
+    public ShippedSamples(String _key) {
+        this.key = _key;
+        this.table = null;
+        this.size = 0;
+        this.shipments = 0;
+    }
+
+    /**
+     * the client will hold something else than the last result shipped, e.g. a full result built elsewhere
+     */
+    public void reset() {
+        this.table = null;
+        this.size = 0;
+    }
+
+    /**
+     * build the result message of given samples and remember them as shipped,
+     *
+     *  - a delta message (DeltaMessageBuilder) against the last result shipped,
+     *  - or a full one (a delta message with full = 1) if the last result is unknown or the delta is not smaller
+     *
+     * @param samples - result of a query, in spherical mercator
+     * @return - byte[] result message (including preserved HEADER_SIZE header)
+     */
+    public byte[] answer(List<Point> samples) {
+        Point[] last = this.table;
+        boolean[] kept = last == null? null: new boolean[last.length];
+
+        Point[] next = new Point[capacityFor(samples.size())];
+        List<Point> distinct = new ArrayList<>(samples.size());
+        List<Point> additions = new ArrayList<>();
+        for (Point point: samples) {
+            if (!insert(next, point)) {
+                continue;
+            }
+            distinct.add(point);
+            int slot = last == null? -1: find(last, point);
+            if (slot < 0) {
+                additions.add(point);
+            }
+            else {
+                kept[slot] = true;
+            }
+        }
+
+        List<Point> removals = new ArrayList<>();
+        if (last != null) {
+            for (int i = 0; i < last.length; i ++) {
+                if (last[i] != null && !kept[i]) {
+                    removals.add(last[i]);
+                }
+            }
+        }
+
+        byte[] message;
+        if (last == null || additions.size() + removals.size() >= distinct.size()) {
+            DeltaMessageBuilder messageBuilder = new DeltaMessageBuilder(this.key, true, distinct.size(), 0);
+            for (Point point: distinct) {
+                messageBuilder.add(point);
+            }
+            message = messageBuilder.getBuffer();
+        }
+        else {
+            DeltaMessageBuilder messageBuilder = new DeltaMessageBuilder(this.key, false, additions.size(), removals.size());
+            for (Point point: additions) {
+                messageBuilder.add(point);
+            }
+            for (Point point: removals) {
+                messageBuilder.add(point);
+            }
+            message = messageBuilder.getBuffer();
+        }
+
+        this.table = next;
+        this.size = distinct.size();
+        this.shipments ++;
+        return message;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public long shipments() {
+        return this.shipments;
+    }
+
+    static int capacityFor(int n) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * n) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    static int hash(Point point) {
+        long h = Double.doubleToLongBits(point.getX()) * 31 + Double.doubleToLongBits(point.getY());
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+
+    static boolean same(Point a, Point b) {
+        return a.getX() == b.getX() && a.getY() == b.getY();
+    }
+
+    /**
+     * @return - slot of the point on the same coordinates, -1 if none
+     */
+    static int find(Point[] _table, Point point) {
+        int mask = _table.length - 1;
+        for (int i = hash(point) & mask; _table[i] != null; i = (i + 1) & mask) {
+            if (same(_table[i], point)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return - false if a point on the same coordinates is already in the table
+     */
+    static boolean insert(Point[] _table, Point point) {
+        int mask = _table.length - 1;
+        int i = hash(point) & mask;
+        for (; _table[i] != null; i = (i + 1) & mask) {
+            if (same(_table[i], point)) {
+                return false;
+            }
+        }
+        _table[i] = point;
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package util;
+
+import model.Point;
+import model.TaggedPoint;
+import model.TimedPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded synthetic point source
+ *
+ *  - points are Gaussian clusters over real city centroids (Zipf weighted) plus 5% background noise
+ *  - every day of [start, end] gets size / days points with timestamps uniformly inside that day,
+ *    and each day is generated from its own seed,
+ *    so any time slicing of the same source returns exactly the same points
+ *  - a keyword is mixed into the seed, "%" means all points
+ *  - tagged points are all points, each with 1 ~ 3 keywords "k0" ~ "k[VOCABULARY_SIZE - 1]" (Zipf distributed),
+ *    seeded by the point itself
+ */
+public class SyntheticPointSource implements IPointSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticPointSource.class);
+
+    static final long DAY = 24L * 3600 * 1000;
+    static final int VOCABULARY_SIZE = 1000;
+
+    // [lng, lat] of a few big cities, roughly ordered by tweet volume
+    public static final double[][] CITIES = {
+            {-74.006, 40.713}, {-118.244, 34.052}, {-87.630, 41.878}, {-95.370, 29.760}, {-0.128, 51.507},
+            {-112.074, 33.448}, {-75.165, 39.953}, {-98.494, 29.424}, {-117.161, 32.716}, {-96.797, 32.777},
+            {-122.419, 37.775}, {-77.037, 38.907}, {-84.388, 33.749}, {-80.192, 25.762}, {-71.059, 42.360},
+            {-122.332, 47.606}, {-104.990, 39.739}, {-79.383, 43.653}, {-99.133, 19.433}, {-46.633, -23.551},
+            {2.352, 48.857}, {139.692, 35.690}, {100.502, 13.756}, {106.845, -6.208}, {-58.382, -34.604},
+            {28.978, 41.008}, {103.820, 1.352}, {151.209, -33.869}, {77.209, 28.614}, {3.379, 6.524}
+    };
+    // cumulative Zipf weights of CITIES, city k gets weight 1 / (k + 1)
+    static final double[] CUMULATIVE_WEIGHTS = new double[CITIES.length];
+    static {
+        double sum = 0.0;
+        for (int k = 0; k < CITIES.length; k ++) {
+            sum += 1.0 / (k + 1);
+            CUMULATIVE_WEIGHTS[k] = sum;
+        }
+    }
+
+    long seed;
+    long start; // first day of the data, epoch milliseconds
+    long days;
+    int pointsPerDay;
+
+    /**
+     * @param size - total number of points in [start, end]
+     * @param seed
+     * @param start
+     * @param end
+     */
+    public SyntheticPointSource(long size, long seed, Date start, Date end) {
+        this.seed = seed;
+        this.start = start.getTime();
+        this.days = Math.max(1, (end.getTime() - start.getTime() + DAY - 1) / DAY);
+        this.pointsPerDay = (int) Math.max(1, size / days);
+        logger.info("[SyntheticPointSource] {} points per day for {} days, seed = {}.", pointsPerDay, days, seed);
+    }
+
+    @Override
+    public List<Point> queryPointsForKeyword(String keyword) {
+        return generate(keyword, start, start + days * DAY, null);
+    }
+
+    @Override
+    public List<Point> queryPointsForKeywordAndTime(String keyword, Date sd, Date ed) {
+        return generate(keyword, sd.getTime(), ed.getTime(), null);
+    }
+
+    @Override
+    public List<Point> queryPointsForTime(Date sd, Date ed) {
+        return generate("%", sd.getTime(), ed.getTime(), null);
+    }
+
+    @Override
+    public List<Point> queryTaggedPointsForTime(Date sd, Date ed) {
+        List<Point> points = generate("%", sd.getTime(), ed.getTime(), null);
+        List<Point> result = new ArrayList<>(points.size());
+        for (Point point: points) {
+            long time = ((TimedPoint) point).getTime();
+            Random random = new Random(seed * 31 + time * 31 + Double.doubleToLongBits(point.getX()));
+            String[] keywords = new String[1 + random.nextInt(3)];
+            for (int i = 0; i < keywords.length; i ++) {
+                // rank r is picked with probability ~ 1 / (r + 1)
+                int rank = (int) Math.pow(VOCABULARY_SIZE + 1, random.nextDouble()) - 1;
+                keywords[i] = "k" + Math.min(rank, VOCABULARY_SIZE - 1);
+            }
+            result.add(new TaggedPoint(point.getX(), point.getY(), time, keywords));
+        }
+        return result;
+    }
+
+    /**
+     * generate points with timestamps in [sd, ed), only days within [start, end] have points
+     *
+     * @param keyword
+     * @param sd
+     * @param ed
+     * @param times - if not null, the timestamp of each returned point is appended
+     * @return
+     */
+    public List<Point> generate(String keyword, long sd, long ed, List<Long> times) {
+        long firstDay = Math.max(0, Math.floorDiv(sd - start, DAY));
+        long lastDay = Math.min(days, Math.floorDiv(ed - start + DAY - 1, DAY)); // exclusive
+        long keywordSeed = keyword == null || keyword.equals("%") ? 0 : keyword.hashCode();
+        List<Point> result = new ArrayList<>();
+        for (long day = firstDay; day < lastDay; day ++) {
+            Random random = new Random(seed * 31 * 31 + keywordSeed * 31 + day);
+            long dayStart = start + day * DAY;
+            for (int i = 0; i < pointsPerDay; i ++) {
+                double lng, lat;
+                // background noise
+                if (random.nextDouble() < 0.05) {
+                    lng = -180 + 360 * random.nextDouble();
+                    lat = -60 + 130 * random.nextDouble();
+                }
+                else {
+                    double r = random.nextDouble() * CUMULATIVE_WEIGHTS[CITIES.length - 1];
+                    int k = 0;
+                    while (CUMULATIVE_WEIGHTS[k] < r) k ++;
+                    // metro area core plus a wider suburban ring
+                    double sigma = random.nextDouble() < 0.7 ? 0.1 : 0.6;
+                    lng = Math.max(-180, Math.min(179.999999, CITIES[k][0] + sigma * random.nextGaussian()));
+                    lat = Math.max(-85, Math.min(85, CITIES[k][1] + sigma * random.nextGaussian()));
+                }
+                long time = dayStart + (long) (random.nextDouble() * DAY);
+                if (time < sd || time >= ed) continue;
+                result.add(new TimedPoint(lng, lat, time));
+                if (times != null) times.add(time);
+            }
+        }
+        return result;
+    }
+}
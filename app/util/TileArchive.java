@@ -0,0 +1,287 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Tile pyramid of one algorithm in a single file, written once and served from a read-only memory map
+ *
+ *  - tiles are z/x/y slippy map tiles of levels [0, maxZoom], x to the east and y to the south
+ *  - the payload of a tile is a result message of the algorithm for the tile bbox (including HEADER_SIZE header),
+ *    empty if the tile has no points
+ *
+ * ---- header ----
+ *    magic     version   maxZoom  indexOffset
+ * | 8 BYTES | 4 BYTES | 4 BYTES | 8 BYTES |
+ * ---- tile payloads ----
+ * | ... |
+ * ---- index ----
+ *  one entry per tile of level 0, 1, ... maxZoom, x-major within a level
+ *    offset    length    crc32
+ * | 8 BYTES | 4 BYTES | 4 BYTES | ...
+ */
+public class TileArchive {
+
+    static final long MAGIC = 0x52415154494C4553L; // "RAQTILES"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8 + 4 + 4 + 8;
+    static final int ENTRY_SIZE = 8 + 4 + 4;
+
+    // archives opened by get(), dropped by Writer.finish() replacing the file, or reopened once the file changes,
+    // a dropped archive is unmapped by the GC once no request reads it any more
+    static final Map<String, TileArchive> archives = new ConcurrentHashMap<>();
+
+    String fileName;
+    long lastModified;
+    long length;
+    int maxZoom;
+    long indexOffset;
+    MappedByteBuffer buffer;
+
+    /**
+     * @param datasetName
+     * @param key - key of the algorithm
+     * @return - name of the tile archive file of the algorithm
+     */
+    public static String fileName(String datasetName, String key) {
+        return datasetName + "-" + key + ".tiles";
+    }
+
+    /**
+     * number of tiles of levels [0, z)
+     */
+    static long levelStart(int z) {
+        return ((1L << (2 * z)) - 1) / 3;
+    }
+
+    static long tileIndex(int z, int x, int y) {
+        return levelStart(z) + ((long) x << z) + y;
+    }
+
+    /**
+     * @param z
+     * @param x
+     * @param y
+     * @return - [lng0, lat0, lng1, lat1] bbox of the tile
+     */
+    public static double[] bbox(int z, int x, int y) {
+        double tiles = 1L << z;
+        return new double[]{
+                Mercator.xLng(x / tiles), Mercator.yLat((y + 1) / tiles),
+                Mercator.xLng((x + 1) / tiles), Mercator.yLat(y / tiles)
+        };
+    }
+
+    /**
+     * create a writer of a new tile archive,
+     * the archive replaces the file only once finished
+     *
+     * @param fileName
+     * @param maxZoom
+     * @return
+     * @throws IOException
+     */
+    public static Writer create(String fileName, int maxZoom) throws IOException {
+        return new Writer(fileName, maxZoom);
+    }
+
+    /**
+     * open the tile archive of given file, shared by the callers until the file is exported again
+     *
+     *  - an export of this process drops the archive on finish(),
+     *    an export of another process is noticed by the modified time or the length of the file
+     *
+     * @param fileName
+     * @return - null if there is no such file
+     * @throws IOException
+     */
+    public static TileArchive get(String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            archives.remove(fileName);
+            return null;
+        }
+        TileArchive archive = archives.get(fileName);
+        if (archive == null || archive.lastModified != file.lastModified() || archive.length != file.length()) {
+            archive = new TileArchive(fileName);
+            archives.put(fileName, archive);
+        }
+        return archive;
+    }
+
+    TileArchive(String fileName) throws IOException {
+        this.fileName = fileName;
+        this.lastModified = new File(fileName).lastModified();
+        this.length = new File(fileName).length();
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("tile archive " + fileName + " is larger than 2 GB, export it with less tiles.");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (this.buffer.getLong(0) != MAGIC || this.buffer.getInt(8) != VERSION) {
+            throw new IOException(fileName + " is not a tile archive of version " + VERSION + ".");
+        }
+        this.maxZoom = this.buffer.getInt(12);
+        this.indexOffset = this.buffer.getLong(16);
+        MyLogger.info(TileArchive.class, "opened tile archive " + fileName + " of max zoom " + this.maxZoom + ".");
+    }
+
+    public int getMaxZoom() {
+        return this.maxZoom;
+    }
+
+    boolean contains(int z, int x, int y) {
+        return z >= 0 && z <= this.maxZoom && x >= 0 && y >= 0 && x < (1 << z) && y < (1 << z);
+    }
+
+    int entry(int z, int x, int y) {
+        return (int) (this.indexOffset + tileIndex(z, x, y) * ENTRY_SIZE);
+    }
+
+    /**
+     * @param z
+     * @param x
+     * @param y
+     * @return - payload of the tile, empty if the tile has no points, null if the tile is not in this archive
+     */
+    public byte[] tile(int z, int x, int y) {
+        if (!contains(z, x, y)) {
+            return null;
+        }
+        int entry = entry(z, x, y);
+        long offset = this.buffer.getLong(entry);
+        int length = this.buffer.getInt(entry + 8);
+        byte[] payload = new byte[length];
+        // absolute reads on a duplicate, the mapped buffer is shared by concurrent requests
+        ByteBuffer view = this.buffer.duplicate();
+        view.position((int) offset);
+        view.get(payload);
+        return payload;
+    }
+
+    /**
+     * @param z
+     * @param x
+     * @param y
+     * @return - entity tag of the tile payload, null if the tile is not in this archive
+     */
+    public String etag(int z, int x, int y) {
+        if (!contains(z, x, y)) {
+            return null;
+        }
+        int entry = entry(z, x, y);
+        return String.format("\"%08x-%x\"", this.buffer.getInt(entry + 12), this.buffer.getInt(entry + 8));
+    }
+
+    /**
+     * appends tile payloads in any order, then writes the index on finish()
+     */
+    public static class Writer {
+        String fileName;
+        File tempFile;
+        RandomAccessFile file;
+        int maxZoom;
+        long[] offsets;
+        int[] lengths;
+        int[] crcs;
+        long position;
+        int tiles;
+
+        Writer(String fileName, int maxZoom) throws IOException {
+            if (maxZoom < 0 || levelStart(maxZoom + 1) > Integer.MAX_VALUE) {
+                throw new IOException("max zoom " + maxZoom + " of tile archive is out of range.");
+            }
+            this.fileName = fileName;
+            this.tempFile = new File(fileName + ".tmp");
+            this.file = new RandomAccessFile(this.tempFile, "rw");
+            this.file.setLength(0);
+            this.maxZoom = maxZoom;
+            int count = (int) levelStart(maxZoom + 1);
+            this.offsets = new long[count];
+            this.lengths = new int[count];
+            this.crcs = new int[count];
+            this.position = HEADER_SIZE;
+            this.tiles = 0;
+            this.file.seek(this.position);
+        }
+
+        public int getMaxZoom() {
+            return this.maxZoom;
+        }
+
+        /**
+         * number of non-empty tiles put so far
+         */
+        public int getTiles() {
+            return this.tiles;
+        }
+
+        public long getBytes() {
+            return this.position;
+        }
+
+        public void put(int z, int x, int y, byte[] payload) throws IOException {
+            int index = (int) tileIndex(z, x, y);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            this.offsets[index] = this.position;
+            this.lengths[index] = payload.length;
+            this.crcs[index] = (int) crc.getValue();
+            this.file.write(payload);
+            this.position += payload.length;
+            if (payload.length > 0) {
+                this.tiles ++;
+            }
+        }
+
+        /**
+         * write the index and header, then replace the archive file
+         */
+        public void finish() throws IOException {
+            ByteBuffer index = ByteBuffer.allocate(ENTRY_SIZE * this.offsets.length);
+            for (int i = 0; i < this.offsets.length; i ++) {
+                index.putLong(this.offsets[i]);
+                index.putInt(this.lengths[i]);
+                index.putInt(this.crcs[i]);
+            }
+            this.file.write(index.array());
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(this.maxZoom);
+            header.putLong(this.position);
+            this.file.seek(0);
+            this.file.write(header.array());
+            this.file.getFD().sync();
+            this.file.close();
+            Files.move(this.tempFile.toPath(), new File(this.fileName).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // the modified time may not tell the new file from the old one within the same second
+            archives.remove(this.fileName);
+        }
+
+        /**
+         * give up writing, the archive file is left as it was
+         */
+        public void abort() {
+            try {
+                this.file.close();
+            } catch (IOException e) {
+                MyLogger.error(TileArchive.class, "closing tile archive " + this.tempFile + " failed!", e);
+            }
+            this.tempFile.delete();
+        }
+    }
+}
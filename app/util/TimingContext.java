@@ -0,0 +1,28 @@
+package util;
+
+/**
+ * Timings of one request,
+ * begin() installs a fresh context on the current thread,
+ * algorithms fill in their parts via current() while answering on the same thread
+ */
+public class TimingContext {
+    private static final ThreadLocal<TimingContext> current = ThreadLocal.withInitial(TimingContext::new);
+
+    public double treeTime; // seconds
+    public double aggregateTime; // seconds
+    public long payloadBytes;
+    public QueryTrace trace; // only set if the algorithm traced the query
+    public int sampleSize = -1; // samples in the result, -1 if not reported by the algorithm
+    public double estimatedError = -1.0; // error of the result against expanding its nodes further, -1 if not reported
+    public boolean deadlineReached; // the search stopped at the latency budget of the query
+
+    public static TimingContext begin() {
+        TimingContext context = new TimingContext();
+        current.set(context);
+        return context;
+    }
+
+    public static TimingContext current() {
+        return current.get();
+    }
+}
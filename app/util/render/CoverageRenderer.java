@@ -0,0 +1,145 @@
+package util.render;
+
+import javafx.util.Pair;
+import model.Point;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact 1-bit coverage rendering with the same footprint as DeckGLRenderer
+ *
+ *  - a pixel is covered once any point's Deck.GL circle reaches it (alpha > 0),
+ *    blending of colors is ignored, so one pixel only costs 1 bit instead of 3 bytes
+ */
+public class CoverageRenderer implements IRenderer {
+
+    int radiusInPixels;
+
+    public CoverageRenderer(int radiusInPixels) {
+        this.radiusInPixels = radiusInPixels;
+        System.out.println("[CoverageRenderer] initializing with { radiusInPixels: " + radiusInPixels + "}.");
+    }
+
+    /**
+     * Create a coverage rendering with all bits 0
+     *
+     *  - Use 1-D packed bit array to simulate a 2-D bitmap (0 or 1)
+     *    suppose 2-D bitmap has dimension lengths: side * side
+     *    [i][j] = bit (i * side + j) = byte (i * side + j) / 8, bit (i * side + j) % 8
+     *
+     * @param _resolution
+     * @return
+     */
+    @Override
+    public byte[] createRendering(int _resolution) {
+        int side = realResolution(_resolution);
+        return new byte[(side * side + 7) / 8];
+    }
+
+    /**
+     * Render a new point onto the given coverage rendering
+     *
+     * @param rendering - Use 1-D packed bit array to simulate a 2-D bitmap (0 or 1)
+     *                    suppose 2-D bitmap has dimension lengths: side * side
+     *                    [i][j] = bit (i * side + j)
+     * @param _cX
+     * @param _cY
+     * @param _halfDimension
+     * @param _resolution
+     * @param point
+     * @return boolean - if render the point on given rendering does not change the result, return false; else return true;
+     */
+    @Override
+    public boolean render(byte[] rendering, double _cX, double _cY, double _halfDimension, int _resolution, Point point) {
+        int side = realResolution(_resolution);
+        boolean isDifferent = false;
+        double pixelLength = 2 * _halfDimension / (double)_resolution;
+        // boundary of the rendering
+        double left = _cX - _halfDimension - (radiusInPixels + 1) * pixelLength; // may be overflow to negative
+        double top = _cY - _halfDimension - (radiusInPixels + 1) * pixelLength; // may be overflow to negative
+        // (1) find the circumscribed square of the point
+        int csLeftPixel = (int)((point.getX() - radiusInPixels * pixelLength - left) / pixelLength);
+        int csRightPixel = (int)((point.getX() + radiusInPixels * pixelLength - left) / pixelLength);
+        int csTopPixel = (int)((point.getY() - radiusInPixels * pixelLength - top) / pixelLength);
+        int csBottomPixel = (int)((point.getY() + radiusInPixels * pixelLength - top) / pixelLength);
+        // (2) traverse the pixels within the circumscribed square
+        for (int i = csLeftPixel; i <= csRightPixel; i ++) {
+            for (int j = csTopPixel; j <= csBottomPixel; j ++) {
+                if (!covers(left, top, pixelLength, i, j, point)) continue;
+                int bit = i * side + j;
+                byte mask = (byte) (1 << (bit & 7));
+                if ((rendering[bit >> 3] & mask) == 0) {
+                    isDifferent = true;
+                    rendering[bit >> 3] |= mask;
+                }
+            }
+        }
+
+        return isDifferent;
+    }
+
+    /**
+     * Render a new point onto the given coverage rendering
+     *
+     * @param rendering - a list of pixels [i, j]
+     * @param _cX
+     * @param _cY
+     * @param _halfDimension
+     * @param _resolution
+     * @param point
+     * @return boolean - if render the point on given rendering does not change the result, return false; else return true;
+     */
+    @Override
+    public boolean render(List<Pixel> rendering, double _cX, double _cY, double _halfDimension, int _resolution, Point point) {
+        // build hash map for rendering pixels
+        Map<Pair<Integer, Integer>, Pixel> renderingMap = new HashMap<>();
+        for (Pixel pixel: rendering) {
+            renderingMap.put(new Pair<>(pixel.i, pixel.j), pixel);
+        }
+
+        boolean isDifferent = false;
+        double pixelLength = 2 * _halfDimension / (double)_resolution;
+        // boundary of the rendering
+        double left = _cX - _halfDimension - (radiusInPixels + 1) * pixelLength; // may be overflow to negative
+        double top = _cY - _halfDimension - (radiusInPixels + 1) * pixelLength; // may be overflow to negative
+        // (1) find the circumscribed square of the point
+        int csLeftPixel = (int)((point.getX() - radiusInPixels * pixelLength - left) / pixelLength);
+        int csRightPixel = (int)((point.getX() + radiusInPixels * pixelLength - left) / pixelLength);
+        int csTopPixel = (int)((point.getY() - radiusInPixels * pixelLength - top) / pixelLength);
+        int csBottomPixel = (int)((point.getY() + radiusInPixels * pixelLength - top) / pixelLength);
+        // (2) traverse the pixels within the circumscribed square
+        for (int i = csLeftPixel; i <= csRightPixel; i ++) {
+            for (int j = csTopPixel; j <= csBottomPixel; j ++) {
+                if (!covers(left, top, pixelLength, i, j, point)) continue;
+                Pair<Integer, Integer> pixelIndex = new Pair<>(i, j);
+                if (!renderingMap.containsKey(pixelIndex)) {
+                    isDifferent = true;
+                    Pixel pixel = new Pixel(i, j);
+                    renderingMap.put(pixelIndex, pixel);
+                    rendering.add(pixel);
+                }
+            }
+        }
+
+        return isDifferent;
+    }
+
+    @Override
+    public int realResolution(int _resolution) {
+        return _resolution + 2 * (radiusInPixels + 1);
+    }
+
+    /**
+     * same coverage test as Deck.GL's smooth edge: alpha > 0 iff distance < radius + SMOOTH_EDGE_RADIUS
+     */
+    private boolean covers(double left, double top, double pixelLength, int i, int j, Point point) {
+        double px = left + (i + 0.5) * pixelLength;
+        double py = top + (j + 0.5) * pixelLength;
+        double dx = px - point.getX();
+        double dy = py - point.getY();
+        double distanceToCenter = Math.sqrt(dx * dx + dy * dy) / pixelLength;
+        return distanceToCenter < radiusInPixels + DeckGLRenderer.SMOOTH_EDGE_RADIUS;
+    }
+}
@@ -0,0 +1,79 @@
+package benchmark;
+
+import algorithms.*;
+import com.typesafe.config.ConfigFactory;
+import model.Query;
+import util.Constants;
+import util.Mercator;
+
+import java.util.Random;
+
+public class Algorithms {
+
+    public static final int RES_X = 1920;
+    public static final int RES_Y = 978;
+
+    private static boolean initialized = false;
+
+    /**
+     * initialize constants from application.conf the same way Agent does
+     */
+    public static synchronized void init() {
+        if (initialized) return;
+        Constants.init(ConfigFactory.load());
+        initialized = true;
+    }
+
+    public static IAlgorithm create(String algorithm) {
+        init();
+        switch (algorithm.toLowerCase()) {
+            case "de":
+                return new DataExplorer();
+            case "da":
+                return new DataAggregator("gl-pixel");
+            case "qt":
+                return new QuadTreeAggregator(RES_X, RES_Y);
+            case "gqt":
+                return new GQuadTree();
+            case "raqt":
+                return new RAQuadTree();
+            case "raqtdv2":
+                return new RAQuadTreeDistanceV2();
+            default:
+                throw new IllegalArgumentException("unknown algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * Build queries of a RES_X x RES_Y viewport at given zoom level,
+     * centered at random points of the dataset (so that viewports are never empty)
+     */
+    public static Query[] queries(double[][] dataset, int zoom, int sampleSize, int count, long seed) {
+        Random random = new Random(seed);
+        double pixelScale = 1.0 / 256 / Math.pow(2, zoom);
+        double halfWidth = Math.min(0.5, RES_X * pixelScale / 2);
+        double halfHeight = Math.min(0.5, RES_Y * pixelScale / 2);
+        Query[] queries = new Query[count];
+        for (int i = 0; i < count; i ++) {
+            int center = random.nextInt(dataset[0].length);
+            double cX = Mercator.lngX(dataset[0][center]);
+            double cY = Mercator.latY(dataset[1][center]);
+            cX = Math.max(halfWidth, Math.min(1 - halfWidth, cX));
+            cY = Math.max(halfHeight, Math.min(1 - halfHeight, cY));
+            Query query = new Query();
+            query.key = "benchmark";
+            query.zoom = zoom;
+            // [lng0, lat0, lng1, lat1], lat0 is the bottom of the viewport
+            query.bbox = new double[] {
+                    Mercator.xLng(cX - halfWidth), Mercator.yLat(cY + halfHeight),
+                    Mercator.xLng(cX + halfWidth), Mercator.yLat(cY - halfHeight)
+            };
+            query.resX = RES_X;
+            query.resY = RES_Y;
+            query.aggregator = "gl-pixel";
+            query.sampleSize = sampleSize;
+            queries[i] = query;
+        }
+        return queries;
+    }
+}
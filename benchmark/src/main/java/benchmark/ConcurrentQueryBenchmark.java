@@ -0,0 +1,75 @@
+package benchmark;
+
+import algorithms.IAlgorithm;
+import model.Query;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * answerQuery throughput of many threads sharing one finished IAlgorithm
+ *
+ *   sbt "benchmark/jmh:run -t 1,2,4,8 -p algorithm=raqt .*ConcurrentQueryBenchmark.*"
+ *
+ * The query path of these algorithms keeps all per-query state in per-query objects, so readers need no lock.
+ * Compare the throughput by the number of threads (-t) to see how queries scale across cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ConcurrentQueryBenchmark {
+
+    static final int QUERIES = 64;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"uniform", "clustered", "real"})
+    public String distribution;
+
+    @Param({"raqt", "raqtdv2", "gqt", "qt"})
+    public String algorithm;
+
+    @Param({"2", "6", "10"})
+    public int zoom;
+
+    @Param({"10000", "100000"})
+    public int sampleSize;
+
+    IAlgorithm instance;
+    Query[] queries;
+
+    /**
+     * queries of each thread, starting at different offsets so threads do not ask the same query at once
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(ThreadParams threads) {
+            next = threads.getThreadIndex() * QUERIES / Math.max(1, threads.getThreadCount());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        double[][] dataset = SyntheticDatasets.generate(distribution, size, 42);
+        instance = Algorithms.create(algorithm);
+        instance.load(SyntheticDatasets.toPoints(dataset));
+        instance.finishLoad();
+        queries = Algorithms.queries(dataset, zoom, sampleSize, QUERIES, 7);
+    }
+
+    @Benchmark
+    public byte[] answerQuery(Cursor cursor) {
+        Query query = queries[cursor.next];
+        cursor.next = (cursor.next + 1) % QUERIES;
+        return instance.answerQuery(query);
+    }
+}
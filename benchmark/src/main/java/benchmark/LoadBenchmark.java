@@ -0,0 +1,88 @@
+package benchmark;
+
+import algorithms.IAlgorithm;
+import model.Point;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load (and finish loading) a whole synthetic dataset into an IAlgorithm
+ *
+ *   sbt "benchmark/jmh:run -prof gc -p algorithm=raqt,gqt -p size=1000000 .*LoadBenchmark.*"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class LoadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"100000", "1000000"})
+        public int size;
+
+        @Param({"uniform", "clustered", "real"})
+        public String distribution;
+
+        @Param({"raqt", "raqtdv2", "gqt", "qt", "da", "de"})
+        public String algorithm;
+
+        double[][] dataset;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            dataset = SyntheticDatasets.generate(distribution, size, 42);
+        }
+    }
+
+    /**
+     * a fresh algorithm and fresh Point instances for every invocation
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+        IAlgorithm algorithm;
+        List<Point> points;
+
+        @Setup(Level.Invocation)
+        public void setup(Dataset dataset) {
+            algorithm = Algorithms.create(dataset.algorithm);
+            points = SyntheticDatasets.toPoints(dataset.dataset);
+        }
+    }
+
+    /**
+     * an algorithm with the whole dataset loaded but not finished yet
+     */
+    @State(Scope.Thread)
+    public static class Loaded {
+        IAlgorithm algorithm;
+
+        @Setup(Level.Invocation)
+        public void setup(Dataset dataset) {
+            algorithm = Algorithms.create(dataset.algorithm);
+            algorithm.load(SyntheticDatasets.toPoints(dataset.dataset));
+        }
+    }
+
+    @Benchmark
+    public IAlgorithm load(Fresh fresh) {
+        fresh.algorithm.load(fresh.points);
+        return fresh.algorithm;
+    }
+
+    @Benchmark
+    public IAlgorithm finishLoad(Loaded loaded) {
+        loaded.algorithm.finishLoad();
+        return loaded.algorithm;
+    }
+
+    @Benchmark
+    public IAlgorithm loadAndFinishLoad(Fresh fresh) {
+        fresh.algorithm.load(fresh.points);
+        fresh.algorithm.finishLoad();
+        return fresh.algorithm;
+    }
+}
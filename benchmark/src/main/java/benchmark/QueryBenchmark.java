@@ -0,0 +1,63 @@
+package benchmark;
+
+import algorithms.IAlgorithm;
+import model.Query;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * answerQuery throughput and latency percentiles on a finished IAlgorithm
+ *
+ *   sbt "benchmark/jmh:run -prof gc -p algorithm=raqt -p zoom=4,10 .*QueryBenchmark.*"
+ *
+ * Mode.SampleTime reports p50 / p90 / p99 / p99.9, -prof gc reports the allocation rate.
+ * This measures one reader at a time, ConcurrentQueryBenchmark measures many readers sharing one tree.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Threads(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    static final int QUERIES = 64;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"uniform", "clustered", "real"})
+    public String distribution;
+
+    @Param({"raqt", "raqtdv2", "gqt", "qt", "da", "de"})
+    public String algorithm;
+
+    @Param({"2", "6", "10"})
+    public int zoom;
+
+    @Param({"10000", "100000"})
+    public int sampleSize;
+
+    IAlgorithm instance;
+    Query[] queries;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        double[][] dataset = SyntheticDatasets.generate(distribution, size, 42);
+        instance = Algorithms.create(algorithm);
+        instance.load(SyntheticDatasets.toPoints(dataset));
+        instance.finishLoad();
+        queries = Algorithms.queries(dataset, zoom, sampleSize, QUERIES, 7);
+        next = 0;
+    }
+
+    @Benchmark
+    public byte[] answerQuery() {
+        Query query = queries[next];
+        next = (next + 1) % QUERIES;
+        return instance.answerQuery(query);
+    }
+}
@@ -0,0 +1,117 @@
+package benchmark;
+
+import model.Point;
+import util.SyntheticPointSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded synthetic point sets for benchmarks (no PostgreSQL)
+ *
+ *  - uniform   - longitude / latitude uniformly distributed over the data domain
+ *  - clustered - 64 Gaussian clusters with random centers
+ *  - real      - Gaussian clusters over real city centroids (SyntheticPointSource.CITIES), Zipf weighted, with 5% background noise
+ */
+public class SyntheticDatasets {
+
+    public static double[][] generate(String distribution, int size, long seed) {
+        switch (distribution.toLowerCase()) {
+            case "clustered":
+                return clustered(size, 64, 2.0, seed);
+            case "real":
+                return realLike(size, seed);
+            case "uniform":
+            default:
+                return uniform(size, seed);
+        }
+    }
+
+    /**
+     * @return [lngs, lats]
+     */
+    public static double[][] uniform(int size, long seed) {
+        Random random = new Random(seed);
+        double[] lngs = new double[size];
+        double[] lats = new double[size];
+        for (int i = 0; i < size; i ++) {
+            lngs[i] = -180 + 360 * random.nextDouble();
+            lats[i] = -85 + 170 * random.nextDouble();
+        }
+        return new double[][] {lngs, lats};
+    }
+
+    /**
+     * @return [lngs, lats]
+     */
+    public static double[][] clustered(int size, int clusters, double sigma, long seed) {
+        Random random = new Random(seed);
+        double[][] centers = new double[clusters][2];
+        for (int c = 0; c < clusters; c ++) {
+            centers[c][0] = -180 + 360 * random.nextDouble();
+            centers[c][1] = -60 + 130 * random.nextDouble();
+        }
+        double[] lngs = new double[size];
+        double[] lats = new double[size];
+        for (int i = 0; i < size; i ++) {
+            double[] center = centers[random.nextInt(clusters)];
+            lngs[i] = clampLng(center[0] + sigma * random.nextGaussian());
+            lats[i] = clampLat(center[1] + sigma * random.nextGaussian());
+        }
+        return new double[][] {lngs, lats};
+    }
+
+    /**
+     * @return [lngs, lats]
+     */
+    public static double[][] realLike(int size, long seed) {
+        Random random = new Random(seed);
+        // Zipf weights: city k gets weight 1 / (k + 1)
+        double[] cumulative = new double[SyntheticPointSource.CITIES.length];
+        double sum = 0.0;
+        for (int k = 0; k < SyntheticPointSource.CITIES.length; k ++) {
+            sum += 1.0 / (k + 1);
+            cumulative[k] = sum;
+        }
+        double[] lngs = new double[size];
+        double[] lats = new double[size];
+        for (int i = 0; i < size; i ++) {
+            // background noise
+            if (random.nextDouble() < 0.05) {
+                lngs[i] = -180 + 360 * random.nextDouble();
+                lats[i] = -60 + 130 * random.nextDouble();
+                continue;
+            }
+            double r = random.nextDouble() * sum;
+            int k = 0;
+            while (cumulative[k] < r) k ++;
+            // metro area core plus a wider suburban ring
+            double sigma = random.nextDouble() < 0.7 ? 0.1 : 0.6;
+            lngs[i] = clampLng(SyntheticPointSource.CITIES[k][0] + sigma * random.nextGaussian());
+            lats[i] = clampLat(SyntheticPointSource.CITIES[k][1] + sigma * random.nextGaussian());
+        }
+        return new double[][] {lngs, lats};
+    }
+
+    /**
+     * build fresh Point instances, IAlgorithm.load() projects points in place
+     */
+    public static List<Point> toPoints(double[][] dataset) {
+        double[] lngs = dataset[0];
+        double[] lats = dataset[1];
+        List<Point> points = new ArrayList<>(lngs.length);
+        for (int i = 0; i < lngs.length; i ++) {
+            points.add(new Point(lngs[i], lats[i]));
+        }
+        return points;
+    }
+
+    static double clampLng(double lng) {
+        return Math.max(-180, Math.min(179.999999, lng));
+    }
+
+    static double clampLat(double lat) {
+        return Math.max(-85, Math.min(85, lat));
+    }
+}
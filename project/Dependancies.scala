@@ -18,6 +18,10 @@ object Dependencies {
     // PostgreSQL
     "org.postgresql" % "postgresql" % "42.1.4",
     // Smile ML Toolkit
-    "com.github.haifengl" % "smile-core" % "1.5.3"
+    "com.github.haifengl" % "smile-core" % "1.5.3",
+    // HDR histograms for metrics
+    "org.hdrhistogram" % "HdrHistogram" % "2.1.11",
+    // Roaring bitmaps for per-node keyword sets
+    "org.roaringbitmap" % "RoaringBitmap" % "0.8.6"
   )
 }
@@ -69,6 +69,10 @@ angular.module("clustermap.map", ["leaflet-directive", "clustermap.common"])
       samplePercentage: 100
     };
 
+    // samples of each key the server shipped, delta messages (query.delta) are merged into them
+    //   by the key echoed in the message, the query may have moved on to another key by then
+    $scope.shippedData = {};
+
     $scope.ws = new WebSocket("ws://" + location.host + "/ws");
     $scope.ws.binaryType = 'arraybuffer';
 
@@ -655,8 +659,8 @@ angular.module("clustermap.map", ["leaflet-directive", "clustermap.common"])
 
     $scope.parseBinary = function(binaryData) {
       // ---- header ----
-      //  progress  totalTime  treeTime  aggTime   msgType
-      // | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES |
+      //  progress  totalTime  treeTime  aggTime   msgType  sampleSize  error
+      // | 4 BYTES | 8 BYTES | 8 BYTES | 8 BYTES | 4 BYTES | 4 BYTES | 8 BYTES |
       let dv = new DataView(binaryData);
       let response = {};
       let offset = 0; // offset by bytes
@@ -670,7 +674,12 @@ angular.module("clustermap.map", ["leaflet-directive", "clustermap.common"])
       offset = offset + 8;
       response.msgType = dv.getInt32(offset);
       offset = offset + 4;
-      const headerSize = 4 + 8 + 8 + 8 + 4;
+      // -1 if not reported by the algorithm
+      response.sampleSize = dv.getInt32(offset);
+      offset = offset + 4;
+      response.estimatedError = dv.getFloat64(offset);
+      offset = offset + 8;
+      const headerSize = 4 + 8 + 8 + 8 + 4 + 4 + 8;
       // message type = binary
       if (response.msgType == 0) {
         // ---- binary data payload ----
@@ -694,6 +703,66 @@ angular.module("clustermap.map", ["leaflet-directive", "clustermap.common"])
         console.log("size = " + (headerSize + dataLength * recordSize) / (1024.0 * 1024.0) + " MB.");
         return response;
       }
+      // message type = delta
+      else if (response.msgType === 2) {
+        // ---- delta header ----
+        //   full     additions  keyLength  key (UTF-8)
+        // | 4 BYTES | 4 BYTES | 4 BYTES | keyLength BYTES |
+        // ---- delta data payload ----
+        //   added records (lat, lng) x additions, then removed records (lat, lng) till the end
+        // | 8 BYTES | 8 BYTES | ...
+        const full = dv.getInt32(offset) === 1;
+        offset = offset + 4;
+        const additions = dv.getInt32(offset);
+        offset = offset + 4;
+        const keyLength = dv.getInt32(offset);
+        offset = offset + 4;
+        const key = new TextDecoder("utf-8").decode(new Uint8Array(binaryData, offset, keyLength));
+        const deltaHeaderSize = 4 + 4 + 4 + keyLength;
+        const recordSize = 8 + 8;
+        let dataLength = (dv.byteLength - headerSize - deltaHeaderSize) / recordSize;
+        function recordKey(lat, lng) {
+          return lat.toFixed(9) + "," + lng.toFixed(9);
+        }
+        let added = [];
+        let removed = {};
+        for (let i = 0; i < dataLength; i++) {
+          // current record's starting offset
+          offset = headerSize + deltaHeaderSize + recordSize * i;
+          let lat = dv.getFloat64(offset);
+          let lng = dv.getFloat64(offset + 8);
+          if (i < additions) {
+            added.push([lat, lng]);
+          }
+          else {
+            let key = recordKey(lat, lng);
+            removed[key] = (removed[key] || 0) + 1;
+          }
+        }
+        // merge into the samples shipped for the key answered, a full message replaces them
+        let data = [];
+        let shipped = full? []: ($scope.shippedData[key] || []);
+        if (!full && !$scope.shippedData[key]) {
+          console.warn("received delta data for key " + key + " without its samples.");
+        }
+        for (let i = 0; i < shipped.length; i++) {
+          let key = recordKey(shipped[i][0], shipped[i][1]);
+          if (removed[key]) {
+            removed[key] --;
+            continue;
+          }
+          data.push(shipped[i]);
+        }
+        data = data.concat(added);
+        $scope.shippedData[key] = data;
+        response.key = key;
+        response.result = {data: data};
+        console.log("==== websocket received " + (full? "full": "delta") + " data of key " + key + " ====");
+        console.log("+" + additions + " / -" + (dataLength - additions) + " records, " + data.length + " in total.");
+        response.resultSize = dv.byteLength / (1024.0 * 1024.0);
+        console.log("size = " + response.resultSize + " MB.");
+        return response;
+      }
       // message type = bitmap
       else if (response.msgType === 1) {
         // ---- bitmap header ----
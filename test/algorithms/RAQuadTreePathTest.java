@@ -0,0 +1,166 @@
+package algorithms;
+
+import model.Point;
+import util.Morton;
+
+import java.util.*;
+
+import static util.Checks.check;
+import static util.Checks.finish;
+
+/**
+ * RAQuadTree with path compression has to store the same points as the tree without it,
+ * each in the cell its Morton code leads to
+ */
+public class RAQuadTreePathTest {
+
+    static final int MAX_ZOOM = 18;
+
+    static RAQuadTree tree(int _leafBucketSize, boolean _pathCompression) {
+        return new RAQuadTree(new RAQuadTree.Settings(MAX_ZOOM, _leafBucketSize, _pathCompression, 0, 0L, 0L));
+    }
+
+    static long code(Point _point) {
+        return Morton.encode(_point.getX(), _point.getY());
+    }
+
+    /**
+     * two points sharing 20 levels of quadrants compress the path of a leaf at level 3 by 17 levels
+     */
+    static void testCompressPath() {
+        RAQuadTree tree = tree(1, true);
+        double cell = 1.0 / (1 << 20);
+        Point a = new Point(0.3 + cell * 0.25, 0.7 + cell * 0.25);
+        Point b = new Point(0.3 + cell * 0.75, 0.7 + cell * 0.75);
+        int common = Morton.commonLevels(code(a), code(b));
+        check(common >= 20, "commonLevels of points in one level 20 cell = " + common);
+
+        RAQuadTree.QuadTree node = tree.new QuadTree();
+        node.compressPath(new Point[]{a}, code(b), 3);
+        int expected = Math.min(common, tree.highestLevel) - 3;
+        check(node.skip() == expected, "compressPath skip = " + node.skip() + ", expected " + expected);
+        check(node.pathQuadrants() == Morton.quadrants(code(b), 3, expected), "compressPath quadrants");
+
+        // points diverging right below the node leave its path empty
+        Point c = new Point(0.1, 0.1);
+        Point d = new Point(0.9, 0.9);
+        node = tree.new QuadTree();
+        node.compressPath(new Point[]{c}, code(d), 0);
+        check(node.path == 0L, "compressPath of points in different quadrants = " + node.path);
+
+        // identical points are only compressed down to the highest level
+        node = tree.new QuadTree();
+        node.compressPath(new Point[]{a}, code(a), 0);
+        check(node.skip() == tree.highestLevel, "compressPath of identical points skip = " + node.skip());
+    }
+
+    /**
+     * a point falling off a compressed path splits it where they diverge
+     */
+    static void testSplitPath() {
+        RAQuadTree tree = tree(1, true);
+        double cell = 1.0 / (1 << 20);
+        Point a = new Point(0.3 + cell * 0.25, 0.7 + cell * 0.25);
+        Point b = new Point(0.3 + cell * 0.75, 0.7 + cell * 0.75);
+        RAQuadTree.QuadTree node = tree.new QuadTree();
+        node.compressPath(new Point[]{a}, code(b), 0);
+        int skip = node.skip();
+        long quadrants = node.pathQuadrants();
+        node.subdivide();
+        RAQuadTree.QuadTree grandChild = node.northWest;
+
+        // a point leaving the path a few levels below the node
+        Point c = new Point(0.3 + 1.0 / (1 << 6), 0.7);
+        int common = Morton.commonLevels(code(a), code(c));
+        check(common < skip, "commonLevels of point off the path = " + common + ", path skip " + skip);
+        node.splitPath(code(c), 0);
+
+        check(node.skip() == common, "splitPath parent skip = " + node.skip() + ", expected " + common);
+        check(node.pathQuadrants() == Morton.quadrants(code(a), 0, common), "splitPath parent quadrants");
+
+        int quadrant = Morton.quadrant(code(a), common + 1);
+        check(quadrant != Morton.quadrant(code(c), common + 1), "path and point diverge at level " + (common + 1));
+        RAQuadTree.QuadTree child = node.child(quadrant);
+        int rest = skip - 1 - common;
+        check(child.skip() == rest, "splitPath child skip = " + child.skip() + ", expected " + rest);
+        check(child.pathQuadrants() == (quadrants & ((1L << (2 * rest)) - 1)), "splitPath child quadrants");
+        check(child.northWest == grandChild, "splitPath child takes over the subtree");
+        RAQuadTree.QuadTree sibling = node.child(Morton.quadrant(code(c), common + 1));
+        check(sibling != child && sibling.sample == null && sibling.northWest == null, "splitPath point goes into an empty sibling");
+    }
+
+    /**
+     * collect the points stored on leaves, and check each lies in the cell of its leaf
+     */
+    static void collect(RAQuadTree.QuadTree _node, double _cX, double _cY, double _halfDimension, List<Point> _points) {
+        double[] cell = _node.skipPath(_cX, _cY, _halfDimension);
+        double cX = cell[0], cY = cell[1], half = cell[2];
+        if (_node.northWest == null) {
+            Point[] points = _node.bucket != null? _node.bucket: _node.sample != null? new Point[]{_node.sample}: new Point[0];
+            for (Point point: points) {
+                check(point.getX() >= cX - half && point.getX() < cX + half
+                        && point.getY() >= cY - half && point.getY() < cY + half,
+                        "point " + point.getX() + ", " + point.getY() + " out of its leaf cell");
+                _points.add(point);
+            }
+            return;
+        }
+        double quarter = half / 2;
+        collect(_node.northWest, cX - quarter, cY - quarter, quarter, _points);
+        collect(_node.northEast, cX + quarter, cY - quarter, quarter, _points);
+        collect(_node.southWest, cX - quarter, cY + quarter, quarter, _points);
+        collect(_node.southEast, cX + quarter, cY + quarter, quarter, _points);
+    }
+
+    static Set<String> keys(List<Point> _points) {
+        Set<String> keys = new HashSet<>();
+        for (Point point: _points) keys.add(point.getX() + "," + point.getY());
+        return keys;
+    }
+
+    /**
+     * dense clusters inserted first get compressed paths, uniform points inserted later split them,
+     * the tree has to store the same points as without path compression
+     */
+    static void testInsert(int _leafBucketSize) {
+        Random random = new Random(7);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i ++) {
+            double cx = i % 2 == 0? 0.3: 0.61;
+            points.add(new Point(cx + random.nextDouble() * 1e-5, 0.7 + random.nextDouble() * 1e-5));
+        }
+        for (int i = 0; i < 2000; i ++) {
+            points.add(new Point(random.nextDouble(), random.nextDouble()));
+        }
+
+        RAQuadTree plain = tree(_leafBucketSize, false);
+        RAQuadTree compressed = tree(_leafBucketSize, true);
+        int plainStored = 0, compressedStored = 0;
+        for (Point point: points) {
+            if (plain.quadTree.insert(point, code(point), 0)) plainStored ++;
+            if (compressed.quadTree.insert(point, code(point), 0)) compressedStored ++;
+        }
+        check(plain.quadTree.count == points.size() && compressed.quadTree.count == points.size(),
+                "root count = " + plain.quadTree.count + " / " + compressed.quadTree.count + ", expected " + points.size());
+        check(plainStored == compressedStored, "stored points = " + plainStored + " / " + compressedStored);
+
+        List<Point> plainPoints = new ArrayList<>();
+        List<Point> compressedPoints = new ArrayList<>();
+        collect(plain.quadTree, 0.5, 0.5, 0.5, plainPoints);
+        collect(compressed.quadTree, 0.5, 0.5, 0.5, compressedPoints);
+        check(plainPoints.size() == plainStored, "plain leaves hold " + plainPoints.size() + " points");
+        check(compressedPoints.size() == compressedStored, "compressed leaves hold " + compressedPoints.size() + " points");
+        check(keys(plainPoints).equals(keys(compressedPoints)), "leaf bucket " + _leafBucketSize + " stores different points");
+        check(compressed.nodesCount < plain.nodesCount,
+                "nodes = " + compressed.nodesCount + ", plain " + plain.nodesCount);
+        System.out.println("leaf bucket " + _leafBucketSize + ": nodes = " + compressed.nodesCount + ", plain " + plain.nodesCount);
+    }
+
+    public static void main(String[] args) {
+        testCompressPath();
+        testSplitPath();
+        testInsert(1);
+        testInsert(8);
+        finish("RAQuadTreePathTest");
+    }
+}
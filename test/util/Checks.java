@@ -0,0 +1,31 @@
+package util;
+
+/**
+ * Checks shared by the main() tests
+ *
+ *  - a test calls check() for each expectation, then finish() once at the end of main()
+ *  - finish() exits with status 1 if any check failed, so a script running the tests stops on failures
+ */
+public class Checks {
+
+    private static int failures = 0;
+
+    public static void check(boolean _ok, String _what) {
+        if (!_ok) {
+            failures ++;
+            System.out.println("[FAIL] " + _what);
+        }
+    }
+
+    /**
+     * print the outcome of given test, exit with status 1 if any check failed
+     *
+     * @param _test - name of the test
+     */
+    public static void finish(String _test) {
+        System.out.println(failures == 0? _test + " passed": _test + " failed: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package util;
+
+import model.Point;
+import util.render.CoverageRenderer;
+import util.render.DeckGLRenderer;
+import util.render.IRenderer;
+
+import java.util.Random;
+
+import static util.Checks.check;
+import static util.Checks.finish;
+
+/**
+ * CoverageRenderer has to mark exactly the pixels DeckGLRenderer colors
+ */
+public class CoverageRendererTest {
+
+    static boolean colored(byte[] _rendering, int _side, int _i, int _j) {
+        for (int k = 0; k < 3; k ++) {
+            if (_rendering[_i * _side * 3 + _j * 3 + k] != IRenderer.BG_COLOR[k]) return true;
+        }
+        return false;
+    }
+
+    static boolean covered(byte[] _coverage, int _side, int _i, int _j) {
+        int bit = _i * _side + _j;
+        return (_coverage[bit >> 3] & (1 << (bit & 7))) != 0;
+    }
+
+    /**
+     * render the same points with both renderers onto the cell [_cX, _cY, _halfDimension] and compare pixel by pixel
+     */
+    static void compare(int _radius, int _resolution, double _cX, double _cY, double _halfDimension, Point[] _points) {
+        DeckGLRenderer deckGL = new DeckGLRenderer(_radius);
+        CoverageRenderer coverage = new CoverageRenderer(_radius);
+        check(deckGL.realResolution(_resolution) == coverage.realResolution(_resolution), "realResolution differs");
+        int side = coverage.realResolution(_resolution);
+
+        byte[] colors = deckGL.createRendering(_resolution);
+        byte[] bits = coverage.createRendering(_resolution);
+        check(bits.length * 8 >= side * side, "coverage rendering of " + bits.length + " bytes too small");
+        for (Point point: _points) {
+            boolean first = !deckGL.render(colors, _cX, _cY, _halfDimension, _resolution, point);
+            boolean second = !coverage.render(bits, _cX, _cY, _halfDimension, _resolution, point);
+            // a point leaving no trace on one rendering leaves none on the other either
+            if (first && !second) check(false, "coverage changed by a point invisible to Deck.GL");
+        }
+
+        int marked = 0, different = 0;
+        for (int i = 0; i < side; i ++) {
+            for (int j = 0; j < side; j ++) {
+                boolean c = colored(colors, side, i, j);
+                if (c) marked ++;
+                if (c != covered(bits, side, i, j)) different ++;
+            }
+        }
+        check(different == 0, "radius " + _radius + ", resolution " + _resolution + ": "
+                + different + " of " + marked + " colored pixels differ");
+        // padding bits beyond side * side stay 0
+        for (int bit = side * side; bit < bits.length * 8; bit ++) {
+            check((bits[bit >> 3] & (1 << (bit & 7))) == 0, "padding bit " + bit + " set");
+        }
+    }
+
+    static Point[] randomPoints(Random _random, int _count, double _cX, double _cY, double _halfDimension) {
+        Point[] points = new Point[_count];
+        for (int i = 0; i < _count; i ++) {
+            points[i] = new Point(_cX - _halfDimension + _random.nextDouble() * 2 * _halfDimension,
+                    _cY - _halfDimension + _random.nextDouble() * 2 * _halfDimension);
+        }
+        return points;
+    }
+
+    public static void main(String[] args) {
+        // the point of DeckGLRendererTest
+        Point point = new Point(0.18738888888888888, 0.3833203873543357);
+        compare(1, 64, 0.1796875, 0.3828125, 0.0078125, new Point[]{point});
+
+        Random random = new Random(3);
+        for (int radius: new int[]{1, 2, 5}) {
+            for (int resolution: new int[]{1, 7, 64, 256}) {
+                double halfDimension = 1.0 / (1 << (3 + random.nextInt(10)));
+                double cX = halfDimension * (2 * random.nextInt(1 << 3) + 1);
+                double cY = halfDimension * (2 * random.nextInt(1 << 3) + 1);
+                // points on the cell, and sparse points so most pixels are touched by one point only
+                compare(radius, resolution, cX, cY, halfDimension, randomPoints(random, 1000, cX, cY, halfDimension));
+                compare(radius, resolution, cX, cY, halfDimension, randomPoints(random, 5, cX, cY, halfDimension));
+                // points right on pixel edges and corners
+                double pixelLength = 2 * halfDimension / resolution;
+                Point[] aligned = new Point[resolution + 1];
+                for (int i = 0; i <= resolution; i ++) {
+                    aligned[i] = new Point(cX - halfDimension + i * pixelLength, cY - halfDimension + (i / 2) * pixelLength);
+                }
+                compare(radius, resolution, cX, cY, halfDimension, aligned);
+            }
+        }
+        finish("CoverageRendererTest");
+    }
+}
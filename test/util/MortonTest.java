@@ -0,0 +1,115 @@
+package util;
+
+import java.util.Random;
+
+import static util.Checks.check;
+import static util.Checks.finish;
+
+public class MortonTest {
+
+    static void testSpreadCompact() {
+        long[] values = {0L, 1L, 2L, 0x55555555L, 0xAAAAAAAAL, 0x7FFFFFFFL, 0x80000000L, 0xFFFFFFFFL};
+        for (long v: values) {
+            long spread = Morton.spread(v);
+            check((spread & 0xAAAAAAAAAAAAAAAAL) == 0L, "spread(" + v + ") sets odd bits");
+            check(Morton.compact(spread) == v, "compact(spread(" + v + ")) = " + Morton.compact(spread));
+        }
+        // only the lower 32 bits are spread, only the even bits are compacted
+        check(Morton.spread(0x1FFFFFFFFL) == Morton.spread(0xFFFFFFFFL), "spread of more than 32 bits");
+        check(Morton.compact(-1L) == 0xFFFFFFFFL, "compact(-1) = " + Morton.compact(-1L));
+        check(Morton.compact(0xAAAAAAAAAAAAAAAAL) == 0L, "compact of odd bits = " + Morton.compact(0xAAAAAAAAAAAAAAAAL));
+
+        Random random = new Random(11);
+        for (int i = 0; i < 10000; i ++) {
+            long v = random.nextLong() & 0xFFFFFFFFL;
+            check(Morton.compact(Morton.spread(v)) == v, "compact(spread(" + v + "))");
+        }
+    }
+
+    static void testEncodeDecode() {
+        // corners
+        check(Morton.encode(0, 0) == 0L, "encode(0, 0) = " + Morton.encode(0, 0));
+        check(Morton.encode(1, 1) == -1L, "encode(1, 1) = " + Morton.encode(1, 1));
+        check(Morton.encode(1, 0) == 0x5555555555555555L, "encode(1, 0) = " + Long.toHexString(Morton.encode(1, 0)));
+        check(Morton.encode(0, 1) == 0xAAAAAAAAAAAAAAAAL, "encode(0, 1) = " + Long.toHexString(Morton.encode(0, 1)));
+        // 1 falls into the last cell, not back into the first one
+        check(Morton.quadrant(Morton.encode(1, 0.25), 1) == 1, "encode(1, 0.25) not in ne quadrant");
+        check(Morton.quadrant(Morton.encode(0.25, 1), 1) == 2, "encode(0.25, 1) not in sw quadrant");
+        check(Morton.encode(1, 1) == Morton.encode(Math.nextDown(1.0), Math.nextDown(1.0)), "encode(1, 1) not in last cell");
+        // out of range clamped
+        check(Morton.encode(-0.5, 1.5) == Morton.encode(0, 1), "encode(-0.5, 1.5) not clamped");
+
+        double cell = 1.0 / Morton.SCALE;
+        Random random = new Random(13);
+        for (int i = 0; i < 10000; i ++) {
+            double x = random.nextDouble();
+            double y = random.nextDouble();
+            long code = Morton.encode(x, y);
+            double dx = Morton.decodeX(code);
+            double dy = Morton.decodeY(code);
+            check(dx <= x && x - dx < cell && dy <= y && y - dy < cell, "decode(encode(" + x + ", " + y + "))");
+            check(Morton.encode(dx, dy) == code, "encode(decode(" + code + "))");
+        }
+    }
+
+    static void testQuadrant() {
+        // level 1 splits at 0.5
+        check(Morton.quadrant(Morton.encode(0.25, 0.25), 1) == 0, "nw");
+        check(Morton.quadrant(Morton.encode(0.75, 0.25), 1) == 1, "ne");
+        check(Morton.quadrant(Morton.encode(0.25, 0.75), 1) == 2, "sw");
+        check(Morton.quadrant(Morton.encode(0.75, 0.75), 1) == 3, "se");
+        check(Morton.quadrant(Morton.encode(0.5, 0.5), 1) == 3, "center goes se");
+        // level 32 is the lowest bit of x and y
+        long last = 0xFFFFFFFFL;
+        check(Morton.quadrant(Morton.spread(1), 32) == 1, "level 32 x bit");
+        check(Morton.quadrant(Morton.spread(1) << 1, 32) == 2, "level 32 y bit");
+        check(Morton.quadrant(Morton.spread(last - 1) | (Morton.spread(last) << 1), 32) == 2, "level 32 of last cells");
+
+        long code = Morton.encode(0.3, 0.7);
+        check(Morton.quadrants(code, 0, 0) == 0L, "quadrants of 0 levels");
+        check(Morton.quadrants(code, 0, 32) == code, "quadrants of 32 levels = " + Long.toHexString(Morton.quadrants(code, 0, 32)));
+        check(Morton.quadrants(code, 31, 1) == Morton.quadrant(code, 32), "quadrants of level 32");
+        check(Morton.quadrants(code, 0, 1) == Morton.quadrant(code, 1), "quadrants of level 1");
+        for (int level = 0; level < Morton.LEVELS; level ++) {
+            for (int levels = 1; level + levels <= Morton.LEVELS; levels ++) {
+                long quadrants = Morton.quadrants(code, level, levels);
+                for (int i = 0; i < levels; i ++) {
+                    int quadrant = (int) (quadrants >>> (2 * (levels - 1 - i))) & 3;
+                    if (quadrant != Morton.quadrant(code, level + 1 + i)) {
+                        check(false, "quadrants(" + level + ", " + levels + ") at level " + (level + 1 + i));
+                    }
+                }
+            }
+        }
+    }
+
+    static void testCommonLevels() {
+        long code = Morton.encode(0.3, 0.7);
+        check(Morton.commonLevels(code, code) == 32, "commonLevels of equal codes = " + Morton.commonLevels(code, code));
+        check(Morton.commonLevels(Morton.encode(0.25, 0.25), Morton.encode(0.75, 0.75)) == 0, "commonLevels across the root");
+        check(Morton.commonLevels(0L, -1L) == 0, "commonLevels of first and last cells");
+        // differ only in the last level
+        check(Morton.commonLevels(0L, 1L) == 31, "commonLevels(0, 1) = " + Morton.commonLevels(0L, 1L));
+        check(Morton.commonLevels(0L, 2L) == 31, "commonLevels(0, 2) = " + Morton.commonLevels(0L, 2L));
+        // x differs in the level 2 bit
+        check(Morton.commonLevels(Morton.encode(0.0, 0.0), Morton.encode(0.25, 0.0)) == 1, "commonLevels at level 2");
+        Random random = new Random(17);
+        for (int i = 0; i < 10000; i ++) {
+            long code1 = Morton.encode(random.nextDouble(), random.nextDouble());
+            long code2 = Morton.encode(random.nextDouble(), random.nextDouble());
+            int common = Morton.commonLevels(code1, code2);
+            check(Morton.quadrants(code1, 0, common) == Morton.quadrants(code2, 0, common), "common levels differ");
+            if (common < Morton.LEVELS) {
+                check(Morton.quadrant(code1, common + 1) != Morton.quadrant(code2, common + 1), "level after common levels equal");
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        testSpreadCompact();
+        testEncodeDecode();
+        testQuadrant();
+        testCommonLevels();
+        finish("MortonTest");
+    }
+}
@@ -0,0 +1,199 @@
+package util;
+
+import model.Point;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static util.Checks.check;
+import static util.Checks.finish;
+
+/**
+ * replays the messages of ShippedSamples the way map.js merges them, the client has to end up with each result
+ */
+public class ShippedSamplesTest {
+
+    /**
+     * samples a client holds per key, merged from the messages
+     */
+    static class Client {
+        Map<String, List<String>> shippedData = new HashMap<>();
+        boolean lastFull;
+        int lastRecords;
+
+        void receive(byte[] _message) {
+            ByteBuffer buffer = ByteBuffer.wrap(_message);
+            int msgType = buffer.getInt(Constants.INT_BYTES + 3 * Constants.DOUBLE_BYTES);
+            check(msgType == 2, "msgType = " + msgType);
+            buffer.position(Constants.HEADER_SIZE);
+            boolean full = buffer.getInt() == 1;
+            int additions = buffer.getInt();
+            byte[] keyBytes = new byte[buffer.getInt()];
+            buffer.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+            List<String> added = new ArrayList<>();
+            Map<String, Integer> removed = new HashMap<>();
+            int records = 0;
+            while (buffer.remaining() > 0) {
+                String record = buffer.getDouble() + "," + buffer.getDouble();
+                if (records < additions) added.add(record);
+                else removed.merge(record, 1, Integer::sum);
+                records ++;
+            }
+            check(!full || records == additions, "full message with removed records");
+
+            List<String> data = new ArrayList<>();
+            List<String> shipped = full? Collections.emptyList(): shippedData.get(key);
+            check(shipped != null, "delta message of key " + key + " without its samples");
+            for (String record: shipped == null? Collections.<String>emptyList(): shipped) {
+                Integer count = removed.get(record);
+                if (count != null && count > 0) {
+                    removed.put(record, count - 1);
+                    continue;
+                }
+                data.add(record);
+            }
+            for (Map.Entry<String, Integer> entry: removed.entrySet()) {
+                check(entry.getValue() == 0, "removed record " + entry.getKey() + " not held by the client");
+            }
+            data.addAll(added);
+            shippedData.put(key, data);
+            lastFull = full;
+            lastRecords = records;
+        }
+    }
+
+    static String record(Point _point) {
+        return Mercator.yLat(_point.getY()) + "," + Mercator.xLng(_point.getX());
+    }
+
+    /**
+     * distinct records of the samples, sorted
+     */
+    static List<String> expected(List<Point> _samples) {
+        return new ArrayList<>(new TreeSet<>(records(_samples)));
+    }
+
+    static List<String> records(Collection<Point> _samples) {
+        List<String> records = new ArrayList<>();
+        for (Point point: _samples) records.add(record(point));
+        return records;
+    }
+
+    static void checkHolds(Client _client, String _key, List<Point> _samples, String _what) {
+        List<String> data = new ArrayList<>(_client.shippedData.get(_key));
+        Collections.sort(data);
+        check(data.equals(expected(_samples)), _what + ": client holds " + data.size() + " records, expected " + expected(_samples).size());
+    }
+
+    static List<Point> randomPoints(Random _random, int _count) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < _count; i ++) {
+            points.add(new Point(_random.nextDouble(), _random.nextDouble()));
+        }
+        return points;
+    }
+
+    static void testTransitions() {
+        Random random = new Random(5);
+        Client client = new Client();
+        ShippedSamples shipped = new ShippedSamples("points-a");
+        check(shipped.shipments() == 0 && shipped.size() == 0, "new ShippedSamples not empty");
+
+        // nothing shipped yet: full
+        List<Point> first = randomPoints(random, 1000);
+        client.receive(shipped.answer(first));
+        check(client.lastFull, "first result not full");
+        checkHolds(client, "points-a", first, "first result");
+        check(shipped.size() == 1000 && shipped.shipments() == 1, "size " + shipped.size() + ", shipments " + shipped.shipments());
+
+        // small pan: delta
+        List<Point> second = new ArrayList<>(first.subList(100, 1000));
+        second.addAll(randomPoints(random, 50));
+        client.receive(shipped.answer(second));
+        check(!client.lastFull, "small change not a delta");
+        check(client.lastRecords == 150, "delta of 100 removed and 50 added = " + client.lastRecords + " records");
+        checkHolds(client, "points-a", second, "delta result");
+
+        // same result again: empty delta
+        client.receive(shipped.answer(second));
+        check(!client.lastFull && client.lastRecords == 0, "unchanged result not an empty delta");
+        checkHolds(client, "points-a", second, "unchanged result");
+
+        // jump elsewhere: the delta is not smaller, full
+        List<Point> third = randomPoints(random, 800);
+        client.receive(shipped.answer(third));
+        check(client.lastFull, "result replacing everything not full");
+        checkHolds(client, "points-a", third, "full result after delta");
+
+        // back to delta from there
+        List<Point> fourth = new ArrayList<>(third.subList(0, 790));
+        client.receive(shipped.answer(fourth));
+        check(!client.lastFull && client.lastRecords == 10, "delta after full = " + client.lastRecords + " records");
+        checkHolds(client, "points-a", fourth, "delta after full");
+
+        // a full result shipped elsewhere: what the client holds is unknown, full
+        shipped.reset();
+        check(shipped.size() == 0, "reset size = " + shipped.size());
+        List<Point> fifth = new ArrayList<>(fourth.subList(0, 700));
+        client.receive(shipped.answer(fifth));
+        check(client.lastFull, "result after reset not full");
+        checkHolds(client, "points-a", fifth, "full result after reset");
+
+        // empty result
+        client.receive(shipped.answer(Collections.emptyList()));
+        checkHolds(client, "points-a", Collections.emptyList(), "empty result");
+
+        // another key does not touch the samples of this one
+        ShippedSamples other = new ShippedSamples("points-b");
+        client.receive(shipped.answer(first));
+        client.receive(other.answer(third));
+        client.receive(other.answer(fourth));
+        checkHolds(client, "points-a", first, "key a after results of key b");
+        checkHolds(client, "points-b", fourth, "key b");
+    }
+
+    static void testDuplicates() {
+        Random random = new Random(9);
+        Client client = new Client();
+        ShippedSamples shipped = new ShippedSamples("points");
+
+        // points on the same coordinates are shipped once
+        List<Point> points = randomPoints(random, 200);
+        List<Point> first = new ArrayList<>(points);
+        for (Point point: points.subList(0, 50)) {
+            first.add(new Point(point.getX(), point.getY()));
+            first.add(point);
+        }
+        Collections.shuffle(first, random);
+        client.receive(shipped.answer(first));
+        check(shipped.size() == 200, "size of result with duplicates = " + shipped.size());
+        check(client.lastRecords == 200, "records of result with duplicates = " + client.lastRecords);
+        checkHolds(client, "points", first, "result with duplicates");
+
+        // a duplicate of a held point is not added again, dropping one copy does not remove it
+        List<Point> second = new ArrayList<>(points.subList(0, 190));
+        second.add(new Point(points.get(0).getX(), points.get(0).getY()));
+        client.receive(shipped.answer(second));
+        check(!client.lastFull && client.lastRecords == 10, "delta with duplicates = " + client.lastRecords + " records");
+        checkHolds(client, "points", second, "delta with duplicates");
+
+        // many points on few coordinates, more than the table capacity of the distinct ones
+        List<Point> stacked = new ArrayList<>();
+        for (int i = 0; i < 1000; i ++) {
+            Point point = points.get(i % 3);
+            stacked.add(new Point(point.getX(), point.getY()));
+        }
+        client.receive(shipped.answer(stacked));
+        check(shipped.size() == 3, "size of stacked result = " + shipped.size());
+        checkHolds(client, "points", stacked, "stacked result");
+    }
+
+    public static void main(String[] args) {
+        testTransitions();
+        testDuplicates();
+        finish("ShippedSamplesTest");
+    }
+}
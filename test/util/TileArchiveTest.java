@@ -0,0 +1,161 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static util.Checks.check;
+import static util.Checks.finish;
+
+public class TileArchiveTest {
+
+    static byte[] payload(String _export, int z, int x, int y) {
+        return (_export + ":" + z + "/" + x + "/" + y).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String etag(byte[] _payload) {
+        CRC32 crc = new CRC32();
+        crc.update(_payload);
+        return String.format("\"%08x-%x\"", (int) crc.getValue(), _payload.length);
+    }
+
+    static void testIndex() {
+        check(TileArchive.levelStart(0) == 0, "levelStart(0) = " + TileArchive.levelStart(0));
+        check(TileArchive.levelStart(1) == 1, "levelStart(1) = " + TileArchive.levelStart(1));
+        check(TileArchive.levelStart(2) == 5, "levelStart(2) = " + TileArchive.levelStart(2));
+        check(TileArchive.levelStart(3) == 21, "levelStart(3) = " + TileArchive.levelStart(3));
+        for (int z = 0; z < 31; z ++) {
+            check(TileArchive.levelStart(z + 1) - TileArchive.levelStart(z) == 1L << (2 * z), "tiles of level " + z);
+        }
+
+        // every tile of levels [0, 6] has its own index, together they fill [0, levelStart(7))
+        int maxZoom = 6;
+        boolean[] seen = new boolean[(int) TileArchive.levelStart(maxZoom + 1)];
+        for (int z = 0; z <= maxZoom; z ++) {
+            for (int x = 0; x < (1 << z); x ++) {
+                for (int y = 0; y < (1 << z); y ++) {
+                    long index = TileArchive.tileIndex(z, x, y);
+                    if (index < TileArchive.levelStart(z) || index >= TileArchive.levelStart(z + 1) || seen[(int) index]) {
+                        check(false, "tileIndex(" + z + ", " + x + ", " + y + ") = " + index);
+                        continue;
+                    }
+                    seen[(int) index] = true;
+                }
+            }
+        }
+        for (int i = 0; i < seen.length; i ++) {
+            check(seen[i], "index " + i + " of no tile");
+        }
+        // x-major within a level
+        check(TileArchive.tileIndex(2, 1, 0) == TileArchive.tileIndex(2, 0, 3) + 1, "tiles not x-major");
+    }
+
+    /**
+     * put the tiles of levels [0, maxZoom] in a shuffled order, skipping the tiles with x == y on levels > 0
+     */
+    static TileArchive.Writer export(String _fileName, int _maxZoom, String _export, long _seed) throws IOException {
+        List<int[]> tiles = new ArrayList<>();
+        for (int z = 0; z <= _maxZoom; z ++) {
+            for (int x = 0; x < (1 << z); x ++) {
+                for (int y = 0; y < (1 << z); y ++) {
+                    if (z > 0 && x == y) continue;
+                    tiles.add(new int[]{z, x, y});
+                }
+            }
+        }
+        Collections.shuffle(tiles, new Random(_seed));
+        TileArchive.Writer writer = TileArchive.create(_fileName, _maxZoom);
+        for (int[] tile: tiles) {
+            writer.put(tile[0], tile[1], tile[2], payload(_export, tile[0], tile[1], tile[2]));
+        }
+        check(writer.getTiles() == tiles.size(), "writer tiles = " + writer.getTiles() + ", expected " + tiles.size());
+        return writer;
+    }
+
+    static void checkArchive(TileArchive _archive, int _maxZoom, String _export) {
+        check(_archive.getMaxZoom() == _maxZoom, "max zoom = " + _archive.getMaxZoom());
+        for (int z = 0; z <= _maxZoom; z ++) {
+            for (int x = 0; x < (1 << z); x ++) {
+                for (int y = 0; y < (1 << z); y ++) {
+                    byte[] tile = _archive.tile(z, x, y);
+                    String etag = _archive.etag(z, x, y);
+                    byte[] expected = z > 0 && x == y? new byte[0]: payload(_export, z, x, y);
+                    if (tile == null || !Arrays.equals(tile, expected) || !etag(expected).equals(etag)) {
+                        check(false, _export + " tile " + z + "/" + x + "/" + y + " = "
+                                + (tile == null? null: new String(tile, StandardCharsets.UTF_8)) + ", etag " + etag);
+                    }
+                }
+            }
+        }
+        // out of the pyramid
+        int[][] outside = {{-1, 0, 0}, {_maxZoom + 1, 0, 0}, {1, 2, 0}, {1, 0, 2}, {2, -1, 0}, {0, 0, 1}};
+        for (int[] tile: outside) {
+            check(_archive.tile(tile[0], tile[1], tile[2]) == null && _archive.etag(tile[0], tile[1], tile[2]) == null,
+                    "tile " + tile[0] + "/" + tile[1] + "/" + tile[2] + " out of the archive");
+        }
+    }
+
+    static void testExport(File _dir) throws IOException {
+        String fileName = new File(_dir, TileArchive.fileName("test", "points")).getPath();
+        check(TileArchive.get(fileName) == null, "archive of no file");
+
+        int maxZoom = 4;
+        TileArchive.Writer writer = export(fileName, maxZoom, "first", 1);
+        check(TileArchive.get(fileName) == null, "archive visible before finish()");
+        writer.finish();
+        check(!new File(fileName + ".tmp").exists(), "temp file left after finish()");
+        TileArchive first = TileArchive.get(fileName);
+        check(first != null, "no archive after finish()");
+        checkArchive(first, maxZoom, "first");
+        check(TileArchive.get(fileName) == first, "archive not shared");
+
+        // exported again with the same length and, as within one second on some file systems, the same modified time
+        export(fileName, maxZoom, "again", 2).finish();
+        check(new File(fileName).setLastModified(first.lastModified), "modified time not set");
+        check(new File(fileName).length() == first.length, "length of the export again differs");
+        TileArchive again = TileArchive.get(fileName);
+        check(again != first, "archive not reopened after the export finished");
+        checkArchive(again, maxZoom, "again");
+        // an archive opened before keeps serving its own mapping
+        checkArchive(first, maxZoom, "first");
+
+        // an aborted export leaves the archive as it was
+        TileArchive.Writer aborted = export(fileName, 2, "aborted", 3);
+        aborted.abort();
+        check(!new File(fileName + ".tmp").exists(), "temp file left after abort()");
+        check(TileArchive.get(fileName) == again, "archive reopened after abort()");
+        checkArchive(new TileArchive(fileName), maxZoom, "again");
+
+        // the file removed
+        check(new File(fileName).delete(), "archive file not deleted");
+        check(TileArchive.get(fileName) == null, "archive of a deleted file");
+    }
+
+    static void testBbox() {
+        double[] world = TileArchive.bbox(0, 0, 0);
+        check(Math.abs(world[0] + 180) < 1e-9 && Math.abs(world[2] - 180) < 1e-9, "lng of tile 0/0/0");
+        check(world[1] < world[3], "lat of tile 0/0/0 not south first");
+        // y to the south
+        double[] north = TileArchive.bbox(1, 0, 0);
+        double[] south = TileArchive.bbox(1, 0, 1);
+        check(north[1] > south[1] && Math.abs(north[1] - south[3]) < 1e-9, "tile 1/0/1 not south of 1/0/0");
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = Files.createTempDirectory("tiles").toFile();
+        try {
+            testIndex();
+            testBbox();
+            testExport(dir);
+        } finally {
+            for (File file: Objects.requireNonNull(dir.listFiles())) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        finish("TileArchiveTest");
+    }
+}